@@ -14,7 +14,8 @@ import org.springframework.scheduling.annotation.EnableScheduling;
         basePackages = {
                 "com.kwonka.admin",
                 "com.kwonka.common.service",
-                "com.kwonka.common.repository"
+                "com.kwonka.common.repository",
+                "com.kwonka.common.web"
         },
         excludeFilters = {
                 @ComponentScan.Filter(
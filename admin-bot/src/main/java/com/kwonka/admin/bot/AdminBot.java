@@ -3,32 +3,57 @@ package com.kwonka.admin.bot;
 import com.kwonka.admin.service.AdminNotificationService;
 import com.kwonka.admin.service.OrderMonitorService;
 import com.kwonka.admin.service.StatisticsService;
+import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.ActiveOrderView;
 import com.kwonka.common.service.CoffeeShopService;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.CallbackAction;
+import com.kwonka.common.telegram.CommandRouter;
+import com.kwonka.common.telegram.PrebuiltKeyboard;
+import com.kwonka.common.telegram.TelegramOutbox;
+import com.kwonka.common.telegram.UpdateDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.ParseMode;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class AdminBot extends TelegramLongPollingBot {
 
+    // Orders per message of the active orders board, keeps a page well under Telegram's message size limit
+    private static final int BOARD_PAGE_SIZE = 20;
+    // Orders listed in a delayed orders digest, each also gets a button
+    private static final int DIGEST_MAX_ORDERS = 15;
+
+    private static final PrebuiltKeyboard MAIN_MENU_KEYBOARD = PrebuiltKeyboard.column("Мониторинг заказов", "Статистика");
+    private static final PrebuiltKeyboard MONITORING_KEYBOARD = PrebuiltKeyboard.column("Все заказы", "Заказы с задержкой", "Вернуться в главное меню");
+    private static final PrebuiltKeyboard BACK_KEYBOARD = PrebuiltKeyboard.column("Назад");
+    private static final PrebuiltKeyboard STATISTICS_KEYBOARD = PrebuiltKeyboard.of(List.of(
+            List.of("Отчёт за день"),
+            List.of("Отчёт за неделю", "Отчёт за месяц"),
+            List.of("Вернуться в главное меню")));
+
     private final String botUsername;
     private final OrderService orderService;
     private final CoffeeShopService coffeeShopService;
     private final AdminNotificationService adminNotificationService;
+    private final TelegramOutbox telegramOutbox;
+    private final UpdateDispatcher updateDispatcher;
 
     @Setter
     private OrderMonitorService orderMonitorService;
@@ -36,9 +61,10 @@ public class AdminBot extends TelegramLongPollingBot {
     @Setter
     private StatisticsService statisticsService;
 
-    private final Map<Long, AdminState> adminStates = new HashMap<>();
+    private final ConversationStateStore<AdminState> adminStates;
+    private final CommandRouter<AdminState> router;
 
-    private enum AdminState {
+    public enum AdminState {
         START,
         MONITORING,
         MONITORING_ALL_ORDERS,
@@ -47,15 +73,25 @@ public class AdminBot extends TelegramLongPollingBot {
     }
 
     public AdminBot(String botToken,
+                    String apiUrl,
                     String botUsername,
                     OrderService orderService,
                     CoffeeShopService coffeeShopService,
-                    AdminNotificationService adminNotificationService) {
-        super(botToken);
+                    AdminNotificationService adminNotificationService,
+                    ConversationStateStore<AdminState> adminStates,
+                    int maxUpdatesInFlight,
+                    int perSecond,
+                    MeterRegistry meterRegistry) {
+        super(TelegramOutbox.newBotOptions(apiUrl), botToken);
+        this.telegramOutbox = new TelegramOutbox(this, "admin-bot", perSecond, meterRegistry);
+        this.updateDispatcher = new UpdateDispatcher("admin-bot", maxUpdatesInFlight, this::handleUpdate,
+                chatId -> Objects.requireNonNullElse(adminStates.get(chatId), AdminState.START).name(), meterRegistry);
         this.botUsername = botUsername;
         this.orderService = orderService;
         this.coffeeShopService = coffeeShopService;
         this.adminNotificationService = adminNotificationService;
+        this.adminStates = adminStates;
+        this.router = buildRouter();
     }
 
     @Override
@@ -65,79 +101,37 @@ public class AdminBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        updateDispatcher.dispatch(update);
+    }
+
+    /**
+     * Takes an update delivered by webhook without blocking the request
+     *
+     * @return false if too many updates are in flight and it has to be delivered again
+     */
+    public boolean offerUpdate(Update update) {
+        return updateDispatcher.tryDispatch(update);
+    }
+
+    /**
+     * Handles one update, updates of the same chat never run concurrently
+     */
+    private void handleUpdate(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
             String messageText = update.getMessage().getText();
             long chatId = update.getMessage().getChatId();
 
             log.debug("Received message: '{}' from chatId: {}", messageText, chatId);
 
-            // Initial command
-            if (messageText.equals("/start")) {
-                adminStates.put(chatId, AdminState.START);
-                sendWelcomeMessage(chatId);
-                return;
+            // Monitor registrations live in memory only, restore them when the state outlived a restart
+            AdminState currentState = getState(chatId);
+            if (currentState == AdminState.MONITORING
+                    || currentState == AdminState.MONITORING_ALL_ORDERS
+                    || currentState == AdminState.MONITORING_DELAYED_ORDERS) {
+                orderMonitorService.registerAdminMonitor(chatId);
             }
 
-            // Handle the admin flow based on state
-            AdminState currentState = adminStates.getOrDefault(chatId, AdminState.START);
-
-            switch (currentState) {
-                case START:
-                    if (messageText.equals("Мониторинг заказов")) {
-                        adminStates.put(chatId, AdminState.MONITORING);
-                        orderMonitorService.registerAdminMonitor(chatId);
-                        sendMonitoringStartedMessage(chatId);
-                    } else if (messageText.equals("Статистика")) {
-                        adminStates.put(chatId, AdminState.VIEWING_STATISTICS);
-                        sendStatisticsOptions(chatId);
-                    } else {
-                        sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                case MONITORING:
-                    if (messageText.equals("Вернуться в главное меню")) {
-                        adminStates.put(chatId, AdminState.START);
-                        orderMonitorService.unregisterAdminMonitor(chatId);
-                        sendWelcomeMessage(chatId);
-                    } else if (messageText.equals("Все заказы")) {
-                        adminStates.put(chatId, AdminState.MONITORING_ALL_ORDERS);
-                        sendAllOrders(chatId);
-                    } else if (messageText.equals("Заказы с задержкой")) {
-                        adminStates.put(chatId, AdminState.MONITORING_DELAYED_ORDERS);
-                        sendDelayedOrders(chatId);
-                    } else if (messageText.equals("Проверить заказы")) {
-                        sendMonitoringOptions(chatId);
-                    } else {
-                        sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                case MONITORING_ALL_ORDERS:
-                case MONITORING_DELAYED_ORDERS:
-                    if (messageText.equals("Назад")) {
-                        adminStates.put(chatId, AdminState.MONITORING);
-                        sendMonitoringOptions(chatId);
-                    } else {
-                        sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                case VIEWING_STATISTICS:
-                    if (messageText.equals("Отчёт за день")) {
-                        sendDailyStatistics(chatId);
-                    } else if (messageText.equals("Вернуться в главное меню")) {
-                        adminStates.put(chatId, AdminState.START);
-                        sendWelcomeMessage(chatId);
-                    } else {
-                        sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                default:
-                    sendUnknownCommandMessage(chatId);
-                    break;
-            }
+            router.route(chatId, messageText);
         } else if (update.hasCallbackQuery()) {
             // Handle callback queries from inline buttons
             String callbackData = update.getCallbackQuery().getData();
@@ -145,45 +139,86 @@ public class AdminBot extends TelegramLongPollingBot {
 
             log.debug("Received callback: '{}' from admin chatId: {}", callbackData, chatId);
 
-            if (callbackData.startsWith("notify_barista:")) {
-                String[] data = callbackData.substring("notify_barista:".length()).split(":");
-                String orderNumber = data[0];
-                Long baristaChatId = Long.parseLong(data[1]);
-
-                handleNotifyBarista(chatId, orderNumber, baristaChatId);
+            if (!router.routeCallback(chatId, callbackData)) {
+                log.debug("Ignoring unknown callback '{}' from admin chatId: {}", callbackData, chatId);
             }
         }
     }
 
+    private CommandRouter<AdminState> buildRouter() {
+        return CommandRouter.builder(AdminState.class, this::getState)
+                .command("/start", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.START);
+                    sendWelcomeMessage(chatId);
+                })
+
+                .on(AdminState.START, "Мониторинг заказов", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.MONITORING);
+                    orderMonitorService.registerAdminMonitor(chatId);
+                    sendMonitoringStartedMessage(chatId);
+                })
+                .on(AdminState.START, "Статистика", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.VIEWING_STATISTICS);
+                    sendStatisticsOptions(chatId);
+                })
+
+                .on(AdminState.MONITORING, "Вернуться в главное меню", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.START);
+                    orderMonitorService.unregisterAdminMonitor(chatId);
+                    sendWelcomeMessage(chatId);
+                })
+                .on(AdminState.MONITORING, "Все заказы", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.MONITORING_ALL_ORDERS);
+                    sendAllOrders(chatId);
+                })
+                .on(AdminState.MONITORING, "Заказы с задержкой", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.MONITORING_DELAYED_ORDERS);
+                    sendDelayedOrders(chatId);
+                })
+                .on(AdminState.MONITORING, "Проверить заказы", (chatId, text) -> sendMonitoringOptions(chatId))
+
+                .on(AdminState.MONITORING_ALL_ORDERS, "Назад", this::backToMonitoring)
+                .on(AdminState.MONITORING_DELAYED_ORDERS, "Назад", this::backToMonitoring)
+
+                .on(AdminState.VIEWING_STATISTICS, "Отчёт за день", (chatId, text) -> sendDailyStatistics(chatId))
+                .on(AdminState.VIEWING_STATISTICS, "Отчёт за неделю",
+                        (chatId, text) -> sendPeriodStatistics(chatId, statisticsService.getWeekStats(LocalDate.now())))
+                .on(AdminState.VIEWING_STATISTICS, "Отчёт за месяц",
+                        (chatId, text) -> sendPeriodStatistics(chatId, statisticsService.getMonthStats(YearMonth.now())))
+                .on(AdminState.VIEWING_STATISTICS, "Вернуться в главное меню", (chatId, text) -> {
+                    adminStates.put(chatId, AdminState.START);
+                    sendWelcomeMessage(chatId);
+                })
+                .unknown((chatId, text) -> sendUnknownCommandMessage(chatId))
+
+                .callback(CallbackAction.NOTIFY_BARISTA, (chatId, data, args) -> handleNotifyBarista(chatId,
+                        CallbackAction.arg(data, args, 0), CallbackAction.longArg(data, args, 1)))
+                .callback(CallbackAction.ORDERS_MORE, (chatId, data, args) -> sendNextOrdersBoardPage(chatId,
+                        CallbackAction.longArg(data, args, 0), LocalDateTime.parse(CallbackAction.rest(data, args, 1))))
+                .callback(CallbackAction.CANCEL_STALE, (chatId, data, args) -> handleCancelStaleOrders(chatId,
+                        CallbackAction.arg(data, args, 0), LocalDateTime.parse(CallbackAction.rest(data, args, 1))))
+                .build();
+    }
+
+    private AdminState getState(long chatId) {
+        return Objects.requireNonNullElse(adminStates.get(chatId), AdminState.START);
+    }
+
+    private void backToMonitoring(long chatId, String text) {
+        adminStates.put(chatId, AdminState.MONITORING);
+        sendMonitoringOptions(chatId);
+    }
+
     private void sendWelcomeMessage(long chatId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText("Добро пожаловать в панель администратора One Shott Coffee! ☕\n" +
                 "Я слежу за всеми заказами в реальном времени.");
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        message.setReplyMarkup(MAIN_MENU_KEYBOARD);
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Мониторинг заказов"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Статистика"));
-        keyboard.add(row2);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Welcome message sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending welcome message to admin chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Welcome message queued for admin chatId: {}", chatId);
     }
 
     private void sendMonitoringStartedMessage(long chatId) {
@@ -200,75 +235,72 @@ public class AdminBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Выберите опцию мониторинга:");
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
+        message.setReplyMarkup(MONITORING_KEYBOARD);
 
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Все заказы"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Заказы с задержкой"));
-        keyboard.add(row2);
-
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Вернуться в главное меню"));
-        keyboard.add(row3);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Monitoring options sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending monitoring options to admin chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Monitoring options queued for admin chatId: {}", chatId);
     }
 
     private void sendAllOrders(long chatId) {
-        List<Order> pendingOrders = orderService.getOrdersByStatus(Order.OrderStatus.PENDING);
+        List<ActiveOrderView> pendingOrders = orderService.getPendingBoard(null, null, BOARD_PAGE_SIZE + 1);
 
         if (pendingOrders.isEmpty()) {
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
             message.setText("На данный момент нет активных заказов.\n\nНажмите кнопку \"Назад\" для возврата в меню мониторинга.");
 
-            // Add back button
-            ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-            keyboardMarkup.setResizeKeyboard(true);
-            keyboardMarkup.setOneTimeKeyboard(false);
-            keyboardMarkup.setSelective(true);
+            message.setReplyMarkup(BACK_KEYBOARD);
 
-            List<KeyboardRow> keyboard = new ArrayList<>();
-            KeyboardRow row = new KeyboardRow();
-            row.add(new KeyboardButton("Назад"));
-            keyboard.add(row);
+            telegramOutbox.send(message);
+            return;
+        }
+
+        // First, the legend and the back button
+        SendMessage menuMessage = new SendMessage();
+        menuMessage.setChatId(chatId);
+        menuMessage.setText("📋 *Все активные заказы* (сначала новые)\n\n" +
+                "*Обозначения:*\n" +
+                "✅ - Меньше 5 минут ожидания\n" +
+                "⏰ - 5-10 минут ожидания\n" +
+                "⚠️ - Более 10 минут ожидания\n\n" +
+                "Для уведомления баристы, перейдите в \"Заказы с задержкой\".");
+        menuMessage.setParseMode(ParseMode.MARKDOWN);
+        menuMessage.setReplyMarkup(BACK_KEYBOARD);
 
-            keyboardMarkup.setKeyboard(keyboard);
-            message.setReplyMarkup(keyboardMarkup);
+        telegramOutbox.send(menuMessage);
 
-            try {
-                execute(message);
-            } catch (TelegramApiException e) {
-                log.error("Error sending no orders message to admin chatId: {}", chatId, e);
-            }
+        sendOrdersBoardPage(chatId, pendingOrders);
+        log.debug("All orders queued for admin chatId: {}", chatId);
+    }
+
+    /**
+     * Sends the page of the pending orders board that follows the cursor from a "Показать ещё" button
+     */
+    private void sendNextOrdersBoardPage(long chatId, Long afterId, LocalDateTime afterCreatedAt) {
+        List<ActiveOrderView> pendingOrders = orderService.getPendingBoard(afterCreatedAt, afterId, BOARD_PAGE_SIZE + 1);
+        if (pendingOrders.isEmpty()) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("Больше активных заказов нет.");
+            telegramOutbox.send(message);
             return;
         }
 
-        // Sort orders by creation time (newest first)
-        pendingOrders.sort((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()));
+        sendOrdersBoardPage(chatId, pendingOrders);
+    }
 
-        StringBuilder messageText = new StringBuilder();
-        messageText.append("📋 *Все активные заказы:*\n\n");
+    /**
+     * @param pendingOrders Up to one row more than a page, the extra row only tells that another page exists
+     */
+    private void sendOrdersBoardPage(long chatId, List<ActiveOrderView> pendingOrders) {
+        boolean hasMore = pendingOrders.size() > BOARD_PAGE_SIZE;
+        List<ActiveOrderView> page = hasMore ? pendingOrders.subList(0, BOARD_PAGE_SIZE) : pendingOrders;
+        LocalDateTime now = LocalDateTime.now();
 
-        for (Order order : pendingOrders) {
+        StringBuilder messageText = new StringBuilder();
+        for (ActiveOrderView order : page) {
             // Calculate wait time
-            long waitTimeMinutes = java.time.Duration.between(order.getCreatedAt(), java.time.LocalDateTime.now()).toMinutes();
+            long waitTimeMinutes = java.time.Duration.between(order.createdAt(), now).toMinutes();
 
             String waitTimeIndicator = waitTimeMinutes >= 10 ? "⚠️ " :
                     waitTimeMinutes >= 5 ? "⏰ " : "✅ ";
@@ -281,48 +313,35 @@ public class AdminBot extends TelegramLongPollingBot {
                             "💰 %s ₸\n" +
                             "🏢 %s\n\n",
                     waitTimeIndicator,
-                    order.getOrderNumber(),
+                    order.orderNumber(),
                     waitTimeMinutes,
-                    order.getCoffeeType(),
-                    order.getSize(),
-                    order.getMilkType() != null ? "🥛 " + order.getMilkType() : "",
-                    order.getSyrupType() != null ? "🍯 " + order.getSyrupType() : "",
-                    order.getTotalPrice(),
-                    order.getCoffeeShop().getName()
+                    order.coffeeType(),
+                    order.size(),
+                    order.milkType() != null ? "🥛 " + order.milkType() : "",
+                    order.syrupType() != null ? "🍯 " + order.syrupType() : "",
+                    order.totalPrice(),
+                    order.coffeeShopName()
             ));
         }
 
-        messageText.append("\n*Обозначения:*\n" +
-                "✅ - Меньше 5 минут ожидания\n" +
-                "⏰ - 5-10 минут ожидания\n" +
-                "⚠️ - Более 10 минут ожидания\n\n" +
-                "Для уведомления баристы, перейдите в \"Заказы с задержкой\".");
-
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText(messageText.toString());
         message.setParseMode(ParseMode.MARKDOWN);
 
-        // Add back button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Назад"));
-        keyboard.add(row);
+        if (hasMore) {
+            // The cursor is the last row shown: its ID, then its creation time
+            ActiveOrderView last = page.get(page.size() - 1);
+            InlineKeyboardButton moreButton = new InlineKeyboardButton();
+            moreButton.setText("Показать ещё");
+            moreButton.setCallbackData(CallbackAction.ORDERS_MORE.encode(last.id(), last.createdAt()));
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("All orders sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending all orders to admin chatId: {}", chatId, e);
+            InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+            inlineKeyboardMarkup.setKeyboard(List.of(List.of(moreButton)));
+            message.setReplyMarkup(inlineKeyboardMarkup);
         }
+
+        telegramOutbox.send(message);
     }
 
     private void sendDelayedOrders(long chatId) {
@@ -333,54 +352,25 @@ public class AdminBot extends TelegramLongPollingBot {
             message.setChatId(chatId);
             message.setText("На данный момент нет заказов, ожидающих более 5 минут.\n\nНажмите кнопку \"Назад\" для возврата в меню мониторинга.");
 
-            // Add back button
-            ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-            keyboardMarkup.setResizeKeyboard(true);
-            keyboardMarkup.setOneTimeKeyboard(false);
-            keyboardMarkup.setSelective(true);
+            message.setReplyMarkup(BACK_KEYBOARD);
 
-            List<KeyboardRow> keyboard = new ArrayList<>();
-            KeyboardRow row = new KeyboardRow();
-            row.add(new KeyboardButton("Назад"));
-            keyboard.add(row);
-
-            keyboardMarkup.setKeyboard(keyboard);
-            message.setReplyMarkup(keyboardMarkup);
-
-            try {
-                execute(message);
-            } catch (TelegramApiException e) {
-                log.error("Error sending no delayed orders message to admin chatId: {}", chatId, e);
-            }
+            telegramOutbox.send(message);
             return;
         }
 
         // Sort orders by wait time (descending)
         delayedOrders.sort((o1, o2) -> o2.getValue().compareTo(o1.getValue()));
+        // Cancelling covers the orders listed here and none placed after the list was shown
+        LocalDateTime staleCutoff = LocalDateTime.now().minus(OrderMonitorService.DELAY_THRESHOLD).truncatedTo(ChronoUnit.SECONDS);
 
         // First, add the back button
         SendMessage menuMessage = new SendMessage();
         menuMessage.setChatId(chatId);
         menuMessage.setText("Заказы с задержкой более 5 минут:");
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        menuMessage.setReplyMarkup(BACK_KEYBOARD);
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Назад"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        menuMessage.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(menuMessage);
-        } catch (TelegramApiException e) {
-            log.error("Error sending delayed orders menu to admin chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(menuMessage);
 
         // Now send each delayed order as a separate message with notification button
         for (Map.Entry<Order, Integer> entry : delayedOrders) {
@@ -389,38 +379,92 @@ public class AdminBot extends TelegramLongPollingBot {
 
             sendDelayedOrderInfo(chatId, order, waitTimeMinutes);
         }
+
+        sendCancelStaleOptions(chatId, delayedOrders, staleCutoff);
     }
 
-    private void sendStatisticsOptions(long chatId) {
+    /**
+     * One button per coffee shop with delayed orders, cancelling all of them in one go
+     */
+    private void sendCancelStaleOptions(long chatId, List<Map.Entry<Order, Integer>> delayedOrders, LocalDateTime staleCutoff) {
+        Map<String, Integer> countsByShop = new LinkedHashMap<>();
+        Map<String, String> namesByShop = new HashMap<>();
+        for (Map.Entry<Order, Integer> entry : delayedOrders) {
+            CoffeeShop shop = entry.getKey().getCoffeeShop();
+            countsByShop.merge(shop.getCode(), 1, Integer::sum);
+            namesByShop.put(shop.getCode(), shop.getName());
+        }
+
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        countsByShop.forEach((code, count) -> {
+            InlineKeyboardButton cancelButton = new InlineKeyboardButton();
+            cancelButton.setText("🗑 " + namesByShop.get(code) + " (" + count + ")");
+            cancelButton.setCallbackData(CallbackAction.CANCEL_STALE.encode(code, staleCutoff));
+            rows.add(List.of(cancelButton));
+        });
+
+        InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+        inlineKeyboardMarkup.setKeyboard(rows);
+
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
-        message.setText("Выберите опцию статистики:");
+        message.setText("Отменить все зависшие заказы кофейни, клиенты получат уведомления:");
+        message.setReplyMarkup(inlineKeyboardMarkup);
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        telegramOutbox.send(message);
+    }
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Отчёт за день"));
-        keyboard.add(row1);
+    private void handleCancelStaleOrders(long adminChatId, String coffeeShopCode, LocalDateTime createdBefore) {
+        Optional<CoffeeShop> coffeeShopOpt = coffeeShopService.getShopByCode(coffeeShopCode);
+        if (coffeeShopOpt.isEmpty()) {
+            SendMessage message = new SendMessage();
+            message.setChatId(adminChatId);
+            message.setText("Кофейня не найдена.");
+            telegramOutbox.send(message);
+            return;
+        }
 
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Вернуться в главное меню"));
-        keyboard.add(row2);
+        try {
+            List<Order> cancelled = orderService.cancelStalePendingOrders(coffeeShopOpt.get(), createdBefore);
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+            SendMessage message = new SendMessage();
+            message.setChatId(adminChatId);
+            if (cancelled.isEmpty()) {
+                message.setText("В кофейне " + coffeeShopOpt.get().getName() + " нет зависших заказов, их уже приняли или отменили.");
+            } else {
+                StringBuilder numbers = new StringBuilder();
+                for (Order order : cancelled) {
+                    if (!numbers.isEmpty()) {
+                        numbers.append(", ");
+                    }
+                    numbers.append('#').append(order.getOrderNumber());
+                }
+                message.setText("🗑 В кофейне " + coffeeShopOpt.get().getName() + " отменено заказов: " + cancelled.size() +
+                        " (" + numbers + ").");
+            }
+            telegramOutbox.send(message);
 
-        try {
-            execute(message);
-            log.debug("Statistics options sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending statistics options to admin chatId: {}", chatId, e);
+            log.info("Admin {} cancelled {} stale orders at {}", adminChatId, cancelled.size(), coffeeShopCode);
+        } catch (Exception e) {
+            log.error("Error cancelling stale orders at {}", coffeeShopCode, e);
+            SendMessage message = new SendMessage();
+            message.setChatId(adminChatId);
+            message.setText("Ошибка при отмене заказов.");
+            telegramOutbox.send(message);
         }
     }
 
+    private void sendStatisticsOptions(long chatId) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText("Выберите опцию статистики:");
+
+        message.setReplyMarkup(STATISTICS_KEYBOARD);
+
+        telegramOutbox.send(message);
+        log.debug("Statistics options queued for admin chatId: {}", chatId);
+    }
+
     private void sendDailyStatistics(long chatId) {
         StatisticsService.DailyStats stats = statisticsService.getCurrentDayStats();
         String messageText = statisticsService.formatDailyStats(stats);
@@ -430,15 +474,21 @@ public class AdminBot extends TelegramLongPollingBot {
         message.setText(messageText);
         message.setParseMode(ParseMode.MARKDOWN);
 
-        try {
-            execute(message);
-            log.debug("Daily statistics sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending daily statistics to admin chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Daily statistics queued for admin chatId: {}", chatId);
     }
 
-    private void sendDelayedOrderInfo(long chatId, Order order, int waitTimeMinutes) {
+    private void sendPeriodStatistics(long chatId, StatisticsService.PeriodStats stats) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(statisticsService.formatPeriodStats(stats));
+        message.setParseMode(ParseMode.MARKDOWN);
+
+        telegramOutbox.send(message);
+        log.debug("Period statistics queued for admin chatId: {}", chatId);
+    }
+
+    private CompletableFuture<Message> sendDelayedOrderInfo(long chatId, Order order, int waitTimeMinutes) {
         String messageText = String.format(
                 "⏱ *Простой заказа* ⏱\n\n" +
                         "*Заказ #%s ожидает %d минут.*\n" +
@@ -463,30 +513,79 @@ public class AdminBot extends TelegramLongPollingBot {
         message.setText(messageText);
         message.setParseMode(ParseMode.MARKDOWN);
 
-        // Create button to notify barista
-        // For demonstration, we're using a fixed barista chat ID
-        // In a real application, you'd lookup the active barista for this coffee shop
-        long baristaChatId = 987654321L; // Replace with actual lookup logic
-
         InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+        inlineKeyboardMarkup.setKeyboard(List.of(List.of(createNotifyBaristaButton("Уведомить баристу", order))));
+        message.setReplyMarkup(inlineKeyboardMarkup);
+
+        log.debug("Delayed order info queued for admin chatId: {}", chatId);
+        return telegramOutbox.send(message);
+    }
+
+    /**
+     * Sends one message about all given delayed orders, longest waiting first, called by AdminAlertBroadcaster
+     *
+     * @return Completes once the message is delivered
+     */
+    public CompletableFuture<Message> sendDelayedOrdersDigest(Long chatId, List<Map.Entry<Order, Integer>> delayedOrders) {
+        if (delayedOrders.size() == 1) {
+            Map.Entry<Order, Integer> entry = delayedOrders.get(0);
+            return sendDelayedOrderInfo(chatId, entry.getKey(), entry.getValue());
+        }
+
+        List<Map.Entry<Order, Integer>> sortedOrders = new ArrayList<>(delayedOrders);
+        sortedOrders.sort((o1, o2) -> o2.getValue().compareTo(o1.getValue()));
+        List<Map.Entry<Order, Integer>> shownOrders = sortedOrders.subList(0, Math.min(sortedOrders.size(), DIGEST_MAX_ORDERS));
+
+        StringBuilder messageText = new StringBuilder();
+        messageText.append("⏱ *Простой заказов: ").append(sortedOrders.size()).append("* ⏱\n\n");
+
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        List<InlineKeyboardButton> row = new ArrayList<>();
+        for (Map.Entry<Order, Integer> entry : shownOrders) {
+            Order order = entry.getKey();
+            messageText.append(String.format(
+                    "*Заказ #%s ожидает %d минут.*\n" +
+                            "☕ %s (%s)%s%s\n" +
+                            "💰 %s ₸, 🏢 %s\n\n",
+                    order.getOrderNumber(),
+                    entry.getValue(),
+                    order.getCoffeeType(),
+                    order.getSize(),
+                    order.getMilkType() != null ? ", 🥛 " + order.getMilkType() : "",
+                    order.getSyrupType() != null ? ", 🍯 " + order.getSyrupType() : "",
+                    order.getTotalPrice(),
+                    order.getCoffeeShop().getName()
+            ));
+            rows.add(List.of(createNotifyBaristaButton("Уведомить баристу: #" + order.getOrderNumber(), order)));
+        }
 
-        InlineKeyboardButton notifyButton = new InlineKeyboardButton();
-        notifyButton.setText("Уведомить баристу");
-        notifyButton.setCallbackData("notify_barista:" + order.getOrderNumber() + ":" + baristaChatId);
-        row.add(notifyButton);
+        if (sortedOrders.size() > shownOrders.size()) {
+            messageText.append("И ещё ").append(sortedOrders.size() - shownOrders.size())
+                    .append(" заказов, см. \"Заказы с задержкой\" в меню мониторинга.\n\n");
+        }
+        messageText.append("Нажмите кнопку, чтобы отправить уведомление баристе.");
 
-        rows.add(row);
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(messageText.toString());
+        message.setParseMode(ParseMode.MARKDOWN);
+
+        InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
         inlineKeyboardMarkup.setKeyboard(rows);
         message.setReplyMarkup(inlineKeyboardMarkup);
 
-        try {
-            execute(message);
-            log.debug("Delayed order info sent to admin chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending delayed order info to admin chatId: {}", chatId, e);
-        }
+        log.debug("Digest of {} delayed orders queued for admin chatId: {}", sortedOrders.size(), chatId);
+        return telegramOutbox.send(message, TelegramOutbox.Priority.HIGH);
+    }
+
+    private InlineKeyboardButton createNotifyBaristaButton(String text, Order order) {
+        // For demonstration, we're using a fixed barista chat ID
+        // In a real application, you'd lookup the active barista for this coffee shop
+        long baristaChatId = 987654321L; // Replace with actual lookup logic
+
+        InlineKeyboardButton notifyButton = new InlineKeyboardButton();
+        notifyButton.setText(text);
+        notifyButton.setCallbackData(CallbackAction.NOTIFY_BARISTA.encode(order.getOrderNumber(), baristaChatId));
+        return notifyButton;
     }
 
     private void handleNotifyBarista(long adminChatId, String orderNumber, Long baristaChatId) {
@@ -496,7 +595,7 @@ public class AdminBot extends TelegramLongPollingBot {
                 SendMessage message = new SendMessage();
                 message.setChatId(adminChatId);
                 message.setText("Заказ #" + orderNumber + " не найден.");
-                execute(message);
+                telegramOutbox.send(message);
                 return;
             }
 
@@ -507,33 +606,33 @@ public class AdminBot extends TelegramLongPollingBot {
                 SendMessage message = new SendMessage();
                 message.setChatId(adminChatId);
                 message.setText("Заказ #" + orderNumber + " уже был принят баристой или отменен.");
-                execute(message);
+                telegramOutbox.send(message);
                 return;
             }
 
             // Get wait time in minutes
             long waitTimeMinutes = java.time.Duration.between(order.getCreatedAt(), java.time.LocalDateTime.now()).toMinutes();
 
-            // Notify barista
-            adminNotificationService.notifyBarista(baristaChatId, order, (int) waitTimeMinutes);
-
-            // Confirm to admin
-            SendMessage message = new SendMessage();
-            message.setChatId(adminChatId);
-            message.setText("Уведомление о заказе #" + orderNumber + " отправлено баристе.");
-            execute(message);
-
-            log.info("Admin {} notified barista {} about order {}", adminChatId, baristaChatId, orderNumber);
+            // Confirm to admin once Telegram accepted the notification, not when it was queued
+            adminNotificationService.notifyBarista(baristaChatId, order, (int) waitTimeMinutes)
+                    .whenComplete((sent, e) -> {
+                        SendMessage message = new SendMessage();
+                        message.setChatId(adminChatId);
+                        if (e == null) {
+                            message.setText("Уведомление о заказе #" + orderNumber + " отправлено баристе.");
+                            log.info("Admin {} notified barista {} about order {}", adminChatId, baristaChatId, orderNumber);
+                        } else {
+                            message.setText("Ошибка при отправке уведомления баристе.");
+                            log.error("Failed to notify barista {} about order {}", baristaChatId, orderNumber, e);
+                        }
+                        telegramOutbox.send(message);
+                    });
         } catch (Exception e) {
             log.error("Error notifying barista about order", e);
-            try {
-                SendMessage message = new SendMessage();
-                message.setChatId(adminChatId);
-                message.setText("Ошибка при отправке уведомления баристе.");
-                execute(message);
-            } catch (TelegramApiException ex) {
-                log.error("Error sending error message to admin", ex);
-            }
+            SendMessage message = new SendMessage();
+            message.setChatId(adminChatId);
+            message.setText("Ошибка при отправке уведомления баристе.");
+            telegramOutbox.send(message);
         }
     }
 
@@ -542,46 +641,6 @@ public class AdminBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Извините, я не понимаю эту команду. Пожалуйста, воспользуйтесь предложенными кнопками или отправьте /start, чтобы начать заново.");
 
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Error sending unknown command message to admin chatId: {}", chatId, e);
-        }
-    }
-
-    /**
-     * Scheduled task to automatically check for delayed orders and notify admins
-     */
-    @Scheduled(fixedRate = 300000) // Run every 5 minutes
-    public void autoCheckDelayedOrders() {
-        List<Map.Entry<Order, Integer>> delayedOrders = orderMonitorService.getDelayedPendingOrders();
-
-        if (delayedOrders.isEmpty()) {
-            return;
-        }
-
-        // Only consider orders waiting more than 10 minutes
-        List<Map.Entry<Order, Integer>> criticalOrders = delayedOrders.stream()
-                .filter(entry -> entry.getValue() >= 10)
-                .sorted((o1, o2) -> o2.getValue().compareTo(o1.getValue()))
-                .toList();
-
-        if (criticalOrders.isEmpty()) {
-            return;
-        }
-
-        // Notify all active admin monitors
-        for (Long adminChatId : orderMonitorService.getActiveAdminMonitors()) {
-            for (Map.Entry<Order, Integer> entry : criticalOrders) {
-                Order order = entry.getKey();
-                int waitTimeMinutes = entry.getValue();
-
-                // Only send notification if we haven't already notified about this order
-                if (!orderMonitorService.isOrderAlreadyNotified(order.getOrderNumber())) {
-                    sendDelayedOrderInfo(adminChatId, order, waitTimeMinutes);
-                    orderMonitorService.markOrderAsNotified(order.getOrderNumber());
-                }
-            }
-        }
+        telegramOutbox.send(message);
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,21 @@
 package com.kwonka.admin.config;
 
 import com.kwonka.admin.bot.AdminBot;
+import com.kwonka.admin.service.AdminAlertBroadcaster;
 import com.kwonka.admin.service.AdminNotificationService;
 import com.kwonka.admin.service.OrderMonitorService;
+import com.kwonka.admin.service.OrderSlaTracker;
 import com.kwonka.admin.service.StatisticsService;
 import com.kwonka.common.service.CoffeeShopService;
+import com.kwonka.common.service.ConversationStateStoreFactory;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.TelegramWebhook;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -25,6 +32,24 @@ public class TelegramAdminBotConfig {
     @Value("${telegram.bot.admin.token}")
     private String botToken;
 
+    @Value("${telegram.api-url:https://api.telegram.org/bot}")
+    private String apiUrl;
+
+    @Value("${kwonka.updates.max-in-flight:256}")
+    private int maxUpdatesInFlight;
+
+    @Value("${kwonka.telegram.per-second.admin}")
+    private int perSecond;
+
+    @Value("${telegram.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${telegram.webhook.secret-token:}")
+    private String webhookSecretToken;
+
+    @Value("${telegram.webhook.max-connections:40}")
+    private int webhookMaxConnections;
+
     @Autowired
     private OrderService orderService;
 
@@ -40,21 +65,48 @@ public class TelegramAdminBotConfig {
     @Autowired
     private StatisticsService statisticsService;
 
+    @Autowired
+    private OrderSlaTracker orderSlaTracker;
+
+    @Autowired
+    private AdminAlertBroadcaster adminAlertBroadcaster;
+
+    @Bean
+    public ConversationStateStore<AdminBot.AdminState> adminSessions(ConversationStateStoreFactory stateStoreFactory) {
+        return stateStoreFactory.create("admin", AdminBot.AdminState.class);
+    }
+
     @Bean
-    public AdminBot adminBot() {
+    public AdminBot adminBot(ConversationStateStore<AdminBot.AdminState> adminSessions, MeterRegistry meterRegistry) {
         AdminBot bot = new AdminBot(
                 botToken,
+                apiUrl,
                 botUsername,
                 orderService,
                 coffeeShopService,
-                adminNotificationService
+                adminNotificationService,
+                adminSessions,
+                maxUpdatesInFlight,
+                perSecond,
+                meterRegistry
         );
         bot.setOrderMonitorService(orderMonitorService);
         bot.setStatisticsService(statisticsService);
+        adminAlertBroadcaster.onDigest(bot::sendDelayedOrdersDigest);
+        orderSlaTracker.onBreach(adminAlertBroadcaster::submit);
         return bot;
     }
 
     @Bean
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "webhook")
+    public TelegramWebhook adminBotWebhook(AdminBot adminBot) throws TelegramApiException {
+        TelegramWebhook webhook = new TelegramWebhook("admin", adminBot, webhookSecretToken, adminBot::offerUpdate);
+        webhook.register(webhookUrl, webhookMaxConnections);
+        return webhook;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsApi telegramBotsApi(AdminBot adminBot) throws TelegramApiException {
         try {
             TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
@@ -0,0 +1,68 @@
+package com.kwonka.admin.service;
+
+import com.kwonka.common.entity.CoffeeShop;
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.ShopStatusCount;
+import com.kwonka.common.service.CoffeeShopService;
+import com.kwonka.common.service.OrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes the number of pending and in-preparation orders per coffee shop as the
+ * kwonka.orders.active gauge, refreshed from one grouped query. The counts come from the shared
+ * database, so only the admin bot publishes them.
+ */
+@Service
+@Slf4j
+public class ActiveOrdersGauge {
+
+    private static final List<Order.OrderStatus> STATUSES = List.of(Order.OrderStatus.PENDING, Order.OrderStatus.IN_PREPARATION);
+
+    private final OrderService orderService;
+    private final CoffeeShopService coffeeShopService;
+    private final MultiGauge activeOrders;
+
+    public ActiveOrdersGauge(OrderService orderService, CoffeeShopService coffeeShopService, MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.coffeeShopService = coffeeShopService;
+        this.activeOrders = MultiGauge.builder("kwonka.orders.active")
+                .description("Orders waiting or being prepared")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${kwonka.metrics.active-orders-interval-ms:15000}")
+    public void refresh() {
+        try {
+            // Shops without active orders report zero rather than disappearing
+            Map<Tags, Long> counts = new LinkedHashMap<>();
+            for (CoffeeShop shop : coffeeShopService.getAllActiveShops()) {
+                for (Order.OrderStatus status : STATUSES) {
+                    counts.put(tags(shop.getCode(), status), 0L);
+                }
+            }
+            for (ShopStatusCount count : orderService.countActiveOrdersByShop()) {
+                counts.put(tags(count.coffeeShopCode(), count.status()), count.count());
+            }
+
+            List<MultiGauge.Row<?>> rows = new ArrayList<>();
+            counts.forEach((tags, count) -> rows.add(MultiGauge.Row.of(tags, count)));
+            activeOrders.register(rows, true);
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh active order gauges", e);
+        }
+    }
+
+    private static Tags tags(String coffeeShopCode, Order.OrderStatus status) {
+        return Tags.of("shop", coffeeShopCode, "status", status.name());
+    }
+}
@@ -0,0 +1,159 @@
+package com.kwonka.admin.service;
+
+import com.kwonka.common.entity.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Delivers delayed-order alerts to all monitoring admins as one digest message per admin.
+ * <p>
+ * Breached orders are collected for a short window and then sent together, so a burst of
+ * delayed orders costs one message per admin instead of one per admin and order. The digests
+ * for all admins are handed to the sender at once; it queues them in the outbox, which sends to
+ * different chats in parallel within the Bot API limits. Delivery is tracked per admin and order:
+ * an admin whose digest failed gets those orders again later, without repeating them to the
+ * admins who already received them.
+ */
+@Service
+@Slf4j
+public class AdminAlertBroadcaster implements SmartLifecycle {
+
+    // Orders breached within this window after the first one go into the same digest
+    private static final Duration COALESCE_WINDOW = Duration.ofSeconds(2);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final OrderMonitorService orderMonitorService;
+
+    private final Object lock = new Object();
+    // Breached orders waiting for the next digest, by order ID
+    private Map<Long, Map.Entry<Order, Integer>> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private volatile BiFunction<Long, List<Map.Entry<Order, Integer>>, CompletableFuture<?>> digestSender =
+            (adminChatId, delayedOrders) -> CompletableFuture.completedFuture(null);
+    private volatile ScheduledExecutorService scheduler;
+
+    public AdminAlertBroadcaster(OrderMonitorService orderMonitorService) {
+        this.orderMonitorService = orderMonitorService;
+    }
+
+    /**
+     * @param digestSender Sends the delayed orders with their wait time in minutes to an admin chat,
+     *                     the returned future completes once the message is delivered
+     */
+    public void onDigest(BiFunction<Long, List<Map.Entry<Order, Integer>>, CompletableFuture<?>> digestSender) {
+        this.digestSender = digestSender;
+    }
+
+    /**
+     * Queues an alert about an order pending for too long, called by OrderSlaTracker
+     */
+    public void submit(Order order, int waitTimeMinutes) {
+        synchronized (lock) {
+            pending.put(order.getId(), Map.entry(order, waitTimeMinutes));
+            if (!flushScheduled && scheduler != null) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, COALESCE_WINDOW.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admin-alerts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        synchronized (lock) {
+            scheduler = executor;
+            // Breaches reported before the start are sent with the first window
+            if (!pending.isEmpty()) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, COALESCE_WINDOW.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (lock) {
+            executor = scheduler;
+            scheduler = null;
+            flushScheduled = false;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void flush() {
+        List<Map.Entry<Order, Integer>> delayedOrders;
+        synchronized (lock) {
+            delayedOrders = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        if (delayedOrders.isEmpty()) {
+            return;
+        }
+
+        List<Long> adminChatIds = orderMonitorService.getActiveAdminMonitors();
+        log.info("Alerting {} admins about {} delayed orders", adminChatIds.size(), delayedOrders.size());
+        for (Long adminChatId : adminChatIds) {
+            deliver(adminChatId, delayedOrders, 1);
+        }
+    }
+
+    private void deliver(Long adminChatId, List<Map.Entry<Order, Integer>> delayedOrders, int attempt) {
+        // Marking before sending keeps overlapping digests from repeating an order to the same admin
+        List<Map.Entry<Order, Integer>> undelivered = delayedOrders.stream()
+                .filter(entry -> orderMonitorService.markOrderAsNotified(adminChatId, entry.getKey().getId()))
+                .toList();
+        if (undelivered.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture<?> delivery;
+        try {
+            delivery = digestSender.apply(adminChatId, undelivered);
+        } catch (RuntimeException e) {
+            delivery = CompletableFuture.failedFuture(e);
+        }
+
+        delivery.whenComplete((sent, error) -> {
+            if (error == null) {
+                return;
+            }
+            undelivered.forEach(entry -> orderMonitorService.clearOrderNotification(adminChatId, entry.getKey().getId()));
+            ScheduledExecutorService executor = scheduler;
+            if (attempt < MAX_ATTEMPTS && executor != null) {
+                log.warn("Failed to alert admin {} about {} delayed orders, retrying in {}",
+                        adminChatId, undelivered.size(), RETRY_DELAY, error);
+                executor.schedule(() -> deliver(adminChatId, undelivered, attempt + 1),
+                        RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                log.error("Giving up alerting admin {} about {} delayed orders", adminChatId, undelivered.size(), error);
+            }
+        });
+    }
+}
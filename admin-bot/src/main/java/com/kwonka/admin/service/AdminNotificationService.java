@@ -1,19 +1,22 @@
 package com.kwonka.admin.service;
 
 import com.kwonka.common.entity.Order;
+import com.kwonka.common.telegram.CallbackAction;
+import com.kwonka.common.telegram.TelegramOutbox;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.DefaultAbsSender;
-import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.api.methods.ParseMode;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service for sending notifications to baristas from the admin bot
@@ -23,13 +26,18 @@ import java.util.List;
 public class AdminNotificationService extends DefaultAbsSender {
 
     private final String baristaBotToken;
+    private final TelegramOutbox telegramOutbox;
 
     /**
      * Constructor that takes the barista bot token
      */
-    public AdminNotificationService(@Value("${telegram.bot.barista.token}") String botToken) {
-        super(new DefaultBotOptions(), botToken);
+    public AdminNotificationService(@Value("${telegram.bot.barista.token}") String botToken,
+                                    @Value("${telegram.api-url:https://api.telegram.org/bot}") String apiUrl,
+                                    @Value("${kwonka.telegram.per-second.barista}") int perSecond,
+                                    MeterRegistry meterRegistry) {
+        super(TelegramOutbox.newBotOptions(apiUrl), botToken);
         this.baristaBotToken = botToken;
+        this.telegramOutbox = new TelegramOutbox(this, "admin-notifications", perSecond, meterRegistry);
     }
 
     /**
@@ -38,11 +46,11 @@ public class AdminNotificationService extends DefaultAbsSender {
      * @param baristaChatId   The barista's chat ID
      * @param order           The order details
      * @param waitTimeMinutes How long the order has been waiting
+     * @return Future completed once Telegram accepted the message, exceptionally if it did not
      */
-    public void notifyBarista(Long baristaChatId, Order order, int waitTimeMinutes) {
+    public CompletableFuture<Message> notifyBarista(Long baristaChatId, Order order, int waitTimeMinutes) {
         if (baristaChatId == null) {
-            log.error("Cannot send notification: barista chat ID is null");
-            return;
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Barista chat ID is null"));
         }
 
         String messageText = String.format(
@@ -74,19 +82,19 @@ public class AdminNotificationService extends DefaultAbsSender {
 
         InlineKeyboardButton takeButton = new InlineKeyboardButton();
         takeButton.setText("✅ Принять заказ");
-        takeButton.setCallbackData("take_order:" + order.getOrderNumber());
+        takeButton.setCallbackData(CallbackAction.TAKE_ORDER.encode(order.getOrderNumber()));
         row.add(takeButton);
 
         rows.add(row);
         inlineKeyboardMarkup.setKeyboard(rows);
         message.setReplyMarkup(inlineKeyboardMarkup);
 
-        try {
-            execute(message);
-            log.info("Admin notification sent to barista {}", baristaChatId);
-        } catch (TelegramApiException e) {
-            log.error("Failed to send admin notification to barista {}", baristaChatId, e);
-        }
+        return telegramOutbox.send(message)
+                .whenComplete((sent, e) -> {
+                    if (e == null) {
+                        log.info("Admin notification sent to barista {}", baristaChatId);
+                    }
+                });
     }
 
     @Override
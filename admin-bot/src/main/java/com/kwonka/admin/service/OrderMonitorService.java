@@ -2,17 +2,18 @@ package com.kwonka.admin.service;
 
 import com.kwonka.common.entity.Order;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ExpiringKeySet;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for monitoring orders that have been pending for too long
@@ -22,13 +23,19 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class OrderMonitorService {
 
+    // Pending orders waiting this long are listed as delayed
+    public static final Duration DELAY_THRESHOLD = Duration.ofMinutes(5);
+
+    // An admin is not alerted about the same order again for this long
+    private static final Duration NOTIFICATION_DEDUP_TTL = Duration.ofHours(1);
+
     private final OrderService orderService;
 
-    // Map to store admin chat IDs that are monitoring pending orders
-    private final Map<Long, Boolean> adminMonitors = new HashMap<>();
+    // Admin chat IDs that are monitoring pending orders
+    private final Set<Long> adminMonitors = ConcurrentHashMap.newKeySet();
 
-    // Map to store notifications already sent to admins (to avoid spamming)
-    private final Map<String, Boolean> notifiedOrders = new HashMap<>();
+    // Orders each admin was already alerted about (to avoid spamming), forgotten on their own
+    private final ExpiringKeySet<Recipient> notifiedOrders = new ExpiringKeySet<>(NOTIFICATION_DEDUP_TTL);
 
     /**
      * Register an admin to receive notifications about pending orders
@@ -36,8 +43,9 @@ public class OrderMonitorService {
      * @param adminChatId Admin's Telegram chat ID
      */
     public void registerAdminMonitor(Long adminChatId) {
-        adminMonitors.put(adminChatId, true);
-        log.info("Admin {} registered for order monitoring", adminChatId);
+        if (adminMonitors.add(adminChatId)) {
+            log.info("Admin {} registered for order monitoring", adminChatId);
+        }
     }
 
     /**
@@ -56,7 +64,7 @@ public class OrderMonitorService {
      * @return List of admin chat IDs
      */
     public List<Long> getActiveAdminMonitors() {
-        return new ArrayList<>(adminMonitors.keySet());
+        return new ArrayList<>(adminMonitors);
     }
 
     /**
@@ -74,7 +82,7 @@ public class OrderMonitorService {
             LocalDateTime createdAt = order.getCreatedAt();
             int waitTimeMinutes = (int) Duration.between(createdAt, now).toMinutes();
 
-            if (waitTimeMinutes >= 5) {
+            if (waitTimeMinutes >= DELAY_THRESHOLD.toMinutes()) {
                 delayedOrders.add(Map.entry(order, waitTimeMinutes));
             }
         }
@@ -83,55 +91,26 @@ public class OrderMonitorService {
     }
 
     /**
-     * Check if an order has been notified to admins already
+     * Mark an order as notified to an admin, unless it already is
      *
-     * @param orderNumber Order number
-     * @return True if already notified
-     */
-    public boolean isOrderAlreadyNotified(String orderNumber) {
-        return notifiedOrders.containsKey(orderNumber);
-    }
-
-    /**
-     * Mark an order as notified to admins
-     *
-     * @param orderNumber Order number
+     * @param adminChatId Admin's Telegram chat ID
+     * @param orderId     Order ID
+     * @return True if the admin was not notified yet and should be alerted now
      */
-    public void markOrderAsNotified(String orderNumber) {
-        notifiedOrders.put(orderNumber, true);
+    public boolean markOrderAsNotified(Long adminChatId, Long orderId) {
+        return notifiedOrders.add(new Recipient(adminChatId, orderId));
     }
 
     /**
-     * Clear notification status for an order (e.g., when it's taken by a barista)
+     * Clear notification status of an order for an admin (e.g., when the alert could not be delivered)
      *
-     * @param orderNumber Order number
+     * @param adminChatId Admin's Telegram chat ID
+     * @param orderId     Order ID
      */
-    public void clearOrderNotification(String orderNumber) {
-        notifiedOrders.remove(orderNumber);
+    public void clearOrderNotification(Long adminChatId, Long orderId) {
+        notifiedOrders.remove(new Recipient(adminChatId, orderId));
     }
 
-    /**
-     * Scheduled task to clean up very old notifications (over 1 hour)
-     */
-    @Scheduled(fixedRate = 3600000) // Run every hour
-    public void cleanupOldNotifications() {
-        List<Order> completedOrders = orderService.getOrdersByStatus(Order.OrderStatus.COMPLETED);
-        List<Order> inProgressOrders = orderService.getOrdersByStatus(Order.OrderStatus.IN_PREPARATION);
-        List<Order> readyOrders = orderService.getOrdersByStatus(Order.OrderStatus.READY);
-
-        // Clean up notification status for orders that are no longer pending
-        for (Order order : completedOrders) {
-            clearOrderNotification(order.getOrderNumber());
-        }
-
-        for (Order order : inProgressOrders) {
-            clearOrderNotification(order.getOrderNumber());
-        }
-
-        for (Order order : readyOrders) {
-            clearOrderNotification(order.getOrderNumber());
-        }
-
-        log.info("Cleaned up order notifications");
+    private record Recipient(Long adminChatId, Long orderId) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package com.kwonka.admin.service;
+
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.service.BotCommunicationService;
+import com.kwonka.common.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Alerts about orders left PENDING for too long, at the moment they cross the threshold.
+ * <p>
+ * Every pending order has a deadline in a DelayQueue: it is added when the order is created and
+ * dropped when the order leaves PENDING, both learned from order events. A single thread waits for
+ * the nearest deadline; when one expires the order is re-read and, if still pending, handed to the
+ * breach handler. On start the deadlines of all pending orders are rebuilt from the database, those
+ * already past their threshold fire right away.
+ */
+@Service
+@Slf4j
+public class OrderSlaTracker implements SmartLifecycle {
+
+    private final OrderService orderService;
+    private final Duration pendingThreshold;
+
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+    // The live deadline per order ID; queue entries no longer in here were cancelled and are skipped
+    private final Map<Long, Deadline> tracked = new ConcurrentHashMap<>();
+
+    private volatile BiConsumer<Order, Integer> breachHandler = (order, waitTimeMinutes) -> {
+    };
+    private volatile boolean running;
+    private Thread trackerThread;
+
+    public OrderSlaTracker(OrderService orderService,
+                           @Value("${kwonka.sla.pending-threshold:10m}") Duration pendingThreshold) {
+        this.orderService = orderService;
+        this.pendingThreshold = pendingThreshold;
+    }
+
+    /**
+     * @param breachHandler Called with the order and its wait time in minutes once it has been pending for the threshold
+     */
+    public void onBreach(BiConsumer<Order, Integer> breachHandler) {
+        this.breachHandler = breachHandler;
+    }
+
+    /**
+     * @return orders currently waiting for their deadline
+     */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleOrderStatusChange(BotCommunicationService.OrderStatusChangeEvent event) {
+        Order order = event.getOrder();
+        if (order.getStatus() == Order.OrderStatus.PENDING) {
+            track(order);
+        } else {
+            cancel(order.getId());
+        }
+    }
+
+    @Override
+    public void start() {
+        List<Order> pendingOrders = orderService.getOrdersByStatus(Order.OrderStatus.PENDING);
+        pendingOrders.forEach(this::track);
+        log.info("Tracking {} pending orders against a {} threshold", pendingOrders.size(), pendingThreshold);
+
+        running = true;
+        trackerThread = new Thread(this::run, "order-sla-tracker");
+        trackerThread.setDaemon(true);
+        trackerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (trackerThread != null) {
+            trackerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void track(Order order) {
+        if (order.getId() == null || order.getCreatedAt() == null) {
+            return;
+        }
+        Duration age = Duration.between(order.getCreatedAt(), LocalDateTime.now());
+        Deadline deadline = new Deadline(order.getId(), order.getOrderNumber(),
+                System.nanoTime() + pendingThreshold.minus(age).toNanos());
+        // An order already tracked keeps its deadline, events may be delivered more than once
+        if (tracked.putIfAbsent(order.getId(), deadline) == null) {
+            deadlines.add(deadline);
+        }
+    }
+
+    private void cancel(Long orderId) {
+        if (orderId != null) {
+            tracked.remove(orderId);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            Deadline deadline;
+            try {
+                deadline = deadlines.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (tracked.remove(deadline.orderId, deadline)) {
+                fire(deadline);
+            }
+        }
+    }
+
+    private void fire(Deadline deadline) {
+        try {
+            // A missed event must not turn into a false alarm
+            Order order = orderService.getOrderByNumber(deadline.orderNumber).orElse(null);
+            if (order == null || order.getStatus() != Order.OrderStatus.PENDING) {
+                return;
+            }
+            int waitTimeMinutes = (int) Duration.between(order.getCreatedAt(), LocalDateTime.now()).toMinutes();
+            log.info("Order {} has been pending for {} minutes", order.getOrderNumber(), waitTimeMinutes);
+            breachHandler.accept(order, waitTimeMinutes);
+        } catch (RuntimeException e) {
+            log.error("Failed to handle SLA breach of order {}", deadline.orderNumber, e);
+        }
+    }
+
+    private static final class Deadline implements Delayed {
+        private final Long orderId;
+        private final String orderNumber;
+        private final long dueAtNanos;
+
+        private Deadline(Long orderId, String orderNumber, long dueAtNanos) {
+            this.orderId = orderId;
+            this.orderNumber = orderNumber;
+            this.dueAtNanos = dueAtNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            // nanoTime values are only comparable by their difference
+            return Long.signum(dueAtNanos - ((Deadline) other).dueAtNanos);
+        }
+    }
+}
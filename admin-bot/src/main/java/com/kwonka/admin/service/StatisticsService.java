@@ -1,21 +1,28 @@
 package com.kwonka.admin.service;
 
 import com.kwonka.common.entity.CoffeeShop;
-import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.DrinkTotals;
+import com.kwonka.common.repository.ShopOrderTotals;
 import com.kwonka.common.service.CoffeeShopService;
-import com.kwonka.common.service.OrderService;
+import com.kwonka.common.service.DailyStatsRollupService;
+import com.kwonka.common.service.StageTimingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Service for generating statistics about orders
@@ -25,53 +32,83 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class StatisticsService {
 
-    private final OrderService orderService;
+    private final DailyStatsRollupService dailyStatsRollupService;
     private final CoffeeShopService coffeeShopService;
+    private final StageTimingService stageTimingService;
 
     /**
      * Statistics for a single coffee shop
      */
     public static class CoffeeShopStats {
         private final String name;
-        private int orderCount;
+        private long orderCount;
         private BigDecimal totalRevenue;
+        private final Map<StageTimingService.Stage, StageTiming> stageTimings;
 
         public CoffeeShopStats(String name) {
             this.name = name;
             this.orderCount = 0;
             this.totalRevenue = BigDecimal.ZERO;
+            this.stageTimings = new EnumMap<>(StageTimingService.Stage.class);
         }
 
-        public void addOrder(Order order) {
-            orderCount++;
-            totalRevenue = totalRevenue.add(order.getTotalPrice());
+        public void add(long orders, BigDecimal revenue) {
+            orderCount += orders;
+            totalRevenue = totalRevenue.add(revenue);
+        }
+
+        public void addStageTimings(Map<StageTimingService.Stage, Histogram> histograms) {
+            histograms.forEach((stage, histogram) -> stageTimings.put(stage, StageTiming.of(histogram)));
         }
 
         public String getName() {
             return name;
         }
 
-        public int getOrderCount() {
+        public long getOrderCount() {
             return orderCount;
         }
 
         public BigDecimal getTotalRevenue() {
             return totalRevenue;
         }
+
+        public Map<StageTimingService.Stage, StageTiming> getStageTimings() {
+            return stageTimings;
+        }
     }
 
     /**
-     * Daily statistics across all coffee shops
+     * Percentiles of the time orders spent in one stage
+     *
+     * @param count Number of orders that finished the stage
      */
-    public static class DailyStats {
-        private final LocalDate date;
+    public record StageTiming(long count, Duration p50, Duration p90, Duration p99) {
+
+        static StageTiming of(Histogram histogram) {
+            return new StageTiming(histogram.getTotalCount(),
+                    Duration.ofMillis(histogram.getValueAtPercentile(50)),
+                    Duration.ofMillis(histogram.getValueAtPercentile(90)),
+                    Duration.ofMillis(histogram.getValueAtPercentile(99)));
+        }
+    }
+
+    /**
+     * Statistics across all coffee shops for a range of days (both ends inclusive)
+     */
+    public static class PeriodStats {
+        private final LocalDate from;
+        private final LocalDate to;
         private final Map<String, CoffeeShopStats> coffeeShopStats;
-        private int totalOrderCount;
+        private final Map<String, Long> drinkCounts;
+        private long totalOrderCount;
         private BigDecimal totalRevenue;
 
-        public DailyStats(LocalDate date) {
-            this.date = date;
-            this.coffeeShopStats = new HashMap<>();
+        public PeriodStats(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+            this.coffeeShopStats = new LinkedHashMap<>();
+            this.drinkCounts = new LinkedHashMap<>();
             this.totalOrderCount = 0;
             this.totalRevenue = BigDecimal.ZERO;
         }
@@ -82,15 +119,27 @@ public class StatisticsService {
             totalRevenue = totalRevenue.add(shopStats.getTotalRevenue());
         }
 
-        public LocalDate getDate() {
-            return date;
+        public void addDrinkCount(String drink, long count) {
+            drinkCounts.merge(drink, count, Long::sum);
+        }
+
+        public LocalDate getFrom() {
+            return from;
+        }
+
+        public LocalDate getTo() {
+            return to;
         }
 
         public Map<String, CoffeeShopStats> getCoffeeShopStats() {
             return coffeeShopStats;
         }
 
-        public int getTotalOrderCount() {
+        public Map<String, Long> getDrinkCounts() {
+            return drinkCounts;
+        }
+
+        public long getTotalOrderCount() {
             return totalOrderCount;
         }
 
@@ -99,6 +148,20 @@ public class StatisticsService {
         }
     }
 
+    /**
+     * Daily statistics across all coffee shops
+     */
+    public static class DailyStats extends PeriodStats {
+
+        public DailyStats(LocalDate date) {
+            super(date, date);
+        }
+
+        public LocalDate getDate() {
+            return getFrom();
+        }
+    }
+
     /**
      * Get statistics for the current day
      *
@@ -115,40 +178,79 @@ public class StatisticsService {
      * @return Daily statistics
      */
     public DailyStats getDayStats(LocalDate date) {
-        // Define day start and end
-        LocalDateTime dayStart = date.atStartOfDay();
-        LocalDateTime dayEnd = date.atTime(LocalTime.MAX);
+        return fill(new DailyStats(date));
+    }
 
-        // Get all completed orders for the day
-        List<Order> completedOrders = orderService.getOrdersByStatus(Order.OrderStatus.COMPLETED).stream()
-                .filter(order -> !order.getCreatedAt().isBefore(dayStart) && !order.getCreatedAt().isAfter(dayEnd))
-                .collect(Collectors.toList());
+    /**
+     * Get statistics for the week (Monday to Sunday) containing the given date
+     *
+     * @param date Any day of the week
+     * @return Weekly statistics
+     */
+    public PeriodStats getWeekStats(LocalDate date) {
+        LocalDate monday = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return getStats(monday, monday.plusDays(6));
+    }
 
-        // Get all coffee shops
-        List<CoffeeShop> coffeeShops = coffeeShopService.getAllActiveShops();
+    /**
+     * Get statistics for a calendar month
+     *
+     * @param month The month to get statistics for
+     * @return Monthly statistics
+     */
+    public PeriodStats getMonthStats(YearMonth month) {
+        return getStats(month.atDay(1), month.atEndOfMonth());
+    }
 
-        // Create daily stats
-        DailyStats dailyStats = new DailyStats(date);
+    /**
+     * Get statistics for a range of days
+     *
+     * @param from First day of the range
+     * @param to   Last day of the range (inclusive)
+     * @return Statistics for the range
+     */
+    public PeriodStats getStats(LocalDate from, LocalDate to) {
+        return fill(new PeriodStats(from, to));
+    }
 
-        // Calculate stats for each coffee shop
-        for (CoffeeShop shop : coffeeShops) {
-            CoffeeShopStats shopStats = new CoffeeShopStats(shop.getName());
+    /**
+     * Reads the daily rollup and stage histograms, so the cost depends on the number of days and
+     * shops, not orders
+     */
+    private <T extends PeriodStats> T fill(T stats) {
+        Map<Long, ShopOrderTotals> totalsByShop = new HashMap<>();
+        for (ShopOrderTotals totals : dailyStatsRollupService.getShopTotals(stats.getFrom(), stats.getTo())) {
+            totalsByShop.put(totals.getShopId(), totals);
+        }
+        Map<Long, Map<StageTimingService.Stage, Histogram>> histogramsByShop =
+                stageTimingService.getHistograms(stats.getFrom(), stats.getTo());
 
-            // Find orders for this shop
-            List<Order> shopOrders = completedOrders.stream()
-                    .filter(order -> order.getCoffeeShop().getId().equals(shop.getId()))
-                    .collect(Collectors.toList());
+        for (CoffeeShop shop : coffeeShopService.getAllActiveShops()) {
+            CoffeeShopStats shopStats = new CoffeeShopStats(shop.getName());
 
-            // Add each order to the shop's stats
-            for (Order order : shopOrders) {
-                shopStats.addOrder(order);
+            ShopOrderTotals totals = totalsByShop.get(shop.getId());
+            if (totals != null) {
+                shopStats.add(totals.getOrderCount(), totals.getTotalRevenue());
             }
+            shopStats.addStageTimings(histogramsByShop.getOrDefault(shop.getId(), Collections.emptyMap()));
+
+            stats.addShopStats(shopStats);
+        }
 
-            // Add the shop's stats to the daily stats
-            dailyStats.addShopStats(shopStats);
+        for (DrinkTotals drink : dailyStatsRollupService.getDrinkTotals(stats.getFrom(), stats.getTo())) {
+            stats.addDrinkCount(drink.getCoffeeType() + " (" + drink.getSize() + ")", drink.getOrderCount());
         }
 
-        return dailyStats;
+        return stats;
+    }
+
+    /**
+     * Nightly rebuild of yesterday's rollup rows to repair any drift from the incremental updates
+     */
+    @Scheduled(cron = "0 15 0 * * *")
+    public void reconcileRollup() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        dailyStatsRollupService.rebuild(yesterday, yesterday);
     }
 
     /**
@@ -158,21 +260,66 @@ public class StatisticsService {
      * @return Formatted message
      */
     public String formatDailyStats(DailyStats stats) {
+        return formatStats("📅 Дата: " + stats.getDate(), stats);
+    }
+
+    /**
+     * Format statistics for a range of days as a text message
+     *
+     * @param stats Statistics for the range
+     * @return Formatted message
+     */
+    public String formatPeriodStats(PeriodStats stats) {
+        return formatStats("📅 Период: " + stats.getFrom() + " — " + stats.getTo(), stats);
+    }
+
+    private String formatStats(String periodLine, PeriodStats stats) {
         StringBuilder message = new StringBuilder();
 
         message.append("📊 *Статистика заказов*\n\n");
-        message.append("📅 Дата: ").append(stats.getDate()).append("\n");
+        message.append(periodLine).append("\n");
         message.append("🧮 Количество заказов: ").append(stats.getTotalOrderCount()).append("\n");
         message.append("💰 Общий доход: ").append(stats.getTotalRevenue()).append(" ₸\n\n");
 
         message.append("*По кофейням:*\n");
+        message.append("_⏱ — время этапа, медиана / 90% / 99% заказов_\n");
 
         for (CoffeeShopStats shopStats : stats.getCoffeeShopStats().values()) {
             message.append("📍 ").append(shopStats.getName()).append(":\n");
             message.append("   📝 Заказов: ").append(shopStats.getOrderCount()).append("\n");
-            message.append("   💵 Доход: ").append(shopStats.getTotalRevenue()).append(" ₸\n\n");
+            message.append("   💵 Доход: ").append(shopStats.getTotalRevenue()).append(" ₸\n");
+            for (Map.Entry<StageTimingService.Stage, StageTiming> timing : shopStats.getStageTimings().entrySet()) {
+                StageTiming stage = timing.getValue();
+                message.append("   ⏱ ").append(timing.getKey().getLabel()).append(": ")
+                        .append(formatDuration(stage.p50())).append(" / ")
+                        .append(formatDuration(stage.p90())).append(" / ")
+                        .append(formatDuration(stage.p99()))
+                        .append(" (").append(stage.count()).append(")\n");
+            }
+            message.append("\n");
+        }
+
+        if (!stats.getDrinkCounts().isEmpty()) {
+            message.append("*По напиткам:*\n");
+            for (Map.Entry<String, Long> drink : stats.getDrinkCounts().entrySet()) {
+                message.append("☕ ").append(drink.getKey()).append(": ").append(drink.getValue()).append("\n");
+            }
         }
 
         return message.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * @return e.g. "45с", "4:05" or "1:02:30"
+     */
+    private static String formatDuration(Duration duration) {
+        long seconds = duration.toSeconds();
+        if (seconds < 60) {
+            return seconds + "с";
+        }
+        if (seconds < 3600) {
+            return String.format("%d:%02d", seconds / 60, seconds % 60);
+        }
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -5,11 +5,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@ComponentScan(basePackages = {"com.kwonka.barista", "com.kwonka.common.service"})
+@ComponentScan(basePackages = {"com.kwonka.barista", "com.kwonka.common.service", "com.kwonka.common.web"})
 @EntityScan("com.kwonka.common.entity")
 @EnableJpaRepositories("com.kwonka.common.repository")
+@EnableScheduling
 public class BaristaBotApplication {
     public static void main(String[] args) {
         SpringApplication.run(BaristaBotApplication.class, args);
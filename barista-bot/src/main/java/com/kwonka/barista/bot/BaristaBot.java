@@ -2,20 +2,24 @@ package com.kwonka.barista.bot;
 
 import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.entity.Order;
+import com.kwonka.common.service.BotCommunicationService;
 import com.kwonka.common.service.CoffeeShopService;
-import com.kwonka.common.service.CustomerNotificationService;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.CallbackAction;
+import com.kwonka.common.telegram.CommandRouter;
+import com.kwonka.common.telegram.DerivedKeyboard;
+import com.kwonka.common.telegram.PrebuiltKeyboard;
+import com.kwonka.common.telegram.TelegramOutbox;
+import com.kwonka.common.telegram.UpdateDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.ParseMode;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -23,29 +27,51 @@ import java.util.*;
 @Slf4j
 public class BaristaBot extends TelegramLongPollingBot {
 
+    private static final PrebuiltKeyboard WELCOME_KEYBOARD = PrebuiltKeyboard.column("Начать работу");
+    // Orders taken at once by "Взять следующие"
+    private static final int TAKE_BATCH_SIZE = 3;
+
+    private static final PrebuiltKeyboard ORDERS_MENU_KEYBOARD = PrebuiltKeyboard.of(List.of(
+            List.of("Обновить заказы", "Заказы в работе"),
+            List.of("Взять следующие " + TAKE_BATCH_SIZE, "Все мои готовы"),
+            List.of("Сменить локацию")));
+
     private final String botUsername;
     private final OrderService orderService;
     private final CoffeeShopService coffeeShopService;
-    private final CustomerNotificationService customerNotificationService;
+    private final BotCommunicationService botCommunicationService;
+    private final TelegramOutbox telegramOutbox;
+    private final UpdateDispatcher updateDispatcher;
+    private final CommandRouter<BaristaState> router;
 
-    private final Map<Long, BaristaState> baristaStates = new HashMap<>();
-    private final Map<Long, String> baristaLocations = new HashMap<>();
+    private final ConversationStateStore<BaristaSession> sessions;
+    private final DerivedKeyboard<List<CoffeeShop>> locationKeyboard =
+            new DerivedKeyboard<>(shops -> PrebuiltKeyboard.column(shops.stream().map(CoffeeShop::getName).toList()));
 
-    private enum BaristaState {
+    public enum BaristaState {
         START,
         LOCATION_SELECTION,
         VIEWING_ORDERS,
         ORDER_DETAILS
     }
 
-    public BaristaBot(String botToken, String botUsername, OrderService orderService,
+    public BaristaBot(String botToken, String apiUrl, String botUsername, OrderService orderService,
                       CoffeeShopService coffeeShopService,
-                      CustomerNotificationService customerNotificationService) {
-        super(botToken);
+                      BotCommunicationService botCommunicationService,
+                      ConversationStateStore<BaristaSession> sessions,
+                      int maxUpdatesInFlight,
+                      int perSecond,
+                      MeterRegistry meterRegistry) {
+        super(TelegramOutbox.newBotOptions(apiUrl), botToken);
+        this.telegramOutbox = new TelegramOutbox(this, "barista-bot", perSecond, meterRegistry);
+        this.updateDispatcher = new UpdateDispatcher("barista-bot", maxUpdatesInFlight, this::handleUpdate,
+                chatId -> getSession(chatId).state().name(), meterRegistry);
         this.botUsername = botUsername;
         this.orderService = orderService;
         this.coffeeShopService = coffeeShopService;
-        this.customerNotificationService = customerNotificationService;
+        this.botCommunicationService = botCommunicationService;
+        this.sessions = sessions;
+        this.router = buildRouter();
     }
 
     @Override
@@ -55,65 +81,35 @@ public class BaristaBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        updateDispatcher.dispatch(update);
+    }
+
+    /**
+     * Takes an update delivered by webhook without blocking the request
+     *
+     * @return false if too many updates are in flight and it has to be delivered again
+     */
+    public boolean offerUpdate(Update update) {
+        return updateDispatcher.tryDispatch(update);
+    }
+
+    /**
+     * Handles one update, updates of the same chat never run concurrently
+     */
+    private void handleUpdate(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
             String messageText = update.getMessage().getText();
             long chatId = update.getMessage().getChatId();
 
             log.debug("Received message: '{}' from barista chatId: {}", messageText, chatId);
 
-            // Initial command
-            if (messageText.equals("/start")) {
-                baristaStates.put(chatId, BaristaState.START);
-                baristaLocations.remove(chatId);
-                sendWelcomeMessage(chatId);
-                return;
+            // Subscriptions live in memory only, restore them when the session outlived a restart
+            String locationCode = getSession(chatId).locationCode();
+            if (locationCode != null && !botCommunicationService.isBaristaSubscribed(chatId)) {
+                subscribeToNewOrders(chatId, locationCode);
             }
 
-            // Handle the barista flow based on state
-            BaristaState currentState = baristaStates.getOrDefault(chatId, BaristaState.START);
-
-            switch (currentState) {
-                case START:
-                    if (messageText.equals("Начать работу")) {
-                        baristaStates.put(chatId, BaristaState.LOCATION_SELECTION);
-                        sendLocationSelectionMessage(chatId);
-                    } else {
-                        sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                case LOCATION_SELECTION:
-                    // Find the coffee shop by name
-                    Optional<CoffeeShop> coffeeShopOpt = coffeeShopService.getAllActiveShops().stream()
-                            .filter(shop -> shop.getName().equals(messageText))
-                            .findFirst();
-
-                    if (coffeeShopOpt.isPresent()) {
-                        baristaLocations.put(chatId, coffeeShopOpt.get().getCode());
-                        baristaStates.put(chatId, BaristaState.VIEWING_ORDERS);
-                        sendLocationConfirmation(chatId, coffeeShopOpt.get().getName());
-                        sendPendingOrders(chatId);
-                    } else {
-                        sendInvalidLocationMessage(chatId);
-                    }
-                    break;
-
-                case VIEWING_ORDERS:
-                    switch (messageText) {
-                        case "Обновить заказы" -> sendPendingOrders(chatId);
-                        case "Сменить локацию" -> {
-                            baristaStates.put(chatId, BaristaState.LOCATION_SELECTION);
-                            sendLocationSelectionMessage(chatId);
-                        }
-                        case "Заказы в работе" -> sendInProgressOrders(chatId);
-                        default -> sendUnknownCommandMessage(chatId);
-                    }
-                    break;
-
-                default:
-                    sendUnknownCommandMessage(chatId);
-                    break;
-            }
+            router.route(chatId, messageText);
         } else if (update.hasCallbackQuery()) {
             // Handle callback queries from inline buttons
             String callbackData = update.getCallbackQuery().getData();
@@ -121,44 +117,70 @@ public class BaristaBot extends TelegramLongPollingBot {
 
             log.debug("Received callback: '{}' from barista chatId: {}", callbackData, chatId);
 
-            if (callbackData.startsWith("take_order:")) {
-                String orderNumber = callbackData.substring("take_order:".length());
-                handleTakeOrder(chatId, orderNumber);
-            } else if (callbackData.startsWith("ready_order:")) {
-                String orderNumber = callbackData.substring("ready_order:".length());
-                handleOrderReady(chatId, orderNumber);
-            } else if (callbackData.startsWith("view_order:")) {
-                String orderNumber = callbackData.substring("view_order:".length());
-                sendOrderDetails(chatId, orderNumber);
+            if (!router.routeCallback(chatId, callbackData)) {
+                log.debug("Ignoring unknown callback '{}' from barista chatId: {}", callbackData, chatId);
             }
         }
     }
 
+    private CommandRouter<BaristaState> buildRouter() {
+        return CommandRouter.builder(BaristaState.class, chatId -> getSession(chatId).state())
+                .command("/start", (chatId, text) -> {
+                    sessions.put(chatId, BaristaSession.NEW);
+                    botCommunicationService.unsubscribeBarista(chatId);
+                    sendWelcomeMessage(chatId);
+                })
+
+                .on(BaristaState.START, "Начать работу", (chatId, text) -> {
+                    setState(chatId, BaristaState.LOCATION_SELECTION);
+                    sendLocationSelectionMessage(chatId);
+                })
+                .onAnyText(BaristaState.LOCATION_SELECTION, this::handleLocationSelection)
+
+                .on(BaristaState.VIEWING_ORDERS, "Обновить заказы", (chatId, text) -> sendPendingOrders(chatId))
+                .on(BaristaState.VIEWING_ORDERS, "Заказы в работе", (chatId, text) -> sendInProgressOrders(chatId))
+                .on(BaristaState.VIEWING_ORDERS, "Взять следующие " + TAKE_BATCH_SIZE, (chatId, text) -> handleTakeNextOrders(chatId))
+                .on(BaristaState.VIEWING_ORDERS, "Все мои готовы", (chatId, text) -> handleAllMyOrdersReady(chatId))
+                .on(BaristaState.VIEWING_ORDERS, "Сменить локацию", (chatId, text) -> {
+                    botCommunicationService.unsubscribeBarista(chatId);
+                    sessions.put(chatId, new BaristaSession(BaristaState.LOCATION_SELECTION, null));
+                    sendLocationSelectionMessage(chatId);
+                })
+                .unknown((chatId, text) -> sendUnknownCommandMessage(chatId))
+
+                .callback(CallbackAction.TAKE_ORDER,
+                        (chatId, data, args) -> handleTakeOrder(chatId, CallbackAction.arg(data, args, 0)))
+                .callback(CallbackAction.READY_ORDER,
+                        (chatId, data, args) -> handleOrderReady(chatId, CallbackAction.arg(data, args, 0)))
+                .callback(CallbackAction.VIEW_ORDER,
+                        (chatId, data, args) -> sendOrderDetails(chatId, CallbackAction.arg(data, args, 0)))
+                .build();
+    }
+
+    private void handleLocationSelection(long chatId, String messageText) {
+        // Find the coffee shop by name
+        Optional<CoffeeShop> coffeeShopOpt = coffeeShopService.findActiveShopByName(messageText);
+
+        if (coffeeShopOpt.isPresent()) {
+            sessions.put(chatId, new BaristaSession(BaristaState.VIEWING_ORDERS, coffeeShopOpt.get().getCode()));
+            subscribeToNewOrders(chatId, coffeeShopOpt.get().getCode());
+            sendLocationConfirmation(chatId, coffeeShopOpt.get().getName());
+            sendPendingOrders(chatId);
+        } else {
+            sendInvalidLocationMessage(chatId);
+        }
+    }
+
     private void sendWelcomeMessage(long chatId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText("Добро пожаловать в бота для барист One Shott Coffee! ☕\n" +
                 "Нажмите кнопку, чтобы начать работу.");
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        message.setReplyMarkup(WELCOME_KEYBOARD);
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Начать работу"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Welcome message sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending welcome message to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Welcome message queued for barista chatId: {}", chatId);
     }
 
     private void sendLocationSelectionMessage(long chatId) {
@@ -166,45 +188,22 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("В какой кофейне вы работаете?");
 
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        List<CoffeeShop> coffeeShops = coffeeShopService.getAllActiveShops();
-
-        for (CoffeeShop shop : coffeeShops) {
-            KeyboardRow row = new KeyboardRow();
-            row.add(new KeyboardButton(shop.getName()));
-            keyboard.add(row);
-        }
+        message.setReplyMarkup(locationKeyboard.get(coffeeShopService.getAllActiveShops()));
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Location selection message sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending location selection message to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Location selection message queued for barista chatId: {}", chatId);
     }
 
     private void sendLocationConfirmation(long chatId, String location) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText("Вы выбрали локацию: " + location + "\n" +
-                "Супер! Вы будете получать заказы только из этой локации.");
+                "Супер! Вы будете получать заказы только из этой локации.\n" +
+                "Новые заказы будут приходить сюда автоматически.");
 
-        try {
-            execute(message);
-            log.debug("Location confirmation sent to barista chatId: {}", chatId);
-            baristaStates.put(chatId, BaristaState.VIEWING_ORDERS);
-        } catch (TelegramApiException e) {
-            log.error("Error sending location confirmation to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Location confirmation queued for barista chatId: {}", chatId);
+        setState(chatId, BaristaState.VIEWING_ORDERS);
     }
 
     private void sendInvalidLocationMessage(long chatId) {
@@ -212,15 +211,11 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Пожалуйста, выберите локацию из предложенных вариантов.");
 
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Error sending invalid location message to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
     }
 
     private void sendPendingOrders(long chatId) {
-        String locationCode = baristaLocations.get(chatId);
+        String locationCode = getSession(chatId).locationCode();
         if (locationCode == null) {
             sendLocationSelectionMessage(chatId);
             return;
@@ -273,12 +268,12 @@ public class BaristaBot extends TelegramLongPollingBot {
 
             InlineKeyboardButton viewButton = new InlineKeyboardButton();
             viewButton.setText("🔍 #" + order.getOrderNumber());
-            viewButton.setCallbackData("view_order:" + order.getOrderNumber());
+            viewButton.setCallbackData(CallbackAction.VIEW_ORDER.encode(order.getOrderNumber()));
             row.add(viewButton);
 
             InlineKeyboardButton takeButton = new InlineKeyboardButton();
             takeButton.setText("✅ Принять");
-            takeButton.setCallbackData("take_order:" + order.getOrderNumber());
+            takeButton.setCallbackData(CallbackAction.TAKE_ORDER.encode(order.getOrderNumber()));
             row.add(takeButton);
 
             rows.add(row);
@@ -294,24 +289,18 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setReplyMarkup(inlineKeyboardMarkup);
 
         // Also add reply keyboard with refresh button
-        ReplyKeyboardMarkup replyKeyboardMarkup = getOrdersMenuKeyboard();
-
         SendMessage menuMessage = new SendMessage();
         menuMessage.setChatId(chatId);
         menuMessage.setText("Меню:");
-        menuMessage.setReplyMarkup(replyKeyboardMarkup);
+        menuMessage.setReplyMarkup(ORDERS_MENU_KEYBOARD);
 
-        try {
-            execute(message);
-            execute(menuMessage);
-            log.debug("Pending orders sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending pending orders to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        telegramOutbox.send(menuMessage);
+        log.debug("Pending orders queued for barista chatId: {}", chatId);
     }
 
     private void sendInProgressOrders(long chatId) {
-        String locationCode = baristaLocations.get(chatId);
+        String locationCode = getSession(chatId).locationCode();
         if (locationCode == null) {
             sendLocationSelectionMessage(chatId);
             return;
@@ -364,12 +353,12 @@ public class BaristaBot extends TelegramLongPollingBot {
 
             InlineKeyboardButton viewButton = new InlineKeyboardButton();
             viewButton.setText("🔍 #" + order.getOrderNumber());
-            viewButton.setCallbackData("view_order:" + order.getOrderNumber());
+            viewButton.setCallbackData(CallbackAction.VIEW_ORDER.encode(order.getOrderNumber()));
             row.add(viewButton);
 
             InlineKeyboardButton readyButton = new InlineKeyboardButton();
             readyButton.setText("✅ Готов");
-            readyButton.setCallbackData("ready_order:" + order.getOrderNumber());
+            readyButton.setCallbackData(CallbackAction.READY_ORDER.encode(order.getOrderNumber()));
             row.add(readyButton);
 
             rows.add(row);
@@ -384,12 +373,71 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setParseMode(ParseMode.MARKDOWN);
         message.setReplyMarkup(inlineKeyboardMarkup);
 
-        try {
-            execute(message);
-            log.debug("In-progress orders sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending in-progress orders to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("In-progress orders queued for barista chatId: {}", chatId);
+    }
+
+    /**
+     * New orders of the location are pushed to the barista as soon as they are created,
+     * so there is no need to tap "Обновить заказы"
+     */
+    private BaristaSession getSession(long chatId) {
+        BaristaSession session = sessions.get(chatId);
+        return session != null ? session : BaristaSession.NEW;
+    }
+
+    private void setState(long chatId, BaristaState state) {
+        sessions.put(chatId, getSession(chatId).withState(state));
+    }
+
+    private void subscribeToNewOrders(long chatId, String locationCode) {
+        botCommunicationService.subscribeBarista(locationCode, chatId, order -> {
+            if (order.getStatus() == Order.OrderStatus.PENDING) {
+                sendNewOrderNotification(chatId, order);
+            }
+        });
+    }
+
+    private void sendNewOrderNotification(long chatId, Order order) {
+        String messageText = String.format(
+                "🆕 *Новый заказ #%s*\n" +
+                        "☕ %s (%s)\n" +
+                        "%s\n" +
+                        "%s\n" +
+                        "💰 %s ₸",
+                order.getOrderNumber(),
+                order.getCoffeeType(),
+                order.getSize(),
+                order.getMilkType() != null ? "🥛 " + order.getMilkType() : "",
+                order.getSyrupType() != null ? "🍯 " + order.getSyrupType() : "",
+                order.getTotalPrice()
+        );
+
+        InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        List<InlineKeyboardButton> row = new ArrayList<>();
+
+        InlineKeyboardButton viewButton = new InlineKeyboardButton();
+        viewButton.setText("🔍 #" + order.getOrderNumber());
+        viewButton.setCallbackData(CallbackAction.VIEW_ORDER.encode(order.getOrderNumber()));
+        row.add(viewButton);
+
+        InlineKeyboardButton takeButton = new InlineKeyboardButton();
+        takeButton.setText("✅ Принять");
+        takeButton.setCallbackData(CallbackAction.TAKE_ORDER.encode(order.getOrderNumber()));
+        row.add(takeButton);
+
+        rows.add(row);
+        inlineKeyboardMarkup.setKeyboard(rows);
+
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(messageText);
+        message.setParseMode(ParseMode.MARKDOWN);
+        message.setReplyMarkup(inlineKeyboardMarkup);
+
+        telegramOutbox.send(message);
+        log.debug("New order {} pushed to barista chatId: {}", order.getOrderNumber(), chatId);
     }
 
     private void sendNoOrdersMessage(long chatId, String orderType) {
@@ -398,15 +446,10 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setText("На данный момент нет " + orderType + " заказов. Ожидайте новых заказов.");
 
         // Add the orders menu keyboard to allow refresh and other options
-        ReplyKeyboardMarkup keyboardMarkup = getOrdersMenuKeyboard();
-        message.setReplyMarkup(keyboardMarkup);
+        message.setReplyMarkup(ORDERS_MENU_KEYBOARD);
 
-        try {
-            execute(message);
-            log.debug("No orders message sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending no orders message to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("No orders message queued for barista chatId: {}", chatId);
     }
 
     private void sendUnknownCommandMessage(long chatId) {
@@ -414,11 +457,7 @@ public class BaristaBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Извините, я не понимаю эту команду. Пожалуйста, воспользуйтесь предложенными кнопками или отправьте /start, чтобы начать заново.");
 
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Error sending unknown command message to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
     }
 
     private void sendOrderDetails(long chatId, String orderNumber) {
@@ -429,11 +468,7 @@ public class BaristaBot extends TelegramLongPollingBot {
             message.setChatId(chatId);
             message.setText("Заказ #" + orderNumber + " не найден.");
 
-            try {
-                execute(message);
-            } catch (TelegramApiException e) {
-                log.error("Error sending order not found message to barista chatId: {}", chatId, e);
-            }
+            telegramOutbox.send(message);
             return;
         }
 
@@ -468,12 +503,12 @@ public class BaristaBot extends TelegramLongPollingBot {
         if (order.getStatus() == Order.OrderStatus.PENDING) {
             InlineKeyboardButton takeButton = new InlineKeyboardButton();
             takeButton.setText("✅ Принять заказ");
-            takeButton.setCallbackData("take_order:" + order.getOrderNumber());
+            takeButton.setCallbackData(CallbackAction.TAKE_ORDER.encode(order.getOrderNumber()));
             row.add(takeButton);
         } else if (order.getStatus() == Order.OrderStatus.IN_PREPARATION) {
             InlineKeyboardButton readyButton = new InlineKeyboardButton();
             readyButton.setText("✅ Заказ готов");
-            readyButton.setCallbackData("ready_order:" + order.getOrderNumber());
+            readyButton.setCallbackData(CallbackAction.READY_ORDER.encode(order.getOrderNumber()));
             row.add(readyButton);
         }
 
@@ -490,24 +525,30 @@ public class BaristaBot extends TelegramLongPollingBot {
             message.setReplyMarkup(inlineKeyboardMarkup);
         }
 
-        try {
-            execute(message);
-            log.debug("Order details sent to barista chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending order details to barista chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Order details queued for barista chatId: {}", chatId);
     }
 
     private void handleTakeOrder(long chatId, String orderNumber) {
         try {
-            Order updatedOrder = orderService.updateOrderStatus(orderNumber, Order.OrderStatus.IN_PREPARATION);
+            if (!orderService.takeOrder(orderNumber, chatId)) {
+                SendMessage message = new SendMessage();
+                message.setChatId(chatId);
+                message.setText("⚠️ Заказ #" + orderNumber + " уже принят другим баристой или отменен.");
+
+                telegramOutbox.send(message);
+                log.info("Barista {} lost order {} to another barista", chatId, orderNumber);
+
+                sendPendingOrders(chatId);
+                return;
+            }
 
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
             message.setText("✅ Вы приняли заказ #" + orderNumber + " в работу!");
             message.setParseMode(ParseMode.MARKDOWN);
 
-            execute(message);
+            telegramOutbox.send(message);
             log.info("Barista {} took order {} into preparation", chatId, orderNumber);
 
             // Refresh the orders list
@@ -518,11 +559,7 @@ public class BaristaBot extends TelegramLongPollingBot {
             message.setChatId(chatId);
             message.setText("❌ Ошибка при принятии заказа #" + orderNumber + ". Попробуйте еще раз.");
 
-            try {
-                execute(message);
-            } catch (TelegramApiException ex) {
-                log.error("Error sending error message to barista chatId: {}", chatId, ex);
-            }
+            telegramOutbox.send(message);
 
             log.error("Error taking order {} by barista {}", orderNumber, chatId, e);
         }
@@ -530,19 +567,27 @@ public class BaristaBot extends TelegramLongPollingBot {
 
     private void handleOrderReady(long chatId, String orderNumber) {
         try {
-            Order updatedOrder = orderService.updateOrderStatus(orderNumber, Order.OrderStatus.READY);
+            // The customer notification is queued in the same transaction and sent by NotificationOutboxDispatcher
+            if (!orderService.transition(orderNumber, Order.OrderStatus.IN_PREPARATION, Order.OrderStatus.READY)) {
+                SendMessage message = new SendMessage();
+                message.setChatId(chatId);
+                message.setText("⚠️ Заказ #" + orderNumber + " уже не в работе.");
+
+                telegramOutbox.send(message);
+                log.info("Order {} was no longer in preparation when barista {} marked it ready", orderNumber, chatId);
+
+                sendInProgressOrders(chatId);
+                return;
+            }
 
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
-            message.setText("✨ Заказ #" + orderNumber + " отмечен как готовый! Клиент получил уведомление.");
+            message.setText("✨ Заказ #" + orderNumber + " отмечен как готовый! Клиент получит уведомление.");
             message.setParseMode(ParseMode.MARKDOWN);
 
-            execute(message);
+            telegramOutbox.send(message);
             log.info("Barista {} marked order {} as ready", chatId, orderNumber);
 
-            // Notify the customer that their order is ready
-            notifyCustomerOrderReady(updatedOrder);
-
             // Refresh the in-progress orders list
             sendInProgressOrders(chatId);
 
@@ -551,35 +596,110 @@ public class BaristaBot extends TelegramLongPollingBot {
             message.setChatId(chatId);
             message.setText("❌ Ошибка при обновлении статуса заказа #" + orderNumber + ". Попробуйте еще раз.");
 
-            try {
-                execute(message);
-            } catch (TelegramApiException ex) {
-                log.error("Error sending error message to barista chatId: {}", chatId, ex);
-            }
+            telegramOutbox.send(message);
 
             log.error("Error marking order {} as ready by barista {}", orderNumber, chatId, e);
         }
     }
 
-    private ReplyKeyboardMarkup getOrdersMenuKeyboard() {
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+    /**
+     * Takes the oldest pending orders of the barista's location in one go and answers with a
+     * single message listing them, instead of a reply and a list refresh per order
+     */
+    private void handleTakeNextOrders(long chatId) {
+        String locationCode = getSession(chatId).locationCode();
+        Optional<CoffeeShop> coffeeShopOpt = locationCode != null ? coffeeShopService.getShopByCode(locationCode) : Optional.empty();
+        if (coffeeShopOpt.isEmpty()) {
+            sendLocationSelectionMessage(chatId);
+            return;
+        }
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
+        try {
+            List<Order> taken = orderService.takeNextOrders(coffeeShopOpt.get(), chatId, TAKE_BATCH_SIZE);
+            if (taken.isEmpty()) {
+                sendNoOrdersMessage(chatId, "новых");
+                return;
+            }
 
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Обновить заказы"));
-        row1.add(new KeyboardButton("Заказы в работе"));
-        keyboard.add(row1);
+            StringBuilder messageText = new StringBuilder();
+            messageText.append("✅ *Вы приняли в работу заказов: ").append(taken.size()).append("*\n\n");
+
+            List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+            for (Order order : taken) {
+                messageText.append(String.format("*#%s* ☕ %s (%s)%s%s\n",
+                        order.getOrderNumber(),
+                        order.getCoffeeType(),
+                        order.getSize(),
+                        order.getMilkType() != null ? ", 🥛 " + order.getMilkType() : "",
+                        order.getSyrupType() != null ? ", 🍯 " + order.getSyrupType() : ""));
+
+                InlineKeyboardButton readyButton = new InlineKeyboardButton();
+                readyButton.setText("✅ Готов #" + order.getOrderNumber());
+                readyButton.setCallbackData(CallbackAction.READY_ORDER.encode(order.getOrderNumber()));
+                rows.add(List.of(readyButton));
+            }
 
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Сменить локацию"));
-        keyboard.add(row2);
+            InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
+            inlineKeyboardMarkup.setKeyboard(rows);
 
-        keyboardMarkup.setKeyboard(keyboard);
-        return keyboardMarkup;
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText(messageText.toString());
+            message.setParseMode(ParseMode.MARKDOWN);
+            message.setReplyMarkup(inlineKeyboardMarkup);
+
+            telegramOutbox.send(message);
+            log.info("Barista {} took {} orders into preparation", chatId, taken.size());
+        } catch (Exception e) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("❌ Ошибка при принятии заказов. Попробуйте еще раз.");
+
+            telegramOutbox.send(message);
+
+            log.error("Error taking next orders by barista {}", chatId, e);
+        }
+    }
+
+    /**
+     * Marks every order the barista took as ready at once, the customers are notified through the outbox
+     */
+    private void handleAllMyOrdersReady(long chatId) {
+        try {
+            List<Order> ready = orderService.markAllReady(chatId);
+            if (ready.isEmpty()) {
+                SendMessage message = new SendMessage();
+                message.setChatId(chatId);
+                message.setText("У вас нет принятых заказов в работе.");
+                message.setReplyMarkup(ORDERS_MENU_KEYBOARD);
+
+                telegramOutbox.send(message);
+                return;
+            }
+
+            StringBuilder numbers = new StringBuilder();
+            for (Order order : ready) {
+                if (!numbers.isEmpty()) {
+                    numbers.append(", ");
+                }
+                numbers.append('#').append(order.getOrderNumber());
+            }
+
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("✨ Отмечено готовыми заказов: " + ready.size() + " (" + numbers + "). Клиенты получат уведомления.");
+
+            telegramOutbox.send(message);
+            log.info("Barista {} marked {} orders as ready", chatId, ready.size());
+        } catch (Exception e) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("❌ Ошибка при обновлении статуса заказов. Попробуйте еще раз.");
+
+            telegramOutbox.send(message);
+
+            log.error("Error marking all orders of barista {} as ready", chatId, e);
+        }
     }
 
     private String getStatusText(Order.OrderStatus status) {
@@ -615,17 +735,4 @@ public class BaristaBot extends TelegramLongPollingBot {
                 return "❓";
         }
     }
-
-    private void notifyCustomerOrderReady(Order order) {
-        // Get customer Telegram chat ID from the order's customerId
-        Long customerChatId = order.getCustomerId();
-        if (customerChatId == null) {
-            log.error("Cannot notify customer: no customer ID found for order {}", order.getOrderNumber());
-            return;
-        }
-
-        // Use the notification service to send message to customer
-        customerNotificationService.notifyOrderReady(customerChatId, order.getOrderNumber());
-        log.info("Customer {} notified about ready order {}", customerChatId, order.getOrderNumber());
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.kwonka.barista.bot;
+
+/**
+ * Conversation state of one barista chat
+ *
+ * @param state        Where the barista is in the bot flow
+ * @param locationCode Code of the coffee shop the barista works at, null until chosen
+ */
+public record BaristaSession(BaristaBot.BaristaState state, String locationCode) {
+
+    static final BaristaSession NEW = new BaristaSession(BaristaBot.BaristaState.START, null);
+
+    BaristaSession withState(BaristaBot.BaristaState state) {
+        return new BaristaSession(state, locationCode);
+    }
+}
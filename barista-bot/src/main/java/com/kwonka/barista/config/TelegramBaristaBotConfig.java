@@ -1,12 +1,18 @@
 package com.kwonka.barista.config;
 
 import com.kwonka.barista.bot.BaristaBot;
-import com.kwonka.common.service.CustomerNotificationService;
+import com.kwonka.barista.bot.BaristaSession;
+import com.kwonka.common.service.BotCommunicationService;
 import com.kwonka.common.service.CoffeeShopService;
+import com.kwonka.common.service.ConversationStateStoreFactory;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.TelegramWebhook;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -23,8 +29,23 @@ public class TelegramBaristaBotConfig {
     @Value("${telegram.bot.barista.token}")
     private String botToken;
 
-    @Value("${telegram.customer.bot.token}")
-    private String customerBotToken;
+    @Value("${telegram.api-url:https://api.telegram.org/bot}")
+    private String apiUrl;
+
+    @Value("${kwonka.updates.max-in-flight:256}")
+    private int maxUpdatesInFlight;
+
+    @Value("${kwonka.telegram.per-second.barista}")
+    private int perSecond;
+
+    @Value("${telegram.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${telegram.webhook.secret-token:}")
+    private String webhookSecretToken;
+
+    @Value("${telegram.webhook.max-connections:40}")
+    private int webhookMaxConnections;
 
     @Autowired
     private OrderService orderService;
@@ -32,17 +53,30 @@ public class TelegramBaristaBotConfig {
     @Autowired
     private CoffeeShopService coffeeShopService;
 
-    @Bean(name = "baristaCustomerNotificationService")
-    public CustomerNotificationService customerNotificationService() {
-        return new CustomerNotificationService(customerBotToken);
+    @Autowired
+    private BotCommunicationService botCommunicationService;
+
+    @Bean
+    public ConversationStateStore<BaristaSession> baristaSessions(ConversationStateStoreFactory stateStoreFactory) {
+        return stateStoreFactory.create("barista", BaristaSession.class);
+    }
+
+    @Bean
+    public BaristaBot baristaBot(ConversationStateStore<BaristaSession> baristaSessions, MeterRegistry meterRegistry) {
+        return new BaristaBot(botToken, apiUrl, botUsername, orderService, coffeeShopService, botCommunicationService,
+                baristaSessions, maxUpdatesInFlight, perSecond, meterRegistry);
     }
 
     @Bean
-    public BaristaBot baristaBot(CustomerNotificationService customerNotificationService) {
-        return new BaristaBot(botToken, botUsername, orderService, coffeeShopService, customerNotificationService);
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "webhook")
+    public TelegramWebhook baristaBotWebhook(BaristaBot baristaBot) throws TelegramApiException {
+        TelegramWebhook webhook = new TelegramWebhook("barista", baristaBot, webhookSecretToken, baristaBot::offerUpdate);
+        webhook.register(webhookUrl, webhookMaxConnections);
+        return webhook;
     }
 
     @Bean
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsApi telegramBotsApi(BaristaBot baristaBot) throws TelegramApiException {
         try {
             TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
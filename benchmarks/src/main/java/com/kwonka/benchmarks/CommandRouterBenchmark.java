@@ -0,0 +1,392 @@
+package com.kwonka.benchmarks;
+
+import com.kwonka.common.telegram.CallbackAction;
+import com.kwonka.common.telegram.CommandRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates routed per microsecond: customer texts over every step of the ordering flow, and admin
+ * callbacks with their arguments parsed. Each goes through CommandRouter and through copies of the
+ * equals and startsWith chains. Handlers only store the route, so nothing but dispatch is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommandRouterBenchmark {
+
+    private static final int UPDATES = 1024;
+
+    /**
+     * CustomerBot.UserState, which lives in customer-bot and cannot be depended on
+     */
+    enum UserState {
+        START,
+        INTRO,
+        SELECTING_COFFEE_SHOP,
+        SELECTING_COFFEE,
+        SELECTING_SIZE,
+        SELECTING_ADDONS,
+        SELECTING_MILK,
+        SELECTING_SYRUP,
+        CONFIRMING_ORDER,
+        PAYMENT_INIT,
+        PAYMENT_CONFIRM
+    }
+
+    /**
+     * Routes, numbered in the order the old chain tests them
+     */
+    private static final int UNKNOWN = 0, PICKED_UP = 1, RESTART = 2, NEW_ORDER = 3, INTRO = 4, SHOPS = 5,
+            SHOP = 6, COFFEE = 7, SIZE = 8, MILK_MENU = 9, SYRUP_MENU = 10, NO_MILK = 11, NO_SYRUP = 12,
+            NO_ADDONS = 13, ADDONS_DONE = 14, MILK = 15, SYRUP = 16, CONFIRM = 17, CHANGE = 18, CANCEL = 19,
+            PAY = 20, PAID = 21, PAYMENT_RETRY = 22, NOTIFY_BARISTA = 23, ORDERS_MORE = 24, CANCEL_STALE = 25;
+
+    private record Message(UserState state, String text) {
+    }
+
+    private static final List<Message> MESSAGES = List.of(
+            new Message(UserState.PAYMENT_CONFIRM, "Я забрал(а)"),
+            new Message(UserState.SELECTING_SIZE, "/start"),
+            new Message(UserState.START, "Новый заказ"),
+            new Message(UserState.CONFIRMING_ORDER, "Сделать новый заказ"),
+            new Message(UserState.START, "Старт"),
+            new Message(UserState.START, "Хочу кофе"),
+            new Message(UserState.INTRO, "Хочу кофе"),
+            new Message(UserState.SELECTING_COFFEE_SHOP, "ONESHOTT Bi Group"),
+            new Message(UserState.SELECTING_COFFEE, "Латте"),
+            new Message(UserState.SELECTING_SIZE, "Средний 350 мл"),
+            new Message(UserState.SELECTING_ADDONS, "Молоко (растительное)"),
+            new Message(UserState.SELECTING_ADDONS, "Сироп (ванильный, ореховый, карамельный)"),
+            new Message(UserState.SELECTING_ADDONS, "Убрать молоко"),
+            new Message(UserState.SELECTING_ADDONS, "Убрать сироп"),
+            new Message(UserState.SELECTING_ADDONS, "Без добавок"),
+            new Message(UserState.SELECTING_ADDONS, "Готово"),
+            new Message(UserState.SELECTING_ADDONS, "Да"),
+            new Message(UserState.SELECTING_MILK, "Овсяное"),
+            new Message(UserState.SELECTING_SYRUP, "Ванильный"),
+            new Message(UserState.CONFIRMING_ORDER, "Да"),
+            new Message(UserState.CONFIRMING_ORDER, "Изменить заказ"),
+            new Message(UserState.CONFIRMING_ORDER, "Отмена"),
+            new Message(UserState.PAYMENT_INIT, "Оплатить"),
+            new Message(UserState.PAYMENT_INIT, "Привет"),
+            new Message(UserState.PAYMENT_CONFIRM, "Я оплатил(а)"),
+            new Message(UserState.PAYMENT_CONFIRM, "Оплатить"));
+
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2026, 3, 14, 9, 30, 15, 123_000_000);
+
+    private final UserState[] stateOfChat = new UserState[UPDATES];
+    private final String[] texts = new String[UPDATES];
+    private final String[] callbackData = new String[UPDATES];
+    private final String[] legacyCallbackData = new String[UPDATES];
+    private CommandRouter<UserState> router;
+    private int next;
+
+    // What the last handler was given
+    private int route;
+    private String key;
+    private long id;
+    private LocalDateTime time;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = CommandRouter.builder(UserState.class, chatId -> stateOfChat[(int) chatId])
+                .command("Я забрал(а)", (chatId, text) -> route = PICKED_UP)
+                .command("/start", (chatId, text) -> route = RESTART)
+                .command("Новый заказ", (chatId, text) -> route = NEW_ORDER)
+                .command("Сделать новый заказ", (chatId, text) -> route = NEW_ORDER)
+                .on(UserState.START, "Старт", (chatId, text) -> route = INTRO)
+                .on(UserState.INTRO, "Хочу кофе", (chatId, text) -> route = SHOPS)
+                .onAnyText(UserState.SELECTING_COFFEE_SHOP, (chatId, text) -> route = SHOP)
+                .onAnyText(UserState.SELECTING_COFFEE, (chatId, text) -> route = COFFEE)
+                .onAnyText(UserState.SELECTING_SIZE, (chatId, text) -> route = SIZE)
+                .on(UserState.SELECTING_ADDONS, "Молоко (растительное)", (chatId, text) -> route = MILK_MENU)
+                .on(UserState.SELECTING_ADDONS, "Сироп (ванильный, ореховый, карамельный)", (chatId, text) -> route = SYRUP_MENU)
+                .on(UserState.SELECTING_ADDONS, "Убрать молоко", (chatId, text) -> route = NO_MILK)
+                .on(UserState.SELECTING_ADDONS, "Убрать сироп", (chatId, text) -> route = NO_SYRUP)
+                .on(UserState.SELECTING_ADDONS, "Без добавок", (chatId, text) -> route = NO_ADDONS)
+                .on(UserState.SELECTING_ADDONS, "Готово", (chatId, text) -> route = ADDONS_DONE)
+                .onAnyText(UserState.SELECTING_MILK, (chatId, text) -> route = MILK)
+                .onAnyText(UserState.SELECTING_SYRUP, (chatId, text) -> route = SYRUP)
+                .on(UserState.CONFIRMING_ORDER, "Да", (chatId, text) -> route = CONFIRM)
+                .on(UserState.CONFIRMING_ORDER, "Изменить заказ", (chatId, text) -> route = CHANGE)
+                .on(UserState.CONFIRMING_ORDER, "Отмена", (chatId, text) -> route = CANCEL)
+                .on(UserState.PAYMENT_INIT, "Оплатить", (chatId, text) -> route = PAY)
+                .on(UserState.PAYMENT_CONFIRM, "Я оплатил(а)", (chatId, text) -> route = PAID)
+                .onAnyText(UserState.PAYMENT_CONFIRM, (chatId, text) -> route = PAYMENT_RETRY)
+                .unknown((chatId, text) -> route = UNKNOWN)
+                .callback(CallbackAction.NOTIFY_BARISTA, (chatId, data, args) -> notifyBarista(
+                        CallbackAction.arg(data, args, 0), CallbackAction.longArg(data, args, 1)))
+                .callback(CallbackAction.ORDERS_MORE, (chatId, data, args) -> ordersMore(
+                        CallbackAction.longArg(data, args, 0), LocalDateTime.parse(CallbackAction.rest(data, args, 1))))
+                .callback(CallbackAction.CANCEL_STALE, (chatId, data, args) -> cancelStale(
+                        CallbackAction.arg(data, args, 0), LocalDateTime.parse(CallbackAction.rest(data, args, 1))))
+                .build();
+
+        Random random = new Random(42);
+        for (int i = 0; i < UPDATES; i++) {
+            Message message = MESSAGES.get(random.nextInt(MESSAGES.size()));
+            stateOfChat[i] = message.state();
+            texts[i] = message.text();
+            long orderId = 1000 + random.nextInt(9000);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    callbackData[i] = CallbackAction.NOTIFY_BARISTA.encode(orderId, 123456789L);
+                    legacyCallbackData[i] = "notify_barista:" + orderId + ":" + 123456789L;
+                }
+                case 1 -> {
+                    callbackData[i] = CallbackAction.ORDERS_MORE.encode(orderId, CUTOFF);
+                    legacyCallbackData[i] = "orders_more:" + orderId + ":" + CUTOFF;
+                }
+                default -> {
+                    callbackData[i] = CallbackAction.CANCEL_STALE.encode("BIGROUP", CUTOFF);
+                    legacyCallbackData[i] = "cancel_stale:" + "BIGROUP" + ":" + CUTOFF;
+                }
+            }
+            checkAgree(i);
+        }
+    }
+
+    @Benchmark
+    public void textRouter(Blackhole blackhole) {
+        int chat = nextUpdate();
+        router.route(chat, texts[chat]);
+        blackhole.consume(route);
+    }
+
+    @Benchmark
+    public void textEqualsChain(Blackhole blackhole) {
+        int chat = nextUpdate();
+        equalsChain(chat, texts[chat]);
+        blackhole.consume(route);
+    }
+
+    @Benchmark
+    public void callbackRouter(Blackhole blackhole) {
+        int chat = nextUpdate();
+        router.routeCallback(chat, callbackData[chat]);
+        consumeArgs(blackhole);
+    }
+
+    @Benchmark
+    public void callbackStartsWithChain(Blackhole blackhole) {
+        int chat = nextUpdate();
+        startsWithChain(legacyCallbackData[chat]);
+        consumeArgs(blackhole);
+    }
+
+    private int nextUpdate() {
+        next = (next + 1) & (UPDATES - 1);
+        return next;
+    }
+
+    private void consumeArgs(Blackhole blackhole) {
+        blackhole.consume(route);
+        blackhole.consume(key);
+        blackhole.consume(id);
+        blackhole.consume(time);
+    }
+
+    /**
+     * CustomerBot's dispatch before the router, with the handler calls replaced by the route number.
+     * The states taking free text validated it in the chain, the router leaves that to the handler.
+     */
+    private void equalsChain(long chatId, String messageText) {
+        if (messageText.equals("Я забрал(а)")) {
+            route = PICKED_UP;
+            return;
+        }
+        if (messageText.equals("/start")) {
+            route = RESTART;
+        } else if (messageText.equals("Новый заказ") || messageText.equals("Сделать новый заказ")) {
+            route = NEW_ORDER;
+        } else {
+            UserState currentState = stateOfChat[(int) chatId];
+
+            switch (currentState) {
+                case START:
+                    if (messageText.equals("Старт")) {
+                        route = INTRO;
+                    } else {
+                        route = UNKNOWN;
+                    }
+                    break;
+
+                case INTRO:
+                    if (messageText.equals("Хочу кофе")) {
+                        route = SHOPS;
+                    } else {
+                        route = UNKNOWN;
+                    }
+                    break;
+
+                case SELECTING_COFFEE_SHOP:
+                    route = SHOP;
+                    break;
+
+                case SELECTING_COFFEE:
+                    route = COFFEE;
+                    break;
+
+                case SELECTING_SIZE:
+                    route = SIZE;
+                    break;
+
+                case SELECTING_ADDONS:
+                    switch (messageText) {
+                        case "Молоко (растительное)":
+                            route = MILK_MENU;
+                            break;
+                        case "Сироп (ванильный, ореховый, карамельный)":
+                            route = SYRUP_MENU;
+                            break;
+                        case "Убрать молоко":
+                            route = NO_MILK;
+                            break;
+                        case "Убрать сироп":
+                            route = NO_SYRUP;
+                            break;
+                        case "Без добавок":
+                            route = NO_ADDONS;
+                            break;
+                        case "Готово":
+                            route = ADDONS_DONE;
+                            break;
+                        default:
+                            route = UNKNOWN;
+                            break;
+                    }
+                    break;
+
+                case SELECTING_MILK:
+                    route = MILK;
+                    break;
+
+                case SELECTING_SYRUP:
+                    route = SYRUP;
+                    break;
+
+                case CONFIRMING_ORDER:
+                    switch (messageText) {
+                        case "Да":
+                            route = CONFIRM;
+                            break;
+                        case "Изменить заказ":
+                            route = CHANGE;
+                            break;
+                        case "Отмена":
+                            route = CANCEL;
+                            break;
+                        default:
+                            route = UNKNOWN;
+                            break;
+                    }
+                    break;
+
+                case PAYMENT_INIT:
+                    if (messageText.equals("Оплатить")) {
+                        route = PAY;
+                    } else {
+                        route = UNKNOWN;
+                    }
+                    break;
+
+                case PAYMENT_CONFIRM:
+                    if (messageText.equals("Я оплатил(а)")) {
+                        route = PAID;
+                    } else {
+                        route = PAYMENT_RETRY;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * AdminBot's callback dispatch before the router
+     */
+    private void startsWithChain(String callbackData) {
+        if (callbackData.startsWith("notify_barista:")) {
+            String[] data = callbackData.substring("notify_barista:".length()).split(":");
+            String orderNumber = data[0];
+            Long baristaChatId = Long.parseLong(data[1]);
+
+            notifyBarista(orderNumber, baristaChatId);
+        } else if (callbackData.startsWith("orders_more:")) {
+            String[] parts = callbackData.substring("orders_more:".length()).split(":", 2);
+            ordersMore(Long.parseLong(parts[0]), LocalDateTime.parse(parts[1]));
+        } else if (callbackData.startsWith("cancel_stale:")) {
+            String[] data = callbackData.substring("cancel_stale:".length()).split(":", 2);
+            cancelStale(data[0], LocalDateTime.parse(data[1]));
+        }
+    }
+
+    private void notifyBarista(String orderNumber, long baristaChatId) {
+        route = NOTIFY_BARISTA;
+        key = orderNumber;
+        id = baristaChatId;
+        time = null;
+    }
+
+    private void ordersMore(long afterId, LocalDateTime afterCreatedAt) {
+        route = ORDERS_MORE;
+        key = null;
+        id = afterId;
+        time = afterCreatedAt;
+    }
+
+    private void cancelStale(String code, LocalDateTime staleCutoff) {
+        route = CANCEL_STALE;
+        key = code;
+        id = 0;
+        time = staleCutoff;
+    }
+
+    /**
+     * Each chain's buttons carry their own callback data, the legacy prefix or the compact code,
+     * and must still yield the same route and arguments
+     */
+    private void checkAgree(int chat) {
+        router.route(chat, texts[chat]);
+        int routed = route;
+        equalsChain(chat, texts[chat]);
+        if (routed != route) {
+            throw new IllegalStateException("\"" + texts[chat] + "\" in " + stateOfChat[chat] + " takes route "
+                    + routed + " in the router but " + route + " in the equals chain");
+        }
+
+        router.routeCallback(chat, callbackData[chat]);
+        List<Object> args = snapshot();
+        startsWithChain(legacyCallbackData[chat]);
+        if (!args.equals(snapshot())) {
+            throw new IllegalStateException(callbackData[chat] + " gives " + args + " in the router but "
+                    + legacyCallbackData[chat] + " gives " + snapshot() + " in the startsWith chain");
+        }
+    }
+
+    private List<Object> snapshot() {
+        return List.of(route, Objects.toString(key), id, Objects.toString(time));
+    }
+}
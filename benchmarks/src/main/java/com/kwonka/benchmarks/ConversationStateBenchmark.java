@@ -0,0 +1,123 @@
+package com.kwonka.benchmarks;
+
+import com.kwonka.common.state.InMemoryConversationStateStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversation state of a million customer chats: InMemoryConversationStateStore holding one
+ * compact record per chat, against the three maps CustomerBot used, with the selections as a
+ * Map&lt;String, String&gt; per chat.
+ * <p>
+ * The retained heap per chat of each layout is printed once the chats are filled, the benchmarks
+ * measure a get followed by a put for a random chat, as every update does. CustomerSession lives
+ * in customer-bot, which is packaged as a Spring Boot jar and cannot be depended on, so Session
+ * below has the same fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConversationStateBenchmark {
+
+    @Param({"1000000"})
+    public int chats;
+
+    @Param({"store", "maps"})
+    public String layout;
+
+    private InMemoryConversationStateStore<Session> store;
+    private Map<Long, Step> states;
+    private Map<Long, Map<String, String>> selections;
+    private Map<Long, String> orderNumbers;
+
+    enum Step {
+        SELECTING_ADDONS,
+        CONFIRMING_ORDER
+    }
+
+    record Session(Step step, Long coffeeShopId, String coffeeType, String size, String milkType,
+                   String syrupType, String orderNumber) {
+
+        Session withStep(Step step) {
+            return new Session(step, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeapAfterGc();
+        if (layout.equals("store")) {
+            // Twice the chats, so a segment filling up faster than the others evicts nothing
+            store = new InMemoryConversationStateStore<>(chats * 2, Duration.ofDays(1));
+            for (long chatId = 0; chatId < chats; chatId++) {
+                store.put(chatId, new Session(Step.SELECTING_ADDONS, 1L, "Латте", "Средний", "Овсяное", null,
+                        String.valueOf(chatId)));
+            }
+        } else {
+            states = new ConcurrentHashMap<>();
+            selections = new ConcurrentHashMap<>();
+            orderNumbers = new ConcurrentHashMap<>();
+            for (long chatId = 0; chatId < chats; chatId++) {
+                states.put(chatId, Step.SELECTING_ADDONS);
+                Map<String, String> chosen = new HashMap<>();
+                chosen.put("coffeeShopId", "1");
+                chosen.put("coffeeType", "Латте");
+                chosen.put("size", "Средний");
+                chosen.put("milkType", "Овсяное");
+                selections.put(chatId, chosen);
+                orderNumbers.put(chatId, String.valueOf(chatId));
+            }
+        }
+        long retained = usedHeapAfterGc() - before;
+        System.out.printf("%n%s: %d chats retain %d MB, %d bytes per chat%n",
+                layout, chats, retained >> 20, retained / chats);
+    }
+
+    /**
+     * A customer confirming the add-ons: reads the chat's state and moves it on
+     */
+    @Benchmark
+    public void getAndPut(Blackhole blackhole) {
+        long chatId = ThreadLocalRandom.current().nextInt(chats);
+        if (store != null) {
+            Session session = store.get(chatId);
+            store.put(chatId, session.withStep(Step.CONFIRMING_ORDER));
+            blackhole.consume(session);
+            return;
+        }
+        blackhole.consume(states.get(chatId));
+        blackhole.consume(selections.get(chatId));
+        states.put(chatId, Step.CONFIRMING_ORDER);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
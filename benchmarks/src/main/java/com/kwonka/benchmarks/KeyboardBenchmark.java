@@ -0,0 +1,85 @@
+package com.kwonka.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kwonka.common.telegram.PrebuiltKeyboard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating and serializing a drink menu SendMessage whose keyboard is a PrebuiltKeyboard
+ * constant or a freshly built ReplyKeyboardMarkup. Run with -prof gc for the bytes allocated per
+ * message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 4, time = 1)
+@Measurement(iterations = 8, time = 1)
+public class KeyboardBenchmark {
+
+    private static final String[] BUTTONS = {"Американо", "Латте", "Капучино", "Раф", "Флэт Уайт", "Назад"};
+    private static final PrebuiltKeyboard DRINKS_KEYBOARD = PrebuiltKeyboard.column(BUTTONS);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Benchmark
+    public String prebuilt() throws TelegramApiValidationException, JsonProcessingException {
+        SendMessage message = message();
+        message.setReplyMarkup(DRINKS_KEYBOARD);
+        return send(message);
+    }
+
+    @Benchmark
+    public String builtPerMessage() throws TelegramApiValidationException, JsonProcessingException {
+        SendMessage message = message();
+
+        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
+        keyboardMarkup.setResizeKeyboard(true);
+        keyboardMarkup.setOneTimeKeyboard(false);
+        keyboardMarkup.setSelective(true);
+
+        List<KeyboardRow> keyboard = new ArrayList<>();
+        for (String button : BUTTONS) {
+            KeyboardRow row = new KeyboardRow();
+            row.add(new KeyboardButton(button));
+            keyboard.add(row);
+        }
+
+        keyboardMarkup.setKeyboard(keyboard);
+        message.setReplyMarkup(keyboardMarkup);
+        return send(message);
+    }
+
+    private static SendMessage message() {
+        SendMessage message = new SendMessage();
+        message.setChatId(123456789L);
+        message.setText("Выберите напиток:");
+        return message;
+    }
+
+    /**
+     * What the Bot API client does with a request before posting it
+     */
+    private String send(SendMessage message) throws TelegramApiValidationException, JsonProcessingException {
+        message.validate();
+        return mapper.writeValueAsString(message);
+    }
+}
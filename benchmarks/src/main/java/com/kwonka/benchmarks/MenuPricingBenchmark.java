@@ -0,0 +1,194 @@
+package com.kwonka.benchmarks;
+
+import com.kwonka.common.entity.MenuItem;
+import com.kwonka.common.entity.MenuPrice;
+import com.kwonka.common.menu.CupSize;
+import com.kwonka.common.menu.MenuCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to price one order from its size button text, with MenuCatalog.price and with a copy of
+ * the calculateTotalPrice switch chain. The catalog is the V9 menu, with the large Раф cheaper at
+ * a second shop that half of the orders come from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MenuPricingBenchmark {
+
+    private static final int ORDERS = 1024;
+    private static final String[] DRINKS = {"Американо", "Латте", "Капучино", "Раф", "Флэт Уайт"};
+    private static final String[] MILKS = {"Кокосовое", "Миндальное", "Фундучное", "Овсяное"};
+    private static final String[] SYRUPS = {"Ванильный", "Ореховый", "Карамельный"};
+
+    private final List<MenuItem> items = new ArrayList<>();
+    private final List<MenuPrice> prices = new ArrayList<>();
+    private MenuCatalog catalog;
+    private final Order[] orders = new Order[ORDERS];
+    private int next;
+
+    private record Order(Long coffeeShopId, String drink, String size, String milk, String syrup) {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        drink("Американо", 990, 1090, 1190);
+        drink("Латте", 1090, 1190, 1290);
+        drink("Капучино", 1090, 1190, 1290);
+        drink("Раф", 1290, 1490, 1590);
+        MenuItem flatWhite = item(MenuItem.Kind.DRINK, "Флэт Уайт");
+        price(flatWhite, CupSize.SMALL, 1090);
+        for (String milk : MILKS) {
+            MenuItem item = item(MenuItem.Kind.MILK, milk);
+            price(item, CupSize.SMALL, 350);
+            price(item, CupSize.MEDIUM, 450);
+            price(item, CupSize.LARGE, 550);
+        }
+        for (String syrup : SYRUPS) {
+            price(item(MenuItem.Kind.SYRUP, syrup), null, 160);
+        }
+        // The second shop sells the large Раф cheaper
+        prices.add(MenuPrice.builder().menuItemId(items.get(3).getId()).coffeeShopId(2L)
+                .size(CupSize.LARGE).price(1490).build());
+        catalog = MenuCatalog.compile(items, prices);
+
+        Random random = new Random(42);
+        for (int i = 0; i < ORDERS; i++) {
+            String drink = DRINKS[random.nextInt(DRINKS.length)];
+            CupSize size = drink.equals("Флэт Уайт") ? CupSize.SMALL : CupSize.values()[random.nextInt(3)];
+            orders[i] = new Order(1L, drink, size.getLabel(),
+                    random.nextBoolean() ? MILKS[random.nextInt(MILKS.length)] : null,
+                    random.nextBoolean() ? SYRUPS[random.nextInt(SYRUPS.length)] : null);
+            // The chain only knows one price list, so compare before moving orders to the second shop
+            int oldPrice = switchChain(orders[i]);
+            int newPrice = menuCatalog(orders[i]);
+            if (oldPrice != newPrice) {
+                throw new IllegalStateException(orders[i] + " costs " + oldPrice + " in the switch chain but "
+                        + newPrice + " in the catalog");
+            }
+        }
+        // Half of the orders from the second shop
+        for (int i = 0; i < ORDERS; i += 2) {
+            Order order = orders[i];
+            orders[i] = new Order(2L, order.drink(), order.size(), order.milk(), order.syrup());
+        }
+    }
+
+    @Benchmark
+    public int menuCatalog() {
+        return menuCatalog(nextOrder());
+    }
+
+    @Benchmark
+    public int switchChain() {
+        return switchChain(nextOrder());
+    }
+
+    private Order nextOrder() {
+        next = (next + 1) & (ORDERS - 1);
+        return orders[next];
+    }
+
+    private int menuCatalog(Order order) {
+        return catalog.price(order.coffeeShopId(), order.drink(), CupSize.fromLabel(order.size()),
+                order.milk(), order.syrup());
+    }
+
+    /**
+     * CustomerBot.calculateTotalPrice before the menu catalog, reading the order instead of the session
+     */
+    private static int switchChain(Order order) {
+        String coffeeType = order.drink();
+        String size = order.size();
+        String milkType = order.milk();
+        String syrupType = order.syrup();
+
+        int totalPrice = 0;
+
+        // Get size in ml
+        int sizeInMl = 0;
+        if (size != null) {
+            if (size.contains("250")) {
+                sizeInMl = 250;
+            } else if (size.contains("350")) {
+                sizeInMl = 350;
+            } else if (size.contains("450")) {
+                sizeInMl = 450;
+            }
+        }
+
+        // Coffee base price
+        if (coffeeType != null) {
+            switch (coffeeType) {
+                case "Американо":
+                    if (sizeInMl == 250) totalPrice += 990;
+                    else if (sizeInMl == 350) totalPrice += 1090;
+                    else if (sizeInMl == 450) totalPrice += 1190;
+                    break;
+                case "Флэт Уайт":
+                    totalPrice += 1090; // Only 250ml
+                    break;
+                case "Латте":
+                case "Капучино":
+                    if (sizeInMl == 250) totalPrice += 1090;
+                    else if (sizeInMl == 350) totalPrice += 1190;
+                    else if (sizeInMl == 450) totalPrice += 1290;
+                    break;
+                case "Раф":
+                    if (sizeInMl == 250) totalPrice += 1290;
+                    else if (sizeInMl == 350) totalPrice += 1490;
+                    else if (sizeInMl == 450) totalPrice += 1590;
+                    break;
+            }
+        }
+
+        // Add-ons
+        if (milkType != null) {
+            if (sizeInMl == 250) totalPrice += 350;
+            else if (sizeInMl == 350) totalPrice += 450;
+            else if (sizeInMl == 450) totalPrice += 550;
+        }
+
+        if (syrupType != null) {
+            totalPrice += 160;
+        }
+
+        return totalPrice;
+    }
+
+    private void drink(String name, int small, int medium, int large) {
+        MenuItem item = item(MenuItem.Kind.DRINK, name);
+        price(item, CupSize.SMALL, small);
+        price(item, CupSize.MEDIUM, medium);
+        price(item, CupSize.LARGE, large);
+    }
+
+    private MenuItem item(MenuItem.Kind kind, String name) {
+        MenuItem item = MenuItem.builder().id((long) items.size() + 1).kind(kind).name(name)
+                .sortOrder(items.size()).build();
+        items.add(item);
+        return item;
+    }
+
+    private void price(MenuItem item, CupSize size, int price) {
+        prices.add(MenuPrice.builder().menuItemId(item.getId()).size(size).price(price).build());
+    }
+}
@@ -0,0 +1,119 @@
+package com.kwonka.benchmarks;
+
+import com.kwonka.common.entity.CoffeeShop;
+import com.kwonka.common.repository.OrderRepository;
+import com.kwonka.common.service.OrderNumberAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Order numbers for 64 customers checking out at once: OrderNumberAllocator, which goes to the
+ * database once per block of numbers, against one database round trip per order as the
+ * MAX(order_number) + 1 query needed.
+ * <p>
+ * The sequence is faked in memory and a round trip is a park of roundTripMicros, so the figures
+ * show what the block reservation saves rather than how fast Postgres is. The trial fails if the
+ * allocator handed out fewer distinct numbers than it was asked for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderNumberAllocatorBenchmark {
+
+    // INCREMENT BY of order_number_seq
+    private static final int SEQUENCE_INCREMENT = 100;
+
+    @Param({"200", "1000"})
+    public long roundTripMicros;
+
+    private final AtomicLong sequence = new AtomicLong(1);
+    private final AtomicLong lastOrderNumber = new AtomicLong();
+    private final Queue<Allocated> allocatedByThread = new ConcurrentLinkedQueue<>();
+    private OrderNumberAllocator allocator;
+    private CoffeeShop coffeeShop;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OrderRepository repository = (OrderRepository) Proxy.newProxyInstance(
+                OrderRepository.class.getClassLoader(),
+                new Class<?>[]{OrderRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("nextOrderNumberBlock")) {
+                        roundTrip();
+                        return sequence.getAndAdd(SEQUENCE_INCREMENT);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        allocator = new OrderNumberAllocator(repository, OrderNumberAllocator.Mode.SEQUENCE);
+        coffeeShop = CoffeeShop.builder().id(1L).code("BIGROUP").name("ONESHOTT Bi Group").active(true).build();
+    }
+
+    /**
+     * Numbers one benchmark thread got, kept per thread so the check adds no contention
+     */
+    @State(Scope.Thread)
+    public static class Allocated {
+        long count;
+        long highest;
+
+        @Setup(Level.Trial)
+        public void register(OrderNumberAllocatorBenchmark benchmark) {
+            benchmark.allocatedByThread.add(this);
+        }
+    }
+
+    @Benchmark
+    public long blockReserved(Allocated allocated) {
+        long number = Long.parseLong(allocator.nextOrderNumber(coffeeShop));
+        allocated.count++;
+        allocated.highest = Math.max(allocated.highest, number);
+        return number;
+    }
+
+    @Benchmark
+    public long roundTripPerOrder() {
+        roundTrip();
+        return lastOrderNumber.incrementAndGet();
+    }
+
+    /**
+     * Numbers come from blocks of consecutive values taken in order, so the allocator handed out
+     * unique numbers exactly when it handed out no more than the highest number it reached
+     */
+    @TearDown(Level.Trial)
+    public void checkUnique() {
+        long count = allocatedByThread.stream().mapToLong(allocated -> allocated.count).sum();
+        long highest = allocatedByThread.stream().mapToLong(allocated -> allocated.highest).max().orElse(0);
+        if (count > highest) {
+            throw new IllegalStateException("Allocated " + count + " order numbers but the highest is "
+                    + highest + ", some were handed out twice");
+        }
+    }
+
+    private void roundTrip() {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+    }
+}
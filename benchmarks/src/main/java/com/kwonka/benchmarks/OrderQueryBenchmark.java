@@ -0,0 +1,223 @@
+package com.kwonka.benchmarks;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the hot order queries over a year of history, with the indexes of the migrations and
+ * with only the primary key and unique constraints of V1, to show that barista and admin views stay
+ * flat as history grows. Run in sample time mode, so JMH reports p50 and p99 per query.
+ * <p>
+ * Needs a Postgres, by default the one of docker-compose (BENCH_DB_URL, BENCH_DB_USER,
+ * BENCH_DB_PASSWORD). Every trial migrates a scratch schema with Flyway, fills it and drops it
+ * again, the application's tables are not touched. The SQL is what Hibernate generates for the
+ * repository methods, written out so the benchmark measures Postgres and not the mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class OrderQueryBenchmark {
+
+    private static final String SCHEMA = "orders_bench";
+    private static final int SHOPS = 2;
+    private static final int CUSTOMERS = 100_000;
+    private static final int ACTIVE_ORDERS = 200;
+
+    @Param({"1000000"})
+    public int historicalOrders;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Connection connection;
+    private PreparedStatement byStatus;
+    private PreparedStatement byShopAndStatus;
+    private PreparedStatement byCustomerAndStatus;
+    private PreparedStatement sumByShop;
+    private PreparedStatement pendingBoard;
+    private PreparedStatement activeByShopAndStatus;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = env("BENCH_DB_URL", "jdbc:postgresql://localhost:5432/kwonka");
+        String user = env("BENCH_DB_USER", "kwonka");
+        String password = env("BENCH_DB_PASSWORD", "kwonka");
+
+        connection = DriverManager.getConnection(url, user, password);
+        execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        Flyway.configure()
+                .dataSource(url, user, password)
+                .schemas(SCHEMA)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+        execute("SET search_path TO " + SCHEMA);
+
+        if (!indexed) {
+            dropIndexesBesidesConstraints();
+        }
+        seed();
+        execute("VACUUM ANALYZE orders");
+
+        byStatus = connection.prepareStatement("SELECT * FROM orders WHERE status = ?");
+        byShopAndStatus = connection.prepareStatement("SELECT * FROM orders WHERE coffee_shop_id = ? AND status = ?");
+        byCustomerAndStatus = connection.prepareStatement("SELECT * FROM orders WHERE customer_id = ? AND status = ?");
+        sumByShop = connection.prepareStatement("SELECT coffee_shop_id, COUNT(*), SUM(total_price) FROM orders " +
+                "WHERE status = ? AND created_at >= ? AND created_at < ? GROUP BY coffee_shop_id");
+        pendingBoard = connection.prepareStatement("SELECT o.*, s.name FROM orders o JOIN coffee_shops s ON s.id = o.coffee_shop_id " +
+                "WHERE o.status = 'PENDING' ORDER BY o.created_at DESC, o.id DESC LIMIT 20");
+        activeByShopAndStatus = connection.prepareStatement("SELECT s.code, o.status, COUNT(*) FROM orders o " +
+                "JOIN coffee_shops s ON s.id = o.coffee_shop_id " +
+                "WHERE o.status IN ('PENDING', 'IN_PREPARATION') GROUP BY s.code, o.status");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        connection.close();
+    }
+
+    /**
+     * Admin monitoring, findByStatus(PENDING)
+     */
+    @Benchmark
+    public void findByStatus(Blackhole blackhole) throws SQLException {
+        byStatus.setString(1, "PENDING");
+        consume(byStatus, blackhole);
+    }
+
+    /**
+     * Barista refresh, findByCoffeeShopAndStatus(shop, PENDING)
+     */
+    @Benchmark
+    public void findByCoffeeShopAndStatus(Blackhole blackhole) throws SQLException {
+        byShopAndStatus.setLong(1, 1 + ThreadLocalRandom.current().nextInt(SHOPS));
+        byShopAndStatus.setString(2, "PENDING");
+        consume(byShopAndStatus, blackhole);
+    }
+
+    /**
+     * Customer's "Я забрал(а)", findByCustomerIdAndStatus(customer, READY)
+     */
+    @Benchmark
+    public void findByCustomerIdAndStatus(Blackhole blackhole) throws SQLException {
+        byCustomerAndStatus.setLong(1, 1 + ThreadLocalRandom.current().nextInt(CUSTOMERS));
+        byCustomerAndStatus.setString(2, "READY");
+        consume(byCustomerAndStatus, blackhole);
+    }
+
+    /**
+     * Admin daily statistics, sumByShop(COMPLETED, day, next day) over a random day of the year
+     */
+    @Benchmark
+    public void sumByShopForDay(Blackhole blackhole) throws SQLException {
+        LocalDate day = LocalDate.now().minusDays(ThreadLocalRandom.current().nextInt(365));
+        sumByShop.setString(1, "COMPLETED");
+        sumByShop.setTimestamp(2, Timestamp.valueOf(day.atStartOfDay()));
+        sumByShop.setTimestamp(3, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        consume(sumByShop, blackhole);
+    }
+
+    /**
+     * First page of the admin pending orders board, findPendingBoard
+     */
+    @Benchmark
+    public void findPendingBoard(Blackhole blackhole) throws SQLException {
+        consume(pendingBoard, blackhole);
+    }
+
+    /**
+     * Active order gauges, countActiveByShopAndStatus
+     */
+    @Benchmark
+    public void countActiveByShopAndStatus(Blackhole blackhole) throws SQLException {
+        consume(activeByShopAndStatus, blackhole);
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rows = statement.executeQuery()) {
+            int columns = rows.getMetaData().getColumnCount();
+            while (rows.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    blackhole.consume(rows.getObject(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaves the orders table as V1 created it: primary key and unique order number only
+     */
+    private void dropIndexesBesidesConstraints() throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT i.indexrelid::regclass::text FROM pg_index i " +
+                     "WHERE i.indrelid = 'orders'::regclass " +
+                     "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid)")) {
+            while (rows.next()) {
+                indexes.add(rows.getString(1));
+            }
+        }
+        for (String index : indexes) {
+            execute("DROP INDEX " + index);
+        }
+    }
+
+    /**
+     * A year of completed and cancelled orders spread over the shops and customers, plus a few
+     * active ones from the last minutes as a running shop has
+     */
+    private void seed() throws SQLException {
+        execute("INSERT INTO orders (order_number, customer_id, coffee_shop_id, coffee_type, size, total_price, " +
+                "status, created_at, updated_at) " +
+                "SELECT 'H' || g, 1 + g % " + CUSTOMERS + ", 1 + g % " + SHOPS + ", 'Латте', 'Средний', 1190, " +
+                "CASE WHEN g % 20 = 0 THEN 'CANCELLED' ELSE 'COMPLETED' END, t, t " +
+                "FROM generate_series(1, " + historicalOrders + ") g, " +
+                "LATERAL (SELECT now() - (g * (interval '365 days' / " + historicalOrders + ")) AS t) created");
+        execute("INSERT INTO orders (order_number, customer_id, coffee_shop_id, coffee_type, size, total_price, " +
+                "status, created_at, updated_at) " +
+                "SELECT 'A' || g, 1 + g % " + CUSTOMERS + ", 1 + g % " + SHOPS + ", 'Капучино', 'Маленький', 1090, " +
+                "(ARRAY['PENDING', 'IN_PREPARATION', 'READY'])[1 + g % 3], now() - g * interval '5 seconds', now() " +
+                "FROM generate_series(1, " + ACTIVE_ORDERS + ") g");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+        return Objects.requireNonNullElse(System.getenv(name), defaultValue);
+    }
+}
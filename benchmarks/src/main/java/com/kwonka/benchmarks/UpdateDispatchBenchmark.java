@@ -0,0 +1,122 @@
+package com.kwonka.benchmarks;
+
+import com.kwonka.common.telegram.UpdateDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Updates handled per second when every update blocks for handlerMicros, as a database call or a
+ * Bot API request does: UpdateDispatcher on virtual threads against handling them one after another
+ * on the polling thread, as the bots did before.
+ * <p>
+ * The updates are spread round robin over the chats. The trial fails if the dispatcher ever handled
+ * an update of a chat before an earlier one of the same chat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(UpdateDispatchBenchmark.UPDATES)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UpdateDispatchBenchmark {
+
+    static final int UPDATES = 1000;
+
+    @Param({"1", "10", "100"})
+    public int chats;
+
+    @Param({"1000"})
+    public long handlerMicros;
+
+    @Param({"256"})
+    public int maxInFlight;
+
+    private final List<Update> updates = new ArrayList<>(UPDATES);
+    private UpdateDispatcher dispatcher;
+    private volatile CountDownLatch handled;
+    // Written only by the thread handling the chat at the time, the dispatcher orders those
+    private int[] lastUpdateOfChat;
+    private volatile boolean outOfOrder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < UPDATES; i++) {
+            Message message = new Message();
+            message.setChat(new Chat((long) i % chats, "private"));
+            message.setText("Обновить заказы");
+            Update update = new Update();
+            update.setUpdateId(i + 1);
+            update.setMessage(message);
+            updates.add(update);
+        }
+        lastUpdateOfChat = new int[chats];
+        dispatcher = new UpdateDispatcher("benchmark", maxInFlight, this::handle, chatId -> "VIEWING_ORDERS",
+                new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void checkOrder() {
+        if (outOfOrder) {
+            throw new IllegalStateException("Updates of a chat were handled out of order");
+        }
+    }
+
+    @Benchmark
+    public void virtualThreads() throws InterruptedException {
+        start();
+        for (Update update : updates) {
+            dispatcher.dispatch(update);
+        }
+        handled.await();
+    }
+
+    @Benchmark
+    public void serial() {
+        start();
+        for (Update update : updates) {
+            handle(update);
+        }
+    }
+
+    /**
+     * The updates are sent again on every invocation, with the same IDs
+     */
+    private void start() {
+        Arrays.fill(lastUpdateOfChat, 0);
+        handled = new CountDownLatch(UPDATES);
+    }
+
+    private void handle(Update update) {
+        int chat = update.getMessage().getChatId().intValue();
+        if (update.getUpdateId() <= lastUpdateOfChat[chat]) {
+            outOfOrder = true;
+        }
+        lastUpdateOfChat[chat] = update.getUpdateId();
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(handlerMicros));
+        handled.countDown();
+    }
+}
@@ -0,0 +1,51 @@
+package com.kwonka.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Completed orders of one coffee shop for one day, drink and size
+ */
+@Entity
+@Table(name = "daily_shop_stats")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyShopStat {
+
+    @EmbeddedId
+    private Key id;
+
+    @Column(name = "order_count", nullable = false)
+    private int orderCount;
+
+    @Column(name = "revenue", nullable = false)
+    private BigDecimal revenue;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        @Column(name = "stat_date")
+        private LocalDate statDate;
+
+        @Column(name = "coffee_shop_id")
+        private Long coffeeShopId;
+
+        @Column(name = "coffee_type")
+        private String coffeeType;
+
+        @Column(name = "size")
+        private String size;
+    }
+}
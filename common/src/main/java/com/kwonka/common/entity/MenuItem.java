@@ -0,0 +1,44 @@
+package com.kwonka.common.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A drink or add-on offered by the customer bot. The name is what customers see on the
+ * buttons and what is stored on their orders.
+ */
+@Entity
+@Table(name = "menu_items")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false)
+    private Kind kind;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "sort_order", nullable = false)
+    private int sortOrder;
+
+    @Builder.Default
+    @Column(name = "active", nullable = false)
+    private boolean active = true;
+
+    public enum Kind {
+        DRINK,
+        MILK,
+        SYRUP
+    }
+}
@@ -0,0 +1,38 @@
+package com.kwonka.common.entity;
+
+import com.kwonka.common.menu.CupSize;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Price of a menu item in tenge. Without a coffee shop it is the base price, with one it
+ * overrides the base price for that shop; without a size it applies to every size.
+ */
+@Entity
+@Table(name = "menu_prices")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuPrice {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "menu_item_id", nullable = false)
+    private Long menuItemId;
+
+    @Column(name = "coffee_shop_id")
+    private Long coffeeShopId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "size")
+    private CupSize size;
+
+    @Column(name = "price", nullable = false)
+    private int price;
+}
@@ -8,11 +8,15 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
 @Table(name = "orders")
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
@@ -56,6 +60,21 @@ public class Order {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Column(name = "barista_chat_id")
+    private Long baristaChatId;
+
+    @Column(name = "taken_at")
+    private LocalDateTime takenAt;
+
+    @Column(name = "ready_at")
+    private LocalDateTime readyAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Column(name = "cancelled_at")
+    private LocalDateTime cancelledAt;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -72,6 +91,23 @@ public class Order {
         IN_PREPARATION,
         READY,
         COMPLETED,
-        CANCELLED
+        CANCELLED;
+
+        private static final Map<OrderStatus, Set<OrderStatus>> ALLOWED_TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+        static {
+            ALLOWED_TRANSITIONS.put(PENDING, EnumSet.of(IN_PREPARATION, CANCELLED));
+            ALLOWED_TRANSITIONS.put(IN_PREPARATION, EnumSet.of(READY, CANCELLED));
+            ALLOWED_TRANSITIONS.put(READY, EnumSet.of(COMPLETED, CANCELLED));
+            ALLOWED_TRANSITIONS.put(COMPLETED, EnumSet.noneOf(OrderStatus.class));
+            ALLOWED_TRANSITIONS.put(CANCELLED, EnumSet.noneOf(OrderStatus.class));
+        }
+
+        /**
+         * @return whether an order in this status may be moved to the given one
+         */
+        public boolean canTransitionTo(OrderStatus next) {
+            return ALLOWED_TRANSITIONS.get(this).contains(next);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.kwonka.common.menu;
+
+import lombok.Getter;
+
+/**
+ * Cup sizes offered for drinks
+ */
+@Getter
+public enum CupSize {
+    SMALL("Маленький", 250),
+    MEDIUM("Средний", 350),
+    LARGE("Большой", 450);
+
+    private static final CupSize[] VALUES = values();
+
+    /**
+     * Name stored on orders
+     */
+    private final String name;
+    private final int volumeMl;
+    /**
+     * Button text shown to customers
+     */
+    private final String label;
+
+    CupSize(String name, int volumeMl) {
+        this.name = name;
+        this.volumeMl = volumeMl;
+        this.label = name + " " + volumeMl + " мл";
+    }
+
+    /**
+     * @return the size with the given button text, or null if there is none
+     */
+    public static CupSize fromLabel(String label) {
+        for (CupSize size : VALUES) {
+            if (size.label.equals(label)) {
+                return size;
+            }
+        }
+        return null;
+    }
+}
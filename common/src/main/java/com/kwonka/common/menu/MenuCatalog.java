@@ -0,0 +1,188 @@
+package com.kwonka.common.menu;
+
+import com.kwonka.common.entity.MenuItem;
+import com.kwonka.common.entity.MenuPrice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable menu compiled from menu_items and menu_prices.
+ * <p>
+ * Every item gets an index and prices live in flat int tables indexed by item and cup size, one
+ * table for the base prices and one per coffee shop with overrides with those already applied,
+ * so pricing an order is a few map and array lookups without allocating.
+ * Add-ons without a per-size price cost the same for every size.
+ */
+public final class MenuCatalog {
+
+    /**
+     * Price of something the menu does not offer
+     */
+    public static final int UNAVAILABLE = -1;
+
+    private static final CupSize[] SIZES = CupSize.values();
+
+    private final Map<String, Integer> drinks = new HashMap<>();
+    private final Map<String, Integer> milks = new HashMap<>();
+    private final Map<String, Integer> syrups = new HashMap<>();
+    private final List<String> drinkNames = new ArrayList<>();
+    private final List<String> milkNames = new ArrayList<>();
+    private final List<String> syrupNames = new ArrayList<>();
+    private final int[] basePrices;
+    private final Map<Long, int[]> shopPrices = new HashMap<>();
+
+    /**
+     * @param items  Active items in display order
+     * @param prices All prices, rows of unknown items are ignored
+     */
+    public static MenuCatalog compile(List<MenuItem> items, List<MenuPrice> prices) {
+        return new MenuCatalog(items, prices);
+    }
+
+    private MenuCatalog(List<MenuItem> items, List<MenuPrice> prices) {
+        Map<Long, Integer> indexById = new HashMap<>();
+        for (MenuItem item : items) {
+            int index = indexById.size();
+            indexById.put(item.getId(), index);
+            switch (item.getKind()) {
+                case DRINK -> register(item.getName(), index, drinks, drinkNames);
+                case MILK -> register(item.getName(), index, milks, milkNames);
+                case SYRUP -> register(item.getName(), index, syrups, syrupNames);
+            }
+        }
+
+        basePrices = new int[indexById.size() * SIZES.length];
+        Arrays.fill(basePrices, UNAVAILABLE);
+        Map<Long, List<MenuPrice>> overrides = new HashMap<>();
+        List<MenuPrice> base = new ArrayList<>();
+        for (MenuPrice price : prices) {
+            if (!indexById.containsKey(price.getMenuItemId())) {
+                continue;
+            }
+            if (price.getCoffeeShopId() == null) {
+                base.add(price);
+            } else {
+                overrides.computeIfAbsent(price.getCoffeeShopId(), id -> new ArrayList<>()).add(price);
+            }
+        }
+        apply(basePrices, base, indexById);
+        overrides.forEach((shopId, shopRows) -> {
+            int[] table = basePrices.clone();
+            apply(table, shopRows, indexById);
+            shopPrices.put(shopId, table);
+        });
+    }
+
+    private static void register(String name, int index, Map<String, Integer> byName, List<String> names) {
+        if (byName.putIfAbsent(name, index) == null) {
+            names.add(name);
+        }
+    }
+
+    /**
+     * Rows for all sizes go first so a row for a specific size always wins
+     */
+    private static void apply(int[] table, List<MenuPrice> rows, Map<Long, Integer> indexById) {
+        for (MenuPrice row : rows) {
+            if (row.getSize() == null) {
+                int offset = indexById.get(row.getMenuItemId()) * SIZES.length;
+                Arrays.fill(table, offset, offset + SIZES.length, row.getPrice());
+            }
+        }
+        for (MenuPrice row : rows) {
+            if (row.getSize() != null) {
+                table[indexById.get(row.getMenuItemId()) * SIZES.length + row.getSize().ordinal()] = row.getPrice();
+            }
+        }
+    }
+
+    public List<String> getDrinkNames() {
+        return Collections.unmodifiableList(drinkNames);
+    }
+
+    public List<String> getMilkNames() {
+        return Collections.unmodifiableList(milkNames);
+    }
+
+    public List<String> getSyrupNames() {
+        return Collections.unmodifiableList(syrupNames);
+    }
+
+    public boolean isDrink(String name) {
+        return drinks.containsKey(name);
+    }
+
+    public boolean isMilk(String name) {
+        return milks.containsKey(name);
+    }
+
+    public boolean isSyrup(String name) {
+        return syrups.containsKey(name);
+    }
+
+    /**
+     * @return sizes the drink is offered in at the coffee shop, smallest first
+     */
+    public List<CupSize> getSizes(Long coffeeShopId, String drink) {
+        Integer index = drinks.get(drink);
+        if (index == null) {
+            return List.of();
+        }
+        int[] table = pricesOf(coffeeShopId);
+        List<CupSize> sizes = new ArrayList<>(SIZES.length);
+        for (CupSize size : SIZES) {
+            if (table[index * SIZES.length + size.ordinal()] != UNAVAILABLE) {
+                sizes.add(size);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Prices a drink with its add-ons at a coffee shop
+     *
+     * @param milk  Milk name, null for none
+     * @param syrup Syrup name, null for none
+     * @return total in tenge, or UNAVAILABLE if any part is not on the menu in that size
+     */
+    public int price(Long coffeeShopId, String drink, CupSize size, String milk, String syrup) {
+        if (size == null) {
+            return UNAVAILABLE;
+        }
+        int[] table = pricesOf(coffeeShopId);
+        int total = priceOf(table, drinks, drink, size);
+        if (total == UNAVAILABLE) {
+            return UNAVAILABLE;
+        }
+        if (milk != null) {
+            int milkPrice = priceOf(table, milks, milk, size);
+            if (milkPrice == UNAVAILABLE) {
+                return UNAVAILABLE;
+            }
+            total += milkPrice;
+        }
+        if (syrup != null) {
+            int syrupPrice = priceOf(table, syrups, syrup, size);
+            if (syrupPrice == UNAVAILABLE) {
+                return UNAVAILABLE;
+            }
+            total += syrupPrice;
+        }
+        return total;
+    }
+
+    private int[] pricesOf(Long coffeeShopId) {
+        int[] table = coffeeShopId != null ? shopPrices.get(coffeeShopId) : null;
+        return table != null ? table : basePrices;
+    }
+
+    private static int priceOf(int[] table, Map<String, Integer> byName, String name, CupSize size) {
+        Integer index = byName.get(name);
+        return index != null ? table[index * SIZES.length + size.ordinal()] : UNAVAILABLE;
+    }
+}
@@ -0,0 +1,19 @@
+package com.kwonka.common.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A row of the admin orders board, read together with the coffee shop name in one query
+ * and without loading Order entities
+ */
+public record ActiveOrderView(Long id,
+                              String orderNumber,
+                              String coffeeType,
+                              String size,
+                              String milkType,
+                              String syrupType,
+                              BigDecimal totalPrice,
+                              LocalDateTime createdAt,
+                              String coffeeShopName) {
+}
@@ -0,0 +1,72 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.DailyShopStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyShopStatRepository extends JpaRepository<DailyShopStat, DailyShopStat.Key> {
+
+    /**
+     * Adds one completed order to the rollup row of its day, shop, drink and size
+     */
+    @Modifying
+    @Query(value = "INSERT INTO daily_shop_stats (stat_date, coffee_shop_id, coffee_type, size, order_count, revenue) " +
+            "VALUES (:date, :shopId, :coffeeType, :size, 1, :revenue) " +
+            "ON CONFLICT (stat_date, coffee_shop_id, coffee_type, size) " +
+            "DO UPDATE SET order_count = daily_shop_stats.order_count + 1, " +
+            "revenue = daily_shop_stats.revenue + EXCLUDED.revenue", nativeQuery = true)
+    void addCompletedOrder(@Param("date") LocalDate date,
+                           @Param("shopId") Long shopId,
+                           @Param("coffeeType") String coffeeType,
+                           @Param("size") String size,
+                           @Param("revenue") BigDecimal revenue);
+
+    @Query("SELECT s.id.coffeeShopId AS shopId, SUM(s.orderCount) AS orderCount, SUM(s.revenue) AS totalRevenue " +
+            "FROM DailyShopStat s " +
+            "WHERE s.id.statDate BETWEEN :from AND :to " +
+            "GROUP BY s.id.coffeeShopId")
+    List<ShopOrderTotals> sumByShop(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT s.id.coffeeType AS coffeeType, s.id.size AS size, SUM(s.orderCount) AS orderCount " +
+            "FROM DailyShopStat s " +
+            "WHERE s.id.statDate BETWEEN :from AND :to " +
+            "GROUP BY s.id.coffeeType, s.id.size " +
+            "ORDER BY SUM(s.orderCount) DESC")
+    List<DrinkTotals> sumByDrink(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    /**
+     * Taken by every incremental update, they run concurrently with each other but not with a rebuild
+     */
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock_shared(:key)", nativeQuery = true)
+    Integer lockForIncrement(@Param("key") long key);
+
+    /**
+     * Taken by a rebuild, waits for the incremental updates in flight and holds off new ones until it commits
+     */
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(:key)", nativeQuery = true)
+    Integer lockForRebuild(@Param("key") long key);
+
+    @Modifying
+    @Query(value = "DELETE FROM daily_shop_stats WHERE stat_date BETWEEN :from AND :to", nativeQuery = true)
+    int deleteRange(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    /**
+     * Recomputes the rollup rows of [from, to] from the orders table; the range must be deleted first,
+     * under {@link #lockForRebuild} so no completion adds to a row between the two statements
+     */
+    @Modifying
+    @Query(value = "INSERT INTO daily_shop_stats (stat_date, coffee_shop_id, coffee_type, size, order_count, revenue) " +
+            "SELECT CAST(created_at AS DATE), coffee_shop_id, coffee_type, size, COUNT(*), SUM(total_price) " +
+            "FROM orders " +
+            "WHERE status = 'COMPLETED' AND created_at >= :from AND created_at < :toExclusive " +
+            "GROUP BY CAST(created_at AS DATE), coffee_shop_id, coffee_type, size", nativeQuery = true)
+    int insertRangeFromOrders(@Param("from") LocalDate from, @Param("toExclusive") LocalDate toExclusive);
+}
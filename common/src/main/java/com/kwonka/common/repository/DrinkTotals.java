@@ -0,0 +1,13 @@
+package com.kwonka.common.repository;
+
+/**
+ * Aggregated order count of a single drink and size
+ */
+public interface DrinkTotals {
+
+    String getCoffeeType();
+
+    String getSize();
+
+    Long getOrderCount();
+}
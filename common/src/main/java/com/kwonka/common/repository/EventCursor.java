@@ -0,0 +1,11 @@
+package com.kwonka.common.repository;
+
+/**
+ * Position of a consumer in the order event journal: the last event read and the transaction that wrote it
+ */
+public interface EventCursor {
+
+    Long getLastTransactionId();
+
+    Long getLastEventId();
+}
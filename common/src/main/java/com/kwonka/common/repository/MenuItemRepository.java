@@ -0,0 +1,13 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.MenuItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MenuItemRepository extends JpaRepository<MenuItem, Long> {
+
+    List<MenuItem> findByActiveTrueOrderBySortOrderAscIdAsc();
+}
@@ -0,0 +1,9 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.MenuPrice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MenuPriceRepository extends JpaRepository<MenuPrice, Long> {
+}
@@ -0,0 +1,54 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.OrderEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OrderEventRepository extends JpaRepository<OrderEvent, Long> {
+
+    /**
+     * Next events after a cursor, in the order of the transactions that wrote them. Only events of
+     * transactions older than every transaction still running are returned: no event can appear
+     * before them any more, so a reader never skips one by moving its cursor past them.
+     */
+    @Query(value = "SELECT * FROM order_events " +
+            "WHERE (transaction_id, id) > (:transactionId, :eventId) " +
+            "AND transaction_id < pg_snapshot_xmin(pg_current_snapshot())::text::bigint " +
+            "ORDER BY transaction_id, id LIMIT 500", nativeQuery = true)
+    List<OrderEvent> findNextCommitted(@Param("transactionId") long transactionId, @Param("eventId") long eventId);
+
+    Optional<OrderEvent> findTopByOrderByTransactionIdDescIdDesc();
+
+    @Query(value = "SELECT last_transaction_id AS lastTransactionId, last_event_id AS lastEventId " +
+            "FROM order_event_cursors WHERE consumer = :consumer", nativeQuery = true)
+    Optional<EventCursor> findCursor(@Param("consumer") String consumer);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO order_event_cursors (consumer, last_transaction_id, last_event_id) " +
+            "VALUES (:consumer, :transactionId, :eventId) " +
+            "ON CONFLICT (consumer) DO UPDATE SET last_transaction_id = EXCLUDED.last_transaction_id, " +
+            "last_event_id = EXCLUDED.last_event_id, updated_at = now()", nativeQuery = true)
+    void saveCursor(@Param("consumer") String consumer,
+                    @Param("transactionId") Long transactionId,
+                    @Param("eventId") Long eventId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM order_event_cursors WHERE updated_at < :before", nativeQuery = true)
+    int deleteCursorsOlderThan(@Param("before") LocalDateTime before);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OrderEvent e WHERE e.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
@@ -2,10 +2,16 @@ package com.kwonka.common.repository;
 
 import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.entity.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +30,136 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     List<Order> findByCoffeeShop(CoffeeShop coffeeShop);
 
-    @Query("SELECT MAX(CAST(o.orderNumber AS int)) FROM Order o")
-    Integer findMaxOrderNumber();
-}
\ No newline at end of file
+    /**
+     * Order count and revenue per coffee shop for orders in the given status created in [from, to)
+     */
+    @Query("SELECT o.coffeeShop.id AS shopId, COUNT(o) AS orderCount, SUM(o.totalPrice) AS totalRevenue " +
+            "FROM Order o " +
+            "WHERE o.status = :status AND o.createdAt >= :from AND o.createdAt < :to " +
+            "GROUP BY o.coffeeShop.id")
+    List<ShopOrderTotals> sumByShop(@Param("status") Order.OrderStatus status,
+                                    @Param("from") LocalDateTime from,
+                                    @Param("to") LocalDateTime to);
+
+    /**
+     * First page of the pending orders board, newest first
+     */
+    @Query("SELECT new com.kwonka.common.repository.ActiveOrderView(o.id, o.orderNumber, o.coffeeType, o.size, " +
+            "o.milkType, o.syrupType, o.totalPrice, o.createdAt, s.name) " +
+            "FROM Order o JOIN o.coffeeShop s " +
+            "WHERE o.status = PENDING " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<ActiveOrderView> findPendingBoard(Pageable page);
+
+    /**
+     * Page of the pending orders board that follows the row with the given creation time and ID
+     */
+    @Query("SELECT new com.kwonka.common.repository.ActiveOrderView(o.id, o.orderNumber, o.coffeeType, o.size, " +
+            "o.milkType, o.syrupType, o.totalPrice, o.createdAt, s.name) " +
+            "FROM Order o JOIN o.coffeeShop s " +
+            "WHERE o.status = PENDING " +
+            "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<ActiveOrderView> findPendingBoardAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable page);
+
+    /**
+     * Orders waiting or being prepared, counted per coffee shop and status
+     */
+    @Query("SELECT new com.kwonka.common.repository.ShopStatusCount(s.code, o.status, COUNT(o)) " +
+            "FROM Order o JOIN o.coffeeShop s " +
+            "WHERE o.status IN (PENDING, IN_PREPARATION) " +
+            "GROUP BY s.code, o.status")
+    List<ShopStatusCount> countActiveByShopAndStatus();
+
+    /**
+     * Moves an order to a new status only if it is still in the expected one, stamping the time it
+     * entered the new status. Concurrent callers are serialized on the row, exactly one of them
+     * finds the expected status.
+     *
+     * @return 1 if the order was moved, 0 if it is missing or already in another status
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE orders SET status = :to, updated_at = :now, " +
+            "taken_at = CASE WHEN :to = 'IN_PREPARATION' THEN COALESCE(taken_at, :now) ELSE taken_at END, " +
+            "ready_at = CASE WHEN :to = 'READY' THEN COALESCE(ready_at, :now) ELSE ready_at END, " +
+            "completed_at = CASE WHEN :to = 'COMPLETED' THEN COALESCE(completed_at, :now) ELSE completed_at END, " +
+            "cancelled_at = CASE WHEN :to = 'CANCELLED' THEN COALESCE(cancelled_at, :now) ELSE cancelled_at END " +
+            "WHERE order_number = :orderNumber AND status = :from", nativeQuery = true)
+    int transition(@Param("orderNumber") String orderNumber,
+                   @Param("from") String from,
+                   @Param("to") String to,
+                   @Param("now") LocalDateTime now);
+
+    /**
+     * Takes a pending order into preparation for a barista, only if it is still pending
+     *
+     * @return 1 if this call took the order, 0 if it is missing or no longer pending
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE orders SET status = 'IN_PREPARATION', barista_chat_id = :baristaChatId, " +
+            "updated_at = :now, taken_at = COALESCE(taken_at, :now) " +
+            "WHERE order_number = :orderNumber AND status = 'PENDING'", nativeQuery = true)
+    int take(@Param("orderNumber") String orderNumber,
+             @Param("baristaChatId") Long baristaChatId,
+             @Param("now") LocalDateTime now);
+
+    /**
+     * Takes the oldest pending orders of a coffee shop into preparation for a barista in one
+     * statement. Rows locked by a concurrent take are skipped, so baristas taking at the same
+     * time get disjoint orders.
+     *
+     * @return IDs of the orders taken, at most limit
+     */
+    @Transactional
+    @Query(value = "UPDATE orders SET status = 'IN_PREPARATION', barista_chat_id = :baristaChatId, " +
+            "updated_at = :now, taken_at = COALESCE(taken_at, :now) " +
+            "WHERE status = 'PENDING' AND id IN (" +
+            "SELECT id FROM orders WHERE coffee_shop_id = :shopId AND status = 'PENDING' " +
+            "ORDER BY created_at, id LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id", nativeQuery = true)
+    List<Long> takeOldestPending(@Param("shopId") Long shopId,
+                                 @Param("baristaChatId") Long baristaChatId,
+                                 @Param("limit") int limit,
+                                 @Param("now") LocalDateTime now);
+
+    /**
+     * Marks every order a barista has in preparation as ready in one statement
+     *
+     * @return IDs of the orders marked
+     */
+    @Transactional
+    @Query(value = "UPDATE orders SET status = 'READY', updated_at = :now, ready_at = COALESCE(ready_at, :now) " +
+            "WHERE barista_chat_id = :baristaChatId AND status = 'IN_PREPARATION' " +
+            "RETURNING id", nativeQuery = true)
+    List<Long> markReadyByBarista(@Param("baristaChatId") Long baristaChatId, @Param("now") LocalDateTime now);
+
+    /**
+     * Cancels the orders of a coffee shop that are still pending since before the given time
+     *
+     * @return IDs of the orders cancelled
+     */
+    @Transactional
+    @Query(value = "UPDATE orders SET status = 'CANCELLED', updated_at = :now, cancelled_at = COALESCE(cancelled_at, :now) " +
+            "WHERE coffee_shop_id = :shopId AND status = 'PENDING' AND created_at < :createdBefore " +
+            "RETURNING id", nativeQuery = true)
+    List<Long> cancelPendingCreatedBefore(@Param("shopId") Long shopId,
+                                          @Param("createdBefore") LocalDateTime createdBefore,
+                                          @Param("now") LocalDateTime now);
+
+    /**
+     * Reserves the next block of global order numbers; the returned value is the first number of the block
+     */
+    @Query(value = "SELECT nextval('order_number_seq')", nativeQuery = true)
+    Long nextOrderNumberBlock();
+
+    /**
+     * Atomically increments and returns the order counter of a coffee shop for the given day
+     */
+    @Transactional
+    @Query(value = "INSERT INTO shop_daily_order_counters (coffee_shop_id, counter_date, last_value) " +
+            "VALUES (:shopId, :date, 1) " +
+            "ON CONFLICT (coffee_shop_id, counter_date) " +
+            "DO UPDATE SET last_value = shop_daily_order_counters.last_value + 1 " +
+            "RETURNING last_value", nativeQuery = true)
+    Integer nextShopDailyOrderNumber(@Param("shopId") Long shopId, @Param("date") LocalDate date);
+}
@@ -0,0 +1,79 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.OutboxNotification;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxNotificationRepository extends JpaRepository<OutboxNotification, Long> {
+
+    /**
+     * Queues a notification unless one with the same dedup key already exists
+     *
+     * @return 1 if queued, 0 if it was a duplicate
+     */
+    @Modifying
+    @Query(value = "INSERT INTO notification_outbox (dedup_key, type, chat_id, order_number, attempts, next_attempt_at, created_at) " +
+            "VALUES (:dedupKey, :type, :chatId, :orderNumber, 0, :now, :now) " +
+            "ON CONFLICT (dedup_key) DO NOTHING", nativeQuery = true)
+    int enqueue(@Param("dedupKey") String dedupKey,
+                @Param("type") String type,
+                @Param("chatId") Long chatId,
+                @Param("orderNumber") String orderNumber,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * Claims up to limit due notifications by pushing their next attempt to leaseUntil,
+     * so concurrent dispatchers never pick the same rows
+     */
+    @Transactional
+    @Query(value = "UPDATE notification_outbox SET next_attempt_at = :leaseUntil, attempts = attempts + 1 " +
+            "WHERE id IN (SELECT id FROM notification_outbox " +
+            "WHERE sent_at IS NULL AND failed_at IS NULL AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING *", nativeQuery = true)
+    List<OutboxNotification> claimDue(@Param("now") LocalDateTime now,
+                                      @Param("leaseUntil") LocalDateTime leaseUntil,
+                                      @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxNotification n SET n.sentAt = :sentAt WHERE n.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxNotification n SET n.nextAttemptAt = :nextAttemptAt, n.lastError = :error WHERE n.id = :id")
+    int scheduleRetry(@Param("id") Long id,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                      @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxNotification n SET n.failedAt = :failedAt, n.lastError = :error WHERE n.id = :id")
+    int markFailed(@Param("id") Long id, @Param("failedAt") LocalDateTime failedAt, @Param("error") String error);
+
+    /**
+     * Removes delivered notifications and ones given up on, each after its own retention
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboxNotification n WHERE n.sentAt < :sentBefore OR n.failedAt < :failedBefore")
+    int deleteFinishedBefore(@Param("sentBefore") LocalDateTime sentBefore,
+                             @Param("failedBefore") LocalDateTime failedBefore);
+
+    @Query("SELECT MIN(n.createdAt) FROM OutboxNotification n WHERE n.sentAt IS NULL AND n.failedAt IS NULL")
+    Optional<LocalDateTime> findOldestPendingCreatedAt();
+
+    @Query("SELECT COUNT(n) FROM OutboxNotification n WHERE n.sentAt IS NULL AND n.failedAt IS NULL")
+    long countPending();
+}
@@ -0,0 +1,15 @@
+package com.kwonka.common.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregated order count and revenue of a single coffee shop
+ */
+public interface ShopOrderTotals {
+
+    Long getShopId();
+
+    Long getOrderCount();
+
+    BigDecimal getTotalRevenue();
+}
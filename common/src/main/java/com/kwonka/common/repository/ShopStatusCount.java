@@ -0,0 +1,11 @@
+package com.kwonka.common.repository;
+
+import com.kwonka.common.entity.Order;
+
+/**
+ * Number of orders of a coffee shop in one status
+ */
+public record ShopStatusCount(String coffeeShopCode,
+                              Order.OrderStatus status,
+                              Long count) {
+}
@@ -3,26 +3,26 @@ package com.kwonka.common.service;
 import com.kwonka.common.entity.Order;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
  * Service to coordinate communication between bots
- * This is a simplified implementation for the demo
- * In a real application, you might use a message broker like RabbitMQ or Kafka
+ * Order lifecycle events are published by OrderService and delivered here after the
+ * transaction commits, then fanned out to the registered customer and barista callbacks.
+ * Events from other bot processes arrive the same way through OrderEventSubscriber.
  */
 @Service
 @Slf4j
 public class BotCommunicationService {
 
     private final ApplicationEventPublisher eventPublisher;
-    private final Map<Long, Consumer<Order>> customerCallbacks = new HashMap<>();
-    private final Map<String, Consumer<Order>> baristaCallbacks = new HashMap<>();
+    private final Map<Long, Consumer<Order>> customerCallbacks = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, Consumer<Order>>> baristaCallbacks = new ConcurrentHashMap<>();
 
     public BotCommunicationService(ApplicationEventPublisher eventPublisher) {
         this.eventPublisher = eventPublisher;
@@ -37,11 +37,31 @@ public class BotCommunicationService {
     }
 
     /**
-     * Register a callback for a barista location
+     * Subscribe a barista chat to order events of a location. A chat is subscribed to
+     * at most one location, subscribing again moves it.
      */
-    public void registerBaristaCallback(String locationCode, Consumer<Order> callback) {
-        baristaCallbacks.put(locationCode, callback);
-        log.debug("Registered barista callback for location: {}", locationCode);
+    public void subscribeBarista(String locationCode, Long chatId, Consumer<Order> callback) {
+        unsubscribeBarista(chatId);
+        baristaCallbacks.computeIfAbsent(locationCode, code -> new ConcurrentHashMap<>()).put(chatId, callback);
+        log.debug("Barista chat {} subscribed to location: {}", chatId, locationCode);
+    }
+
+    /**
+     * Remove the subscription of a barista chat, if any
+     */
+    public void unsubscribeBarista(Long chatId) {
+        for (Map<Long, Consumer<Order>> subscribers : baristaCallbacks.values()) {
+            if (subscribers.remove(chatId) != null) {
+                log.debug("Barista chat {} unsubscribed", chatId);
+            }
+        }
+    }
+
+    /**
+     * @return true if the barista chat is subscribed to some location
+     */
+    public boolean isBaristaSubscribed(Long chatId) {
+        return baristaCallbacks.values().stream().anyMatch(subscribers -> subscribers.containsKey(chatId));
     }
 
     /**
@@ -50,7 +70,7 @@ public class BotCommunicationService {
     public void notifyCustomer(Order order) {
         Consumer<Order> callback = customerCallbacks.get(order.getCustomerId());
         if (callback != null) {
-            callback.accept(order);
+            invoke(callback, order);
             log.debug("Notified customer {} about order status change: {}", order.getCustomerId(), order.getStatus());
         } else {
             log.debug("No callback registered for customer: {}", order.getCustomerId());
@@ -58,24 +78,34 @@ public class BotCommunicationService {
     }
 
     /**
-     * Notify barista about new order
+     * Notify baristas of the order's location
      */
     public void notifyBarista(Order order) {
         String locationCode = order.getCoffeeShop().getCode();
-        Consumer<Order> callback = baristaCallbacks.get(locationCode);
-        if (callback != null) {
-            callback.accept(order);
-            log.debug("Notified barista at location {} about new order", locationCode);
+        Map<Long, Consumer<Order>> subscribers = baristaCallbacks.get(locationCode);
+        if (subscribers != null && !subscribers.isEmpty()) {
+            subscribers.values().forEach(callback -> invoke(callback, order));
+            log.debug("Notified {} barista(s) at location {} about order {}", subscribers.size(), locationCode, order.getOrderNumber());
         } else {
             log.debug("No callback registered for location: {}", locationCode);
         }
     }
 
+    private void invoke(Consumer<Order> callback, Order order) {
+        try {
+            callback.accept(order);
+        } catch (RuntimeException e) {
+            log.error("Order callback failed for order {}", order.getOrderNumber(), e);
+        }
+    }
+
     /**
-     * Listen for order status changes and notify relevant parties
+     * Listen for order status changes and notify relevant parties.
+     * Runs on the thread that committed the change (or OrderEventSubscriber's thread), so the
+     * callbacks see the changes of an order in the order they were made; they only queue
+     * messages in the Telegram outbox and do not hold the thread for long.
      */
-    @Async
-    @EventListener
+    @TransactionalEventListener(fallbackExecution = true)
     public void handleOrderStatusChange(OrderStatusChangeEvent event) {
         Order order = event.getOrder();
         notifyCustomer(order);
@@ -87,13 +117,31 @@ public class BotCommunicationService {
      */
     public static class OrderStatusChangeEvent {
         private final Order order;
+        private final Order.OrderStatus previousStatus;
 
         public OrderStatusChangeEvent(Order order) {
+            this(order, null);
+        }
+
+        /**
+         * @param order          The order after the change
+         * @param previousStatus Status before the change, null for a newly created order
+         */
+        public OrderStatusChangeEvent(Order order, Order.OrderStatus previousStatus) {
             this.order = order;
+            this.previousStatus = previousStatus;
         }
 
         public Order getOrder() {
             return order;
         }
+
+        public Order.OrderStatus getPreviousStatus() {
+            return previousStatus;
+        }
+
+        public boolean isNewOrder() {
+            return previousStatus == null;
+        }
     }
-}
\ No newline at end of file
+}
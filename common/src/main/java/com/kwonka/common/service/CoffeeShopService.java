@@ -2,38 +2,165 @@ package com.kwonka.common.service;
 
 import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.repository.CoffeeShopRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coffee shops are read on nearly every bot step but change a few times a year, so lookups are
+ * served from an immutable snapshot of the whole table. The snapshot is dropped after a local
+ * change commits and when another process signals a change on the coffee_shops_changed channel,
+ * the next lookup loads a fresh one.
+ * Shops handed out are shared between callers and must not be modified.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
+@Timed("kwonka.service")
 public class CoffeeShopService {
 
+    private static final String CHANGE_CHANNEL = "coffee_shops_changed";
+
     private final CoffeeShopRepository coffeeShopRepository;
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    private volatile Snapshot snapshot;
+
+    public CoffeeShopService(CoffeeShopRepository coffeeShopRepository, PgNotificationListener notificationListener,
+                             MeterRegistry meterRegistry) {
+        this.coffeeShopRepository = coffeeShopRepository;
+        this.hits = Counter.builder("kwonka.cache.coffee_shops").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("kwonka.cache.coffee_shops").tag("result", "miss").register(meterRegistry);
+        notificationListener.register(CHANGE_CHANNEL, this::invalidate);
+    }
 
     /**
      * Get all active coffee shops
      */
     public List<CoffeeShop> getAllActiveShops() {
-        return coffeeShopRepository.findByActiveTrue();
+        hits.increment();
+        return snapshot().active;
     }
 
     /**
      * Get a coffee shop by its code
      */
     public Optional<CoffeeShop> getShopByCode(String code) {
-        return coffeeShopRepository.findByCode(code);
+        CoffeeShop shop = snapshot().byCode.get(code);
+        if (shop != null) {
+            hits.increment();
+            return Optional.of(shop);
+        }
+        misses.increment();
+        return reloadIfFound(coffeeShopRepository.findByCode(code));
     }
 
     /**
      * Get a coffee shop by its ID
      */
     public Optional<CoffeeShop> findById(Long id) {
-        return coffeeShopRepository.findById(id);
+        CoffeeShop shop = snapshot().byId.get(id);
+        if (shop != null) {
+            hits.increment();
+            return Optional.of(shop);
+        }
+        misses.increment();
+        return reloadIfFound(coffeeShopRepository.findById(id));
+    }
+
+    /**
+     * Get an active coffee shop by its exact name, as shown on the selection keyboards
+     */
+    public Optional<CoffeeShop> findActiveShopByName(String name) {
+        CoffeeShop shop = snapshot().activeByName.get(name);
+        if (shop != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return Optional.ofNullable(shop);
+    }
+
+    /**
+     * Drops the snapshot, the next lookup reloads it
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+        log.debug("Coffee shop cache invalidated");
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : load();
+    }
+
+    private synchronized Snapshot load() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        long loadedGeneration = generation.get();
+        Snapshot loaded = new Snapshot(coffeeShopRepository.findAll());
+        // Keep it only if nothing was invalidated while loading, otherwise the next lookup loads again
+        if (generation.get() == loadedGeneration) {
+            snapshot = loaded;
+        }
+        log.debug("Loaded {} coffee shops into the cache", loaded.byId.size());
+        return loaded;
+    }
+
+    /**
+     * A shop the snapshot does not know yet was created by another process before its signal arrived
+     */
+    private Optional<CoffeeShop> reloadIfFound(Optional<CoffeeShop> shop) {
+        if (shop.isPresent()) {
+            invalidate();
+        }
+        return shop;
+    }
+
+    private void invalidateAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate();
+                }
+            });
+        } else {
+            invalidate();
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<Long, CoffeeShop> byId = new HashMap<>();
+        private final Map<String, CoffeeShop> byCode = new HashMap<>();
+        private final Map<String, CoffeeShop> activeByName = new HashMap<>();
+        private final List<CoffeeShop> active;
+
+        private Snapshot(List<CoffeeShop> shops) {
+            for (CoffeeShop shop : shops) {
+                byId.put(shop.getId(), shop);
+                byCode.put(shop.getCode(), shop);
+                if (shop.isActive()) {
+                    activeByName.putIfAbsent(shop.getName(), shop);
+                }
+            }
+            this.active = shops.stream().filter(CoffeeShop::isActive).toList();
+        }
     }
 
     /**
@@ -48,6 +175,7 @@ public class CoffeeShopService {
                 .active(true)
                 .build();
 
+        invalidateAfterCommit();
         return coffeeShopRepository.save(coffeeShop);
     }
 
@@ -76,6 +204,7 @@ public class CoffeeShopService {
                 coffeeShop.setActive(active);
             }
 
+            invalidateAfterCommit();
             return Optional.of(coffeeShopRepository.save(coffeeShop));
         }
 
@@ -91,6 +220,7 @@ public class CoffeeShopService {
         if (coffeeShopOpt.isPresent()) {
             CoffeeShop coffeeShop = coffeeShopOpt.get();
             coffeeShop.setActive(false);
+            invalidateAfterCommit();
             return Optional.of(coffeeShopRepository.save(coffeeShop));
         }
 
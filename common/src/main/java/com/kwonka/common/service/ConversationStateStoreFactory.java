@@ -0,0 +1,67 @@
+package com.kwonka.common.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.state.InMemoryConversationStateStore;
+import com.kwonka.common.state.JdbcConversationStateStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Creates the conversation state stores of the bots according to kwonka.sessions.*
+ * <ul>
+ *     <li>jdbc - kept in the conversation_state table, survives restarts. Cached by this process unless
+ *     kwonka.sessions.shared is set, which any replica taking any chat's updates needs</li>
+ *     <li>memory - kept on the heap of this process only</li>
+ * </ul>
+ */
+@Service
+public class ConversationStateStoreFactory {
+
+    public enum StoreType {
+        JDBC,
+        MEMORY
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final StoreType storeType;
+    private final int maxEntries;
+    private final Duration idleTtl;
+    private final Duration nearCacheTtl;
+    private final Duration flushInterval;
+    private final boolean shared;
+
+    public ConversationStateStoreFactory(JdbcTemplate jdbcTemplate,
+                                         @Value("${kwonka.sessions.store:JDBC}") StoreType storeType,
+                                         @Value("${kwonka.sessions.max-entries:100000}") int maxEntries,
+                                         @Value("${kwonka.sessions.idle-ttl:24h}") Duration idleTtl,
+                                         @Value("${kwonka.sessions.near-cache-ttl:30s}") Duration nearCacheTtl,
+                                         @Value("${kwonka.sessions.flush-interval:200ms}") Duration flushInterval,
+                                         @Value("${kwonka.sessions.shared:false}") boolean shared) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.storeType = storeType;
+        this.maxEntries = maxEntries;
+        this.idleTtl = idleTtl;
+        this.nearCacheTtl = nearCacheTtl;
+        this.flushInterval = flushInterval;
+        this.shared = shared;
+    }
+
+    /**
+     * @param bot  Name of the bot, keeps the chats of different bots apart
+     * @param type Class of the per-chat state
+     */
+    public <S> ConversationStateStore<S> create(String bot, Class<S> type) {
+        if (storeType == StoreType.MEMORY) {
+            return new InMemoryConversationStateStore<>(maxEntries, idleTtl);
+        }
+        return new JdbcConversationStateStore<>(jdbcTemplate, objectMapper, bot, type,
+                maxEntries, nearCacheTtl, idleTtl, flushInterval, shared);
+    }
+}
@@ -1,18 +1,16 @@
 package com.kwonka.common.service;
 
+import com.kwonka.common.telegram.PrebuiltKeyboard;
+import com.kwonka.common.telegram.TelegramOutbox;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.DefaultAbsSender;
-import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.api.objects.Message;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service for sending notifications to customers
@@ -23,14 +21,25 @@ import java.util.List;
 @Slf4j
 public class CustomerNotificationService extends DefaultAbsSender {
 
+    private static final PrebuiltKeyboard PICKED_UP_KEYBOARD = PrebuiltKeyboard.column("Я забрал(а)");
+    private static final PrebuiltKeyboard ORDER_AGAIN_KEYBOARD = PrebuiltKeyboard.column("Сделать новый заказ");
+
+    private final TelegramOutbox telegramOutbox;
+
     /**
      * Constructor that takes the customer bot token
      * The bot token is used to authenticate with the Telegram Bot API
      *
-     * @param botToken The token of the customer bot
+     * @param botToken  The token of the customer bot
+     * @param apiUrl    Bot API address
+     * @param perSecond This process's share of the customer bot token's rate limit
      */
-    public CustomerNotificationService(@Value("${telegram.customer.bot.token}") String botToken) {
-        super(new DefaultBotOptions(), botToken);
+    public CustomerNotificationService(@Value("${telegram.customer.bot.token}") String botToken,
+                                       @Value("${telegram.api-url:https://api.telegram.org/bot}") String apiUrl,
+                                       @Value("${kwonka.telegram.per-second.customer}") int perSecond,
+                                       MeterRegistry meterRegistry) {
+        super(TelegramOutbox.newBotOptions(apiUrl), botToken);
+        this.telegramOutbox = new TelegramOutbox(this, "customer-notifications", perSecond, meterRegistry);
     }
 
     /**
@@ -38,74 +47,78 @@ public class CustomerNotificationService extends DefaultAbsSender {
      *
      * @param chatId      Customer's Telegram chat ID
      * @param orderNumber Order number
+     * @return Future completed once Telegram accepted the message, exceptionally if it did not
      */
-    public void notifyOrderReady(Long chatId, String orderNumber) {
+    public CompletableFuture<Message> notifyOrderReady(Long chatId, String orderNumber) {
         if (chatId == null) {
-            log.error("Cannot send notification: customer chat ID is null");
-            return;
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Customer chat ID is null"));
         }
 
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText("Ваш кофе ждёт - номер заказа: #" + orderNumber);
 
-        // Add "I've picked it up" button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Я забрал(а)"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.info("Order ready notification sent to customer {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Failed to send order ready notification to customer {}", chatId, e);
+        message.setReplyMarkup(PICKED_UP_KEYBOARD);
+
+        // Ready notifications go ahead of other messages queued for this bot
+        return telegramOutbox.send(message, TelegramOutbox.Priority.HIGH)
+                .whenComplete((sent, e) -> {
+                    if (e == null) {
+                        log.info("Order ready notification sent to customer {}", chatId);
+                    }
+                });
+    }
+
+    /**
+     * Notifies a customer that the coffee shop cancelled their order
+     *
+     * @param chatId      Customer's Telegram chat ID
+     * @param orderNumber Order number
+     * @return Future completed once Telegram accepted the message, exceptionally if it did not
+     */
+    public CompletableFuture<Message> notifyOrderCancelled(Long chatId, String orderNumber) {
+        if (chatId == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Customer chat ID is null"));
         }
+
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText("К сожалению, кофейня не смогла принять ваш заказ #" + orderNumber + " и отменила его. " +
+                "Просим прощения!");
+
+        message.setReplyMarkup(ORDER_AGAIN_KEYBOARD);
+
+        return telegramOutbox.send(message)
+                .whenComplete((sent, e) -> {
+                    if (e == null) {
+                        log.info("Order cancelled notification sent to customer {}", chatId);
+                    }
+                });
     }
 
     /**
      * Send completion message to customer after they've picked up their order
      *
      * @param chatId Customer's Telegram chat ID
+     * @return Future completed once Telegram accepted the message, exceptionally if it did not
      */
-    public void sendOrderCompletionMessage(Long chatId) {
+    public CompletableFuture<Message> sendOrderCompletionMessage(Long chatId) {
         if (chatId == null) {
-            log.error("Cannot send completion message: customer chat ID is null");
-            return;
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Customer chat ID is null"));
         }
 
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
         message.setText("Спасибо за заказ! Заглядывайте снова - мы уже скучаем 💛");
 
-        // Add "New order" button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Сделать новый заказ"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.info("Order completion message sent to customer {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Failed to send order completion message to customer {}", chatId, e);
-        }
+        message.setReplyMarkup(ORDER_AGAIN_KEYBOARD);
+
+        return telegramOutbox.send(message)
+                .whenComplete((sent, e) -> {
+                    if (e == null) {
+                        log.info("Order completion message sent to customer {}", chatId);
+                    }
+                });
     }
 
     @Override
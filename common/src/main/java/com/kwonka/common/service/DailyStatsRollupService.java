@@ -0,0 +1,97 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.DailyShopStatRepository;
+import com.kwonka.common.repository.DrinkTotals;
+import com.kwonka.common.repository.OrderRepository;
+import com.kwonka.common.repository.ShopOrderTotals;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maintains the daily_shop_stats rollup so that reports read a handful of rows
+ * per day instead of scanning orders
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DailyStatsRollupService {
+
+    private static final long ROLLUP_LOCK_KEY = 0x64737374L;
+
+    private final DailyShopStatRepository dailyShopStatRepository;
+    private final OrderRepository orderRepository;
+
+    /**
+     * Adds a just completed order to the rollup. Runs in the caller's transaction,
+     * so the rollup never diverges from the status change.
+     */
+    @Transactional
+    public void recordCompleted(Order order) {
+        dailyShopStatRepository.lockForIncrement(ROLLUP_LOCK_KEY);
+        dailyShopStatRepository.addCompletedOrder(
+                order.getCreatedAt().toLocalDate(),
+                order.getCoffeeShop().getId(),
+                order.getCoffeeType(),
+                order.getSize(),
+                order.getTotalPrice());
+    }
+
+    /**
+     * Recomputes the rollup for a range of days from the orders table. Completions wait until it
+     * commits, and it waits for the ones already in flight, so each is counted exactly once.
+     *
+     * @param from First day to rebuild
+     * @param to   Last day to rebuild (inclusive)
+     */
+    @Transactional
+    public void rebuild(LocalDate from, LocalDate to) {
+        dailyShopStatRepository.lockForRebuild(ROLLUP_LOCK_KEY);
+        logDrift(from, to);
+        int deleted = dailyShopStatRepository.deleteRange(from, to);
+        int inserted = dailyShopStatRepository.insertRangeFromOrders(from, to.plusDays(1));
+        log.info("Rebuilt daily stats rollup for {}..{}: {} rows replaced by {}", from, to, deleted, inserted);
+    }
+
+    /**
+     * Gets completed order count and revenue per coffee shop for a range of days (both ends inclusive)
+     */
+    public List<ShopOrderTotals> getShopTotals(LocalDate from, LocalDate to) {
+        return dailyShopStatRepository.sumByShop(from, to);
+    }
+
+    /**
+     * Gets completed order count per drink and size for a range of days, most popular first
+     */
+    public List<DrinkTotals> getDrinkTotals(LocalDate from, LocalDate to) {
+        return dailyShopStatRepository.sumByDrink(from, to);
+    }
+
+    /**
+     * Compares the rollup with the live aggregation over orders, so repairs made by a rebuild show up in the log
+     */
+    private void logDrift(LocalDate from, LocalDate to) {
+        Map<Long, Long> rolledUp = new HashMap<>();
+        for (ShopOrderTotals totals : dailyShopStatRepository.sumByShop(from, to)) {
+            rolledUp.put(totals.getShopId(), totals.getOrderCount());
+        }
+        for (ShopOrderTotals totals : orderRepository.sumByShop(Order.OrderStatus.COMPLETED,
+                from.atStartOfDay(), to.plusDays(1).atStartOfDay())) {
+            Long rolledUpCount = rolledUp.remove(totals.getShopId());
+            if (!Objects.equals(rolledUpCount, totals.getOrderCount())) {
+                log.warn("Daily stats rollup of shop {} for {}..{} drifted: {} orders instead of {}",
+                        totals.getShopId(), from, to, rolledUpCount, totals.getOrderCount());
+            }
+        }
+        rolledUp.forEach((shopId, count) -> log.warn("Daily stats rollup of shop {} for {}..{} drifted: {} orders instead of none",
+                shopId, from, to, count));
+    }
+}
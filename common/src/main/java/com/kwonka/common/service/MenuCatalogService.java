@@ -0,0 +1,59 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.menu.MenuCatalog;
+import com.kwonka.common.repository.MenuItemRepository;
+import com.kwonka.common.repository.MenuPriceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds the compiled menu. It is loaded on first use and rebuilt whenever the menu tables
+ * change (menu_changed notification); a failed rebuild keeps serving the previous menu.
+ */
+@Service
+@Slf4j
+public class MenuCatalogService {
+
+    private static final String CHANGE_CHANNEL = "menu_changed";
+
+    private final MenuItemRepository menuItemRepository;
+    private final MenuPriceRepository menuPriceRepository;
+
+    private volatile MenuCatalog catalog;
+
+    public MenuCatalogService(MenuItemRepository menuItemRepository,
+                              MenuPriceRepository menuPriceRepository,
+                              PgNotificationListener notificationListener) {
+        this.menuItemRepository = menuItemRepository;
+        this.menuPriceRepository = menuPriceRepository;
+        notificationListener.register(CHANGE_CHANNEL, this::reload);
+    }
+
+    public MenuCatalog getCatalog() {
+        MenuCatalog current = catalog;
+        return current != null ? current : loadIfAbsent();
+    }
+
+    /**
+     * Rebuilds the menu from the database
+     */
+    public synchronized void reload() {
+        try {
+            catalog = load();
+            log.info("Menu reloaded");
+        } catch (RuntimeException e) {
+            log.error("Failed to reload the menu, keeping the current one", e);
+        }
+    }
+
+    private synchronized MenuCatalog loadIfAbsent() {
+        if (catalog == null) {
+            catalog = load();
+        }
+        return catalog;
+    }
+
+    private MenuCatalog load() {
+        return MenuCatalog.compile(menuItemRepository.findByActiveTrueOrderBySortOrderAscIdAsc(), menuPriceRepository.findAll());
+    }
+}
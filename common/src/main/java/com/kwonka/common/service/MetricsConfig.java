@@ -0,0 +1,21 @@
+package com.kwonka.common.service;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics setup shared by all bots, the meters are scraped from /actuator/prometheus
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Times the methods of beans annotated with @Timed, such as OrderService and CoffeeShopService
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
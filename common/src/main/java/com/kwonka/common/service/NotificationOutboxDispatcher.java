@@ -0,0 +1,195 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.OutboxNotification;
+import com.kwonka.common.repository.OutboxNotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers queued customer notifications from the notification_outbox table.
+ * Due rows are claimed in batches with FOR UPDATE SKIP LOCKED under a short lease, so several
+ * dispatchers can run side by side and a crashed one only delays its batch until the lease ends.
+ * Failed sends are retried with exponential backoff and given up after a number of attempts.
+ * Delivered rows are removed after a day, rows given up on after a week so the errors can be looked into.
+ * Only enabled in the process that holds the customer bot token (kwonka.outbox.dispatcher.enabled).
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "kwonka.outbox.dispatcher.enabled", havingValue = "true")
+public class NotificationOutboxDispatcher {
+
+    private static final Duration LEASE = Duration.ofMinutes(1);
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration BASE_BACKOFF = Duration.ofSeconds(5);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(10);
+    // Long past any retry of the status change that queued a row, so its dedup key is not needed any more
+    private static final Duration SENT_RETENTION = Duration.ofDays(1);
+    private static final Duration FAILED_RETENTION = Duration.ofDays(7);
+
+    private final OutboxNotificationRepository outboxNotificationRepository;
+    private final CustomerNotificationService customerNotificationService;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+
+    public NotificationOutboxDispatcher(OutboxNotificationRepository outboxNotificationRepository,
+                                        CustomerNotificationService customerNotificationService,
+                                        @Value("${kwonka.outbox.dispatcher.batch-size:50}") int batchSize,
+                                        @Value("${kwonka.outbox.dispatcher.max-attempts:8}") int maxAttempts,
+                                        MeterRegistry registry) {
+        this.outboxNotificationRepository = outboxNotificationRepository;
+        this.customerNotificationService = customerNotificationService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+
+        Gauge.builder("kwonka.outbox.pending", pending, AtomicLong::get)
+                .description("Notifications waiting to be delivered")
+                .register(registry);
+        Gauge.builder("kwonka.outbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest undelivered notification")
+                .baseUnit("seconds")
+                .register(registry);
+        this.sentCounter = Counter.builder("kwonka.outbox.sent").register(registry);
+        this.retriedCounter = Counter.builder("kwonka.outbox.retried").register(registry);
+        this.failedCounter = Counter.builder("kwonka.outbox.failed").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${kwonka.outbox.dispatcher.interval-ms:500}")
+    public void dispatch() {
+        try {
+            List<OutboxNotification> batch;
+            do {
+                LocalDateTime now = LocalDateTime.now();
+                batch = outboxNotificationRepository.claimDue(now, now.plus(LEASE), batchSize);
+                deliver(batch);
+            } while (batch.size() == batchSize);
+
+            updateLag();
+        } catch (RuntimeException e) {
+            log.error("Notification outbox dispatch failed", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${kwonka.outbox.cleanup.interval-ms:3600000}")
+    public void cleanup() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int deleted = outboxNotificationRepository.deleteFinishedBefore(now.minus(SENT_RETENTION), now.minus(FAILED_RETENTION));
+            if (deleted > 0) {
+                log.info("Removed {} finished notifications from the outbox", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.error("Notification outbox cleanup failed", e);
+        }
+    }
+
+    private void deliver(List<OutboxNotification> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // The whole batch goes into the Telegram send pipeline at once, it paces the calls itself
+        Map<OutboxNotification, CompletableFuture<?>> sends = new LinkedHashMap<>();
+        for (OutboxNotification notification : batch) {
+            sends.put(notification, send(notification));
+        }
+
+        List<Long> sent = new ArrayList<>();
+        for (Map.Entry<OutboxNotification, CompletableFuture<?>> entry : sends.entrySet()) {
+            String error = awaitResult(entry.getValue());
+            if (error == null) {
+                sent.add(entry.getKey().getId());
+            } else {
+                fail(entry.getKey(), error);
+            }
+        }
+
+        if (!sent.isEmpty()) {
+            outboxNotificationRepository.markSent(sent, LocalDateTime.now());
+            sentCounter.increment(sent.size());
+        }
+        log.debug("Outbox batch of {} delivered, {} failed", batch.size(), batch.size() - sent.size());
+    }
+
+    private CompletableFuture<?> send(OutboxNotification notification) {
+        switch (notification.getType()) {
+            case ORDER_READY:
+                return customerNotificationService.notifyOrderReady(notification.getChatId(), notification.getOrderNumber());
+            case ORDER_CANCELLED:
+                return customerNotificationService.notifyOrderCancelled(notification.getChatId(), notification.getOrderNumber());
+            default:
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Unsupported notification type " + notification.getType()));
+        }
+    }
+
+    /**
+     * @return null on success, otherwise a description of the failure
+     */
+    private String awaitResult(CompletableFuture<?> future) {
+        try {
+            future.get(SEND_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        } catch (TimeoutException e) {
+            return "Timed out waiting for Telegram";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted";
+        }
+    }
+
+    private void fail(OutboxNotification notification, String error) {
+        String lastError = error.length() > 500 ? error.substring(0, 500) : error;
+
+        // attempts was already incremented when the row was claimed
+        if (notification.getAttempts() >= maxAttempts) {
+            outboxNotificationRepository.markFailed(notification.getId(), LocalDateTime.now(), lastError);
+            failedCounter.increment();
+            log.error("Giving up on notification {} after {} attempts: {}", notification.getDedupKey(),
+                    notification.getAttempts(), lastError);
+            return;
+        }
+
+        Duration backoff = BASE_BACKOFF.multipliedBy(1L << Math.min(notification.getAttempts() - 1, 16));
+        if (backoff.compareTo(MAX_BACKOFF) > 0) {
+            backoff = MAX_BACKOFF;
+        }
+        outboxNotificationRepository.scheduleRetry(notification.getId(), LocalDateTime.now().plus(backoff), lastError);
+        retriedCounter.increment();
+        log.warn("Notification {} failed (attempt {}), retrying in {}s: {}", notification.getDedupKey(),
+                notification.getAttempts(), backoff.toSeconds(), lastError);
+    }
+
+    private void updateLag() {
+        pending.set(outboxNotificationRepository.countPending());
+        lagSeconds.set(outboxNotificationRepository.findOldestPendingCreatedAt()
+                .map(oldest -> Math.max(0, Duration.between(oldest, LocalDateTime.now()).toSeconds()))
+                .orElse(0L));
+    }
+}
@@ -0,0 +1,61 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.entity.OutboxNotification;
+import com.kwonka.common.repository.OutboxNotificationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * Queues customer notifications in the notification_outbox table in the same transaction
+ * as the order status change, NotificationOutboxDispatcher delivers them afterwards
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class NotificationOutboxWriter {
+
+    private final OutboxNotificationRepository outboxNotificationRepository;
+
+    /**
+     * Only fires for changes made inside a transaction, events replayed from other
+     * processes by OrderEventSubscriber were already queued where they happened
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onOrderStatusChange(BotCommunicationService.OrderStatusChangeEvent event) {
+        Order order = event.getOrder();
+        if (order.getStatus() == event.getPreviousStatus()) {
+            return;
+        }
+        if (order.getStatus() == Order.OrderStatus.READY) {
+            enqueue(order, OutboxNotification.Type.ORDER_READY, "order-ready:");
+        } else if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            enqueue(order, OutboxNotification.Type.ORDER_CANCELLED, "order-cancelled:");
+        }
+    }
+
+    private void enqueue(Order order, OutboxNotification.Type type, String dedupPrefix) {
+        if (order.getCustomerId() == null) {
+            log.error("Cannot notify customer: no customer ID found for order {}", order.getOrderNumber());
+            return;
+        }
+
+        int queued = outboxNotificationRepository.enqueue(
+                dedupPrefix + order.getOrderNumber(),
+                type.name(),
+                order.getCustomerId(),
+                order.getOrderNumber(),
+                LocalDateTime.now());
+
+        if (queued > 0) {
+            log.debug("Queued {} notification for order {}", type, order.getOrderNumber());
+        } else {
+            log.debug("{} notification for order {} is already queued", type, order.getOrderNumber());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.entity.OrderEvent;
+import com.kwonka.common.repository.OrderEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Writes every order status change to the order_events table in the same transaction
+ * as the change itself, so other bot processes receive it through OrderEventSubscriber
+ * if and only if the change was committed. Appends take no lock, the row records the
+ * writing transaction and readers order events by it.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class OrderEventJournal {
+
+    /**
+     * Identifies this process, used to skip events it has already delivered locally
+     */
+    public static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    private final OrderEventRepository orderEventRepository;
+
+    /**
+     * Only fires for events published inside a transaction, events replayed from
+     * the journal by OrderEventSubscriber are not written again
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void append(BotCommunicationService.OrderStatusChangeEvent event) {
+        Order order = event.getOrder();
+
+        orderEventRepository.save(OrderEvent.builder()
+                .orderId(order.getId())
+                .previousStatus(event.getPreviousStatus())
+                .status(order.getStatus())
+                .origin(INSTANCE_ID)
+                .build());
+
+        log.debug("Journaled order {} change {} -> {}", order.getOrderNumber(), event.getPreviousStatus(), order.getStatus());
+    }
+}
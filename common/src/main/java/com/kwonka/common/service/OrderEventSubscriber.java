@@ -0,0 +1,220 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.entity.OrderEvent;
+import com.kwonka.common.repository.EventCursor;
+import com.kwonka.common.repository.OrderEventRepository;
+import com.kwonka.common.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers order events written by other bot processes.
+ * A dedicated connection LISTENs on the order_events channel; every notification (or a
+ * periodic timeout, as a safety net) triggers a read of the journal past this consumer's
+ * cursor. Events are republished as local OrderStatusChangeEvents and the cursor is only
+ * advanced afterwards, so delivery is at-least-once across restarts. An event a listener fails
+ * on is logged and skipped rather than retried, so it cannot block the events behind it.
+ * <p>
+ * Appends to the journal take no lock. Events are read in the order of the transactions that
+ * wrote them, and only once no older transaction is still running, so an event committed late
+ * is never skipped. A long running write transaction anywhere in the database therefore delays
+ * delivery until it ends.
+ * <p>
+ * Every running instance keeps its own cursor, named consumer@instance: listeners such as barista
+ * subscriptions live in the memory of one process, so each replica has to see every event. The
+ * instance name has to stay the same across restarts of a replica and differ between replicas,
+ * e.g. the host name.
+ */
+@Service
+@Slf4j
+public class OrderEventSubscriber implements SmartLifecycle {
+
+    private static final String CHANNEL = "order_events";
+    private static final int NOTIFICATION_TIMEOUT_MS = 5000;
+    // Wait before reading again when notified events were held back by an older running transaction
+    private static final int HELD_BACK_RETRY_MS = 50;
+    private static final int HELD_BACK_RETRIES = 20;
+    private static final Duration RETENTION = Duration.ofDays(1);
+    private static final Duration CLEANUP_INTERVAL = Duration.ofHours(1);
+
+    private final DataSource dataSource;
+    private final OrderEventRepository orderEventRepository;
+    private final OrderRepository orderRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String consumer;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+    private long cursorTransaction;
+    private long cursor;
+    private LocalDateTime nextCleanup = LocalDateTime.now();
+
+    public OrderEventSubscriber(DataSource dataSource,
+                                OrderEventRepository orderEventRepository,
+                                OrderRepository orderRepository,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${kwonka.events.consumer}") String consumer,
+                                @Value("${kwonka.events.instance:default}") String instance) {
+        this.dataSource = dataSource;
+        this.orderEventRepository = orderEventRepository;
+        this.orderRepository = orderRepository;
+        this.eventPublisher = eventPublisher;
+        this.consumer = consumer + "@" + instance;
+    }
+
+    @Override
+    public void start() {
+        Optional<EventCursor> saved = orderEventRepository.findCursor(consumer);
+        if (saved.isPresent()) {
+            cursorTransaction = saved.get().getLastTransactionId();
+            cursor = saved.get().getLastEventId();
+        } else {
+            Optional<OrderEvent> latest = orderEventRepository.findTopByOrderByTransactionIdDescIdDesc();
+            cursorTransaction = latest.map(OrderEvent::getTransactionId).orElse(0L);
+            cursor = latest.map(OrderEvent::getId).orElse(0L);
+        }
+        log.info("Order event consumer '{}' starting after event {}", consumer, cursor);
+
+        running = true;
+        listenerThread = new Thread(this::listen, "order-event-subscriber");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+
+                // Catch up on anything committed while we were not listening
+                drain();
+
+                int retries = 0;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(
+                            retries > 0 ? HELD_BACK_RETRY_MS : NOTIFICATION_TIMEOUT_MS);
+                    boolean notified = notifications != null && notifications.length > 0;
+                    if (drain() > 0 || !(notified || retries > 0)) {
+                        retries = 0;
+                    } else {
+                        // Notified but nothing readable yet: the event waits for an older transaction to end,
+                        // after a while the periodic timeout takes over
+                        retries = (retries + 1) % HELD_BACK_RETRIES;
+                    }
+                    cleanupIfDue();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.error("Order event listener failed, reconnecting", e);
+                try {
+                    Thread.sleep(NOTIFICATION_TIMEOUT_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of events read
+     */
+    private int drain() {
+        int read = 0;
+        List<OrderEvent> events = orderEventRepository.findNextCommitted(cursorTransaction, cursor);
+        while (!events.isEmpty()) {
+            deliver(events);
+            OrderEvent last = events.get(events.size() - 1);
+            cursorTransaction = last.getTransactionId();
+            cursor = last.getId();
+            orderEventRepository.saveCursor(consumer, cursorTransaction, cursor);
+            read += events.size();
+            events = orderEventRepository.findNextCommitted(cursorTransaction, cursor);
+        }
+        return read;
+    }
+
+    private void deliver(List<OrderEvent> events) {
+        List<Long> orderIds = events.stream()
+                .filter(event -> !OrderEventJournal.INSTANCE_ID.equals(event.getOrigin()))
+                .map(OrderEvent::getOrderId)
+                .distinct()
+                .toList();
+        if (orderIds.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Order> orders = orderRepository.findAllById(orderIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+
+        for (OrderEvent event : events) {
+            Order current = orders.get(event.getOrderId());
+            if (current == null || OrderEventJournal.INSTANCE_ID.equals(event.getOrigin())) {
+                continue;
+            }
+            // The order may have moved on since; listeners see it as it was at the time of the event
+            Order snapshot = current.toBuilder().status(event.getStatus()).build();
+            try {
+                eventPublisher.publishEvent(new BotCommunicationService.OrderStatusChangeEvent(snapshot, event.getPreviousStatus()));
+            } catch (RuntimeException e) {
+                // Redelivering would fail the same way and hold back every later event, skip it
+                log.error("Listener failed on order event {} ({} {} -> {}), skipping it",
+                        event.getId(), current.getOrderNumber(), event.getPreviousStatus(), event.getStatus(), e);
+            }
+        }
+        log.debug("Delivered order events up to {}", events.get(events.size() - 1).getId());
+    }
+
+    private void cleanupIfDue() {
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(nextCleanup)) {
+            return;
+        }
+        nextCleanup = now.plus(CLEANUP_INTERVAL);
+        int deleted = orderEventRepository.deleteOlderThan(now.minus(RETENTION));
+        if (deleted > 0) {
+            log.info("Removed {} order events older than {}", deleted, RETENTION);
+        }
+        // Instances that stopped, the events they would resume from are gone anyway
+        int cursors = orderEventRepository.deleteCursorsOlderThan(now.minus(RETENTION));
+        if (cursors > 0) {
+            log.info("Removed {} order event cursors idle for {}", cursors, RETENTION);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.CoffeeShop;
+import com.kwonka.common.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out unique order numbers without scanning the orders table.
+ * In the default mode numbers come from the order_number_seq sequence, which is
+ * advanced by BLOCK_SIZE per call, so only one database round trip is needed
+ * per hundred orders. The fast path is a single atomic increment.
+ */
+@Service
+@Slf4j
+public class OrderNumberAllocator {
+
+    /**
+     * Must match the INCREMENT BY of order_number_seq
+     */
+    static final int BLOCK_SIZE = 100;
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyMMdd");
+
+    public enum Mode {
+        /**
+         * One global sequence of numbers: 1, 2, 3...
+         */
+        SEQUENCE,
+        /**
+         * Numbers restart every day per coffee shop: BIGROUP-250301-1, BIGROUP-250301-2...
+         */
+        SHOP_DAILY
+    }
+
+    private final OrderRepository orderRepository;
+    private final Mode mode;
+    private final AtomicReference<Block> currentBlock = new AtomicReference<>(Block.EMPTY);
+
+    public OrderNumberAllocator(OrderRepository orderRepository,
+                                @Value("${kwonka.order-number.mode:SEQUENCE}") Mode mode) {
+        this.orderRepository = orderRepository;
+        this.mode = mode;
+    }
+
+    /**
+     * Allocates the next order number for an order placed in the given coffee shop
+     */
+    public String nextOrderNumber(CoffeeShop coffeeShop) {
+        if (mode == Mode.SHOP_DAILY) {
+            LocalDate today = LocalDate.now();
+            Integer value = orderRepository.nextShopDailyOrderNumber(coffeeShop.getId(), today);
+            return coffeeShop.getCode() + "-" + today.format(DAY_FORMAT) + "-" + value;
+        }
+        return String.valueOf(nextSequenceValue());
+    }
+
+    private long nextSequenceValue() {
+        while (true) {
+            Block block = currentBlock.get();
+            long value = block.next.getAndIncrement();
+            if (value < block.end) {
+                return value;
+            }
+            refill(block);
+        }
+    }
+
+    /**
+     * Only the thread that finds the block exhausted goes to the database; the others
+     * wait here and then retry on the fresh block
+     */
+    private synchronized void refill(Block exhausted) {
+        if (currentBlock.get() != exhausted) {
+            return;
+        }
+        long start = orderRepository.nextOrderNumberBlock();
+        currentBlock.set(new Block(start, start + BLOCK_SIZE));
+        log.debug("Reserved order numbers {}..{}", start, start + BLOCK_SIZE - 1);
+    }
+
+    private static final class Block {
+        static final Block EMPTY = new Block(0, 0);
+
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
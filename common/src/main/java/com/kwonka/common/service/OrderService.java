@@ -2,29 +2,43 @@ package com.kwonka.common.service;
 
 import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.ActiveOrderView;
 import com.kwonka.common.repository.OrderRepository;
+import com.kwonka.common.repository.ShopStatusCount;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
+@Timed("kwonka.service")
 public class OrderService {
 
     private final OrderRepository orderRepository;
+    private final OrderNumberAllocator orderNumberAllocator;
+    private final DailyStatsRollupService dailyStatsRollupService;
+    private final StageTimingService stageTimingService;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Creates a new order with PENDING status
+     * Subscribers are notified through OrderStatusChangeEvent once the transaction commits
      */
     @Transactional
     public Order createOrder(Long customerId, CoffeeShop coffeeShop, String coffeeType, String size,
                              String milkType, String syrupType, BigDecimal totalPrice) {
 
-        String orderNumber = generateOrderNumber();
+        String orderNumber = orderNumberAllocator.nextOrderNumber(coffeeShop);
 
         Order order = Order.builder()
                 .orderNumber(orderNumber)
@@ -38,32 +52,84 @@ public class OrderService {
                 .status(Order.OrderStatus.PENDING)
                 .build();
 
-        return orderRepository.save(order);
+        Order saved = orderRepository.save(order);
+        eventPublisher.publishEvent(new BotCommunicationService.OrderStatusChangeEvent(saved));
+        return saved;
     }
 
     /**
-     * Generates a sequential order number
+     * Moves an order from one status to another in a single conditional update, so of several
+     * callers racing on the same order (two baristas taking it) exactly one wins.
+     * Subscribers are notified through OrderStatusChangeEvent once the transaction commits
+     *
+     * @param orderNumber Number of the order
+     * @param from        Status the caller saw the order in
+     * @param to          New status, must be allowed from {@code from}
+     * @return true if this call moved the order, false if it is missing or no longer in {@code from}
+     * @throws IllegalArgumentException if the transition is not allowed
      */
-    private String generateOrderNumber() {
-        Integer maxOrderNumber = orderRepository.findMaxOrderNumber();
-        if (maxOrderNumber == null) {
-            return "1";
+    @Transactional
+    public boolean transition(String orderNumber, Order.OrderStatus from, Order.OrderStatus to) {
+        if (!from.canTransitionTo(to)) {
+            throw new IllegalArgumentException("Order status cannot change from " + from + " to " + to);
+        }
+        if (orderRepository.transition(orderNumber, from.name(), to.name(), LocalDateTime.now()) == 0) {
+            return false;
         }
-        return String.valueOf(maxOrderNumber + 1);
+
+        // Only the winner reads the order back, for the rollups and subscribers
+        afterTransition(reload(orderNumber), from);
+        return true;
     }
 
     /**
-     * Updates the order status
+     * Takes a pending order into preparation for a barista; of several baristas taking the same
+     * order exactly one wins
+     *
+     * @return true if this barista took the order, false if it is missing or no longer pending
      */
     @Transactional
-    public Order updateOrderStatus(String orderNumber, Order.OrderStatus newStatus) {
-        Optional<Order> orderOpt = orderRepository.findByOrderNumber(orderNumber);
-        if (orderOpt.isPresent()) {
-            Order order = orderOpt.get();
-            order.setStatus(newStatus);
-            return orderRepository.save(order);
+    public boolean takeOrder(String orderNumber, Long baristaChatId) {
+        if (orderRepository.take(orderNumber, baristaChatId, LocalDateTime.now()) == 0) {
+            return false;
         }
-        throw new RuntimeException("Order not found: " + orderNumber);
+        afterTransition(reload(orderNumber), Order.OrderStatus.PENDING);
+        return true;
+    }
+
+    /**
+     * Takes up to limit of the oldest pending orders of a coffee shop into preparation for a
+     * barista, in one statement and one transaction
+     *
+     * @return Orders taken, oldest first, empty if there were none left
+     */
+    @Transactional
+    public List<Order> takeNextOrders(CoffeeShop coffeeShop, Long baristaChatId, int limit) {
+        List<Long> ids = orderRepository.takeOldestPending(coffeeShop.getId(), baristaChatId, limit, LocalDateTime.now());
+        return afterBulkTransition(ids, Order.OrderStatus.PENDING);
+    }
+
+    /**
+     * Marks every order the barista has in preparation as ready, in one statement and one transaction
+     *
+     * @return Orders marked ready, oldest first
+     */
+    @Transactional
+    public List<Order> markAllReady(Long baristaChatId) {
+        List<Long> ids = orderRepository.markReadyByBarista(baristaChatId, LocalDateTime.now());
+        return afterBulkTransition(ids, Order.OrderStatus.IN_PREPARATION);
+    }
+
+    /**
+     * Cancels the orders of a coffee shop still pending since before the given time, in one
+     * statement and one transaction
+     *
+     * @return Orders cancelled, oldest first
+     */
+    @Transactional
+    public List<Order> cancelStalePendingOrders(CoffeeShop coffeeShop, LocalDateTime createdBefore) {
+        List<Long> ids = orderRepository.cancelPendingCreatedBefore(coffeeShop.getId(), createdBefore, LocalDateTime.now());
+        return afterBulkTransition(ids, Order.OrderStatus.PENDING);
     }
 
     /**
@@ -87,6 +153,21 @@ public class OrderService {
         return orderRepository.findByStatus(status);
     }
 
+    /**
+     * Gets a page of the pending orders board across all coffee shops, newest first
+     *
+     * @param afterCreatedAt Creation time of the last row of the previous page, null for the first page
+     * @param afterId        ID of the last row of the previous page
+     * @param limit          Maximum number of rows
+     */
+    public List<ActiveOrderView> getPendingBoard(LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        PageRequest page = PageRequest.ofSize(limit);
+        if (afterCreatedAt == null) {
+            return orderRepository.findPendingBoard(page);
+        }
+        return orderRepository.findPendingBoardAfter(afterCreatedAt, afterId, page);
+    }
+
     /**
      * Gets all orders for a specific coffee shop with a specific status
      */
@@ -100,4 +181,38 @@ public class OrderService {
     public List<Order> getOrdersByCustomerIdAndStatus(Long customerId, Order.OrderStatus status) {
         return orderRepository.findByCustomerIdAndStatus(customerId, status);
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the orders waiting or being prepared per coffee shop and status
+     */
+    public List<ShopStatusCount> countActiveOrdersByShop() {
+        return orderRepository.countActiveByShopAndStatus();
+    }
+
+    private Order reload(String orderNumber) {
+        return orderRepository.findByOrderNumber(orderNumber)
+                .orElseThrow(() -> new IllegalStateException("Order disappeared after transition: " + orderNumber));
+    }
+
+    /**
+     * Reads the orders of a bulk transition back in one query and publishes their changes. All
+     * events commit together, so other processes pick the whole batch up in one journal poll.
+     */
+    private List<Order> afterBulkTransition(List<Long> ids, Order.OrderStatus from) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Order> orders = new ArrayList<>(orderRepository.findAllById(ids));
+        orders.sort(Comparator.comparing(Order::getCreatedAt).thenComparing(Order::getId));
+        orders.forEach(order -> afterTransition(order, from));
+        return orders;
+    }
+
+    private void afterTransition(Order order, Order.OrderStatus from) {
+        if (order.getStatus() == Order.OrderStatus.COMPLETED) {
+            dailyStatsRollupService.recordCompleted(order);
+        }
+        stageTimingService.record(order, from);
+        eventPublisher.publishEvent(new BotCommunicationService.OrderStatusChangeEvent(order, from));
+    }
+}
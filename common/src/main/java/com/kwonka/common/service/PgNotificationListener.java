@@ -0,0 +1,125 @@
+package com.kwonka.common.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers Postgres NOTIFY signals of rarely changing data (catalogs, configuration) to the beans
+ * caching it. Beans register a channel before the context starts; a single connection LISTENs on
+ * all of them. Handlers are also called after every (re)connect, since notifications sent while
+ * the connection was down are lost.
+ */
+@Service
+@Slf4j
+public class PgNotificationListener implements SmartLifecycle {
+
+    private static final int NOTIFICATION_TIMEOUT_MS = 5000;
+
+    private final DataSource dataSource;
+    private final Map<String, List<Runnable>> handlers = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PgNotificationListener(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Calls the handler whenever something is notified on the channel
+     *
+     * @param channel Channel name, must be a plain SQL identifier
+     */
+    public void register(String channel, Runnable handler) {
+        handlers.computeIfAbsent(channel, name -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (handlers.isEmpty()) {
+            return;
+        }
+        listenerThread = new Thread(this::listen, "pg-notification-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    for (String channel : handlers.keySet()) {
+                        statement.execute("LISTEN " + channel);
+                    }
+                }
+                log.info("Listening for changes on {}", handlers.keySet());
+
+                if (reconnect) {
+                    handlers.keySet().forEach(this::fire);
+                }
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(NOTIFICATION_TIMEOUT_MS);
+                    if (notifications != null) {
+                        // Several notifications of one channel in a batch need only one reload
+                        Arrays.stream(notifications)
+                                .map(PGNotification::getName)
+                                .distinct()
+                                .forEach(this::fire);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.error("Change listener failed, reconnecting", e);
+                reconnect = true;
+                try {
+                    Thread.sleep(NOTIFICATION_TIMEOUT_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void fire(String channel) {
+        for (Runnable handler : handlers.getOrDefault(channel, List.of())) {
+            try {
+                handler.run();
+            } catch (RuntimeException e) {
+                log.error("Change handler for {} failed", channel, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.Order;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+
+/**
+ * Keeps percentiles of how long orders spend in each stage, per day and coffee shop.
+ * <p>
+ * Durations are recorded into an in-memory HdrHistogram of this process when a status change
+ * commits, and a background thread merges what was recorded since the last flush into the
+ * order_stage_histograms row of the day, shop and stage. Reports merge a handful of rows and
+ * never scan orders. A crash loses at most one flush interval of durations.
+ */
+@Service
+@Slf4j
+public class StageTimingService implements SmartLifecycle {
+
+    /**
+     * Longest duration told apart, anything longer is recorded as this
+     */
+    private static final long MAX_DURATION_MS = Duration.ofDays(1).toMillis();
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /**
+     * Stages of an order, each ended by a status change
+     */
+    public enum Stage {
+        QUEUE("Ожидание баристы", Order.OrderStatus.IN_PREPARATION, Order::getCreatedAt, Order::getTakenAt),
+        PREPARATION("Приготовление", Order.OrderStatus.READY, Order::getTakenAt, Order::getReadyAt),
+        PICKUP("Выдача", Order.OrderStatus.COMPLETED, Order::getReadyAt, Order::getCompletedAt);
+
+        private final String label;
+        private final Order.OrderStatus endStatus;
+        private final Function<Order, LocalDateTime> start;
+        private final Function<Order, LocalDateTime> end;
+
+        Stage(String label, Order.OrderStatus endStatus,
+              Function<Order, LocalDateTime> start, Function<Order, LocalDateTime> end) {
+            this.label = label;
+            this.endStatus = endStatus;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private record Key(LocalDate date, Long coffeeShopId, Stage stage) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration flushInterval;
+    private final Map<Key, Recorder> recorders = new ConcurrentHashMap<>();
+    /**
+     * Intervals taken from the recorders whose flush failed, merged again on the next one
+     */
+    private final Map<Key, Histogram> unflushed = new HashMap<>();
+
+    private volatile boolean running;
+    private ScheduledExecutorService flusher;
+
+    public StageTimingService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              @Value("${kwonka.stats.stage-flush-interval:30s}") Duration flushInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Records the stage the order just finished, once the caller's transaction commits
+     *
+     * @param order          The order after the status change, with its lifecycle timestamps set
+     * @param previousStatus Status before the change
+     */
+    public void record(Order order, Order.OrderStatus previousStatus) {
+        if (order.getStatus() == previousStatus) {
+            return;
+        }
+        for (Stage stage : Stage.values()) {
+            if (stage.endStatus != order.getStatus()) {
+                continue;
+            }
+            LocalDateTime start = stage.start.apply(order);
+            LocalDateTime end = stage.end.apply(order);
+            if (start == null || end == null) {
+                // Order placed before the lifecycle columns existed or a stage was skipped
+                return;
+            }
+            Key key = new Key(order.getCreatedAt().toLocalDate(), order.getCoffeeShop().getId(), stage);
+            long millis = Math.max(0, Math.min(Duration.between(start, end).toMillis(), MAX_DURATION_MS));
+            afterCommit(() -> recorders.computeIfAbsent(key, k -> newRecorder()).recordValue(millis));
+            return;
+        }
+    }
+
+    /**
+     * Gets the stage durations of each coffee shop over a range of days, in milliseconds.
+     * Durations recorded in the last flush interval may be missing.
+     *
+     * @param from First day
+     * @param to   Last day (inclusive)
+     * @return Histograms by coffee shop ID and stage, shops and stages without orders left out
+     */
+    public Map<Long, Map<Stage, Histogram>> getHistograms(LocalDate from, LocalDate to) {
+        Map<Long, Map<Stage, Histogram>> histograms = new HashMap<>();
+        jdbcTemplate.query("SELECT coffee_shop_id, stage, histogram FROM order_stage_histograms " +
+                        "WHERE stat_date BETWEEN ? AND ?",
+                rs -> {
+                    Stage stage;
+                    try {
+                        stage = Stage.valueOf(rs.getString("stage"));
+                    } catch (IllegalArgumentException e) {
+                        return;
+                    }
+                    byte[] bytes = rs.getBytes("histogram");
+                    if (bytes.length == 0) {
+                        return;
+                    }
+                    Histogram histogram = decode(bytes);
+                    histograms.computeIfAbsent(rs.getLong("coffee_shop_id"), id -> new EnumMap<>(Stage.class))
+                            .merge(stage, histogram, (merged, next) -> {
+                                merged.add(next);
+                                return merged;
+                            });
+                },
+                Date.valueOf(from), Date.valueOf(to));
+        return histograms;
+    }
+
+    /**
+     * Merges the durations recorded since the last flush into the table
+     */
+    public synchronized void flush() {
+        LocalDate oldestActive = LocalDate.now().minusDays(1);
+        for (Map.Entry<Key, Recorder> entry : recorders.entrySet()) {
+            Histogram interval = entry.getValue().getIntervalHistogram();
+            if (interval.getTotalCount() > 0) {
+                unflushed.merge(entry.getKey(), interval, (merged, next) -> {
+                    merged.add(next);
+                    return merged;
+                });
+            } else if (entry.getKey().date().isBefore(oldestActive)) {
+                // Orders of older days rarely finish a stage, a late one gets a new recorder
+                recorders.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        List<Key> flushed = new ArrayList<>();
+        for (Map.Entry<Key, Histogram> entry : unflushed.entrySet()) {
+            try {
+                merge(entry.getKey(), entry.getValue());
+                flushed.add(entry.getKey());
+            } catch (RuntimeException e) {
+                log.error("Failed to flush stage timings of {}, will retry", entry.getKey(), e);
+            }
+        }
+        flushed.forEach(unflushed::remove);
+        if (!flushed.isEmpty()) {
+            log.debug("Flushed {} stage timing histograms", flushed.size());
+        }
+    }
+
+    @Override
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stage-timing-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void merge(Key key, Histogram interval) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO order_stage_histograms (stat_date, coffee_shop_id, stage, histogram) " +
+                            "VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING",
+                    Date.valueOf(key.date()), key.coffeeShopId(), key.stage().name(), new byte[0]);
+            // Row lock, other processes merge into the same row
+            byte[] stored = jdbcTemplate.queryForObject("SELECT histogram FROM order_stage_histograms " +
+                            "WHERE stat_date = ? AND coffee_shop_id = ? AND stage = ? FOR UPDATE",
+                    byte[].class, Date.valueOf(key.date()), key.coffeeShopId(), key.stage().name());
+
+            Histogram merged = stored == null || stored.length == 0 ? newHistogram() : decode(stored);
+            merged.add(interval);
+            jdbcTemplate.update("UPDATE order_stage_histograms SET histogram = ? " +
+                            "WHERE stat_date = ? AND coffee_shop_id = ? AND stage = ?",
+                    encode(merged), Date.valueOf(key.date()), key.coffeeShopId(), key.stage().name());
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush stage timings", e);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static Recorder newRecorder() {
+        return new Recorder(MAX_DURATION_MS, SIGNIFICANT_DIGITS);
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(MAX_DURATION_MS, SIGNIFICANT_DIGITS);
+    }
+
+    private static byte[] encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Histogram decode(byte[] bytes) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), MAX_DURATION_MS);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt stage timing histogram", e);
+        }
+    }
+}
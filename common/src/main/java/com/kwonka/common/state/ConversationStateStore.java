@@ -0,0 +1,25 @@
+package com.kwonka.common.state;
+
+/**
+ * Per-chat conversation state of a bot.
+ * Bots handle the updates of one chat sequentially (see UpdateDispatcher), so a get followed
+ * by a put for the same chat needs no further coordination.
+ *
+ * @param <S> Immutable state of one chat
+ */
+public interface ConversationStateStore<S> {
+
+    /**
+     * @return state of the chat, or null if there is none or it has expired
+     */
+    S get(long chatId);
+
+    void put(long chatId, S state);
+
+    void remove(long chatId);
+
+    /**
+     * @return number of chats currently held
+     */
+    int size();
+}
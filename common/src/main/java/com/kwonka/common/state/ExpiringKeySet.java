@@ -0,0 +1,76 @@
+package com.kwonka.common.state;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Concurrent set whose keys disappear a fixed time after they were added, for deduplicating
+ * notifications. All keys live equally long, so a FIFO of additions is also ordered by expiry:
+ * expired keys are dropped from its head whenever the set is used, touching only those keys.
+ */
+public class ExpiringKeySet<K> {
+
+    private final long ttlNanos;
+    private final Map<K, Long> expiresAt = new ConcurrentHashMap<>();
+    private final Queue<Expiry<K>> expiries = new ConcurrentLinkedQueue<>();
+
+    public ExpiringKeySet(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Adds the key unless it is already present
+     *
+     * @return true if the key was added, false if it was present and not expired yet
+     */
+    public boolean add(K key) {
+        long now = System.nanoTime();
+        purge(now);
+        Long deadline = now + ttlNanos;
+        boolean[] added = new boolean[1];
+        expiresAt.compute(key, (k, current) -> {
+            if (current != null && current - now > 0) {
+                return current;
+            }
+            added[0] = true;
+            return deadline;
+        });
+        if (added[0]) {
+            expiries.add(new Expiry<>(key, deadline));
+        }
+        return added[0];
+    }
+
+    public boolean contains(K key) {
+        long now = System.nanoTime();
+        purge(now);
+        Long deadline = expiresAt.get(key);
+        return deadline != null && deadline - now > 0;
+    }
+
+    public void remove(K key) {
+        // Its queue entry stays until it expires and then finds nothing to remove
+        expiresAt.remove(key);
+    }
+
+    public int size() {
+        purge(System.nanoTime());
+        return expiresAt.size();
+    }
+
+    private void purge(long now) {
+        Expiry<K> head;
+        while ((head = expiries.peek()) != null && head.deadline - now <= 0) {
+            if (expiries.remove(head)) {
+                // A key added again since has a later deadline and stays
+                expiresAt.remove(head.key, head.deadline);
+            }
+        }
+    }
+
+    private record Expiry<K>(K key, Long deadline) {
+    }
+}
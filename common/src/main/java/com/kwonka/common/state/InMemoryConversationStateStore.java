@@ -0,0 +1,151 @@
+package com.kwonka.common.state;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heap backed state store, split into lock striped segments.
+ * Each segment is an access ordered LinkedHashMap, so its head is always the least recently used
+ * chat: idle entries are expired from the head on every write and a full segment drops its head.
+ * The capacity is therefore an approximate LRU bound over the whole store.
+ */
+public class InMemoryConversationStateStore<S> implements ConversationStateStore<S> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<S>[] segments;
+    private final long idleTtlNanos;
+    private final boolean expireAfterWrite;
+
+    /**
+     * @param maxEntries Upper bound of chats kept, least recently used ones are dropped beyond it
+     * @param idleTtl    Chats not touched for this long are forgotten
+     */
+    public InMemoryConversationStateStore(int maxEntries, Duration idleTtl) {
+        this(maxEntries, idleTtl, false);
+    }
+
+    /**
+     * @param expireAfterWrite Count the ttl from the last put instead of the last access,
+     *                         for use as a cache in front of a shared store. Segments are then
+     *                         ordered by last write, so a full one drops its oldest write.
+     */
+    @SuppressWarnings("unchecked")
+    InMemoryConversationStateStore(int maxEntries, Duration idleTtl, boolean expireAfterWrite) {
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.expireAfterWrite = expireAfterWrite;
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(segmentCapacity, !expireAfterWrite);
+        }
+    }
+
+    @Override
+    public S get(long chatId) {
+        Segment<S> segment = segmentFor(chatId);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            Entry<S> entry = segment.entries.get(chatId);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.touchedAt > idleTtlNanos) {
+                segment.entries.remove(chatId);
+                return null;
+            }
+            if (!expireAfterWrite) {
+                entry.touchedAt = now;
+            }
+            return entry.state;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(long chatId, S state) {
+        Segment<S> segment = segmentFor(chatId);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            if (expireAfterWrite) {
+                // Insertion order only moves a chat to the tail when it is added anew
+                segment.entries.remove(chatId);
+            }
+            segment.entries.put(chatId, new Entry<>(state, now));
+            segment.expire(now, idleTtlNanos);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(long chatId) {
+        Segment<S> segment = segmentFor(chatId);
+        segment.lock.lock();
+        try {
+            segment.entries.remove(chatId);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<S> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment<S> segmentFor(long chatId) {
+        int hash = Long.hashCode(chatId);
+        hash ^= hash >>> 16;
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry<S> {
+        private final S state;
+        private long touchedAt;
+
+        private Entry(S state, long touchedAt) {
+            this.state = state;
+            this.touchedAt = touchedAt;
+        }
+    }
+
+    private static final class Segment<S> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Long, Entry<S>> entries;
+
+        /**
+         * @param accessOrder Order by last access, else by last write as the expire after write ttl needs
+         */
+        private Segment(int capacity, boolean accessOrder) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, accessOrder) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry<S>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private void expire(long now, long idleTtlNanos) {
+            Iterator<Entry<S>> it = entries.values().iterator();
+            while (it.hasNext() && now - it.next().touchedAt > idleTtlNanos) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.kwonka.common.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State store backed by the conversation_state table, so chats survive restarts.
+ * <p>
+ * Not shared (one replica per bot, or updates routed to replicas by chat): reads go through a short
+ * lived near cache and fall back to the table. Writes land in the near cache and a pending map at
+ * once and are flushed to the table in batches by a background thread, later writes of a chat
+ * replacing earlier unflushed ones. A crash loses at most one flush interval of changes. Another
+ * process serving the same chat would act on stale state and overwrite newer rows, so this mode
+ * must not be used when any replica can take any update.
+ * <p>
+ * Shared: every get reads the table and every put writes it before returning, with a
+ * compare-and-set on the row version read by the last get of the chat. If another replica wrote
+ * the chat in between, its state wins and the put is dropped with a warning instead of overwriting it.
+ */
+@Slf4j
+public class JdbcConversationStateStore<S> implements ConversationStateStore<S>, AutoCloseable {
+
+    private static final Object REMOVED = new Object();
+    private static final Duration CLEANUP_INTERVAL = Duration.ofHours(1);
+    private static final Long NO_ROW = 0L;
+
+    private record Row<S>(S state, long version) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String bot;
+    private final Class<S> type;
+    private final Duration idleTtl;
+    private final boolean shared;
+    private final InMemoryConversationStateStore<S> nearCache;
+    private final Map<Long, Object> pending = new ConcurrentHashMap<>();
+    /**
+     * Shared mode only: row version seen by the last get of a chat, NO_ROW if it had none
+     */
+    private final InMemoryConversationStateStore<Long> readVersions;
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param bot           Key of the bot in the table
+     * @param type          State class, must be serializable with Jackson
+     * @param maxEntries    Capacity of the near cache
+     * @param nearCacheTtl  How long a chat is served from the near cache without reading the table
+     * @param idleTtl       Chats not written for this long are treated as gone and removed
+     * @param flushInterval How often pending writes are flushed
+     * @param shared        Whether other processes serve the same chats, disables caching and write-behind
+     */
+    public JdbcConversationStateStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                      String bot, Class<S> type, int maxEntries,
+                                      Duration nearCacheTtl, Duration idleTtl, Duration flushInterval,
+                                      boolean shared) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.bot = bot;
+        this.type = type;
+        this.idleTtl = idleTtl;
+        this.shared = shared;
+        this.nearCache = new InMemoryConversationStateStore<>(maxEntries, nearCacheTtl, true);
+        this.readVersions = new InMemoryConversationStateStore<>(maxEntries, idleTtl);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-state-" + bot);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!shared) {
+            long intervalMs = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        flusher.scheduleWithFixedDelay(this::removeExpired, 0, CLEANUP_INTERVAL.toMinutes(), TimeUnit.MINUTES);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public S get(long chatId) {
+        if (shared) {
+            Row<S> row = load(chatId);
+            readVersions.put(chatId, row != null ? row.version() : NO_ROW);
+            return row != null ? row.state() : null;
+        }
+
+        Object unflushed = pending.get(chatId);
+        if (unflushed != null) {
+            return unflushed == REMOVED ? null : (S) unflushed;
+        }
+
+        S cached = nearCache.get(chatId);
+        if (cached != null) {
+            return cached;
+        }
+
+        Row<S> loaded = load(chatId);
+        if (loaded == null || loaded.state() == null) {
+            return null;
+        }
+        nearCache.put(chatId, loaded.state());
+        return loaded.state();
+    }
+
+    @Override
+    public void put(long chatId, S state) {
+        if (shared) {
+            writeThrough(chatId, state);
+            return;
+        }
+        nearCache.put(chatId, state);
+        pending.put(chatId, state);
+    }
+
+    @Override
+    public void remove(long chatId) {
+        if (shared) {
+            jdbcTemplate.update("DELETE FROM conversation_state WHERE bot = ? AND chat_id = ?", bot, chatId);
+            readVersions.put(chatId, NO_ROW);
+            return;
+        }
+        nearCache.remove(chatId);
+        pending.put(chatId, REMOVED);
+    }
+
+    /**
+     * @return chats in the near cache, or read recently when shared; the table may hold more
+     */
+    @Override
+    public int size() {
+        return shared ? readVersions.size() : nearCache.size();
+    }
+
+    /**
+     * Writes all pending changes to the table
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Long, Object>> batch = new ArrayList<>(pending.entrySet());
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<Long, Object> entry : batch) {
+            if (entry.getValue() == REMOVED) {
+                deletes.add(new Object[]{bot, entry.getKey()});
+            } else {
+                upserts.add(new Object[]{bot, entry.getKey(), serialize(entry.getValue()), now});
+            }
+        }
+
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO conversation_state (bot, chat_id, state, updated_at) " +
+                    "VALUES (?, ?, ?::jsonb, ?) " +
+                    "ON CONFLICT (bot, chat_id) DO UPDATE SET state = EXCLUDED.state, updated_at = EXCLUDED.updated_at, " +
+                    "version = conversation_state.version + 1", upserts);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM conversation_state WHERE bot = ? AND chat_id = ?", deletes);
+        }
+
+        // Only drop what was written, a chat changed during the flush stays pending
+        for (Map.Entry<Long, Object> entry : batch) {
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+        log.debug("Flushed {} conversation state changes of {}", batch.size(), bot);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush conversation state of {} on shutdown, {} changes lost", bot, pending.size(), e);
+        }
+    }
+
+    /**
+     * Writes the state if the row is still at the version the last get saw
+     */
+    private void writeThrough(long chatId, S state) {
+        Long expected = readVersions.get(chatId);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> written;
+        if (expected == null) {
+            // Not read recently, nothing to compare with
+            written = jdbcTemplate.queryForList("INSERT INTO conversation_state (bot, chat_id, state, updated_at) " +
+                            "VALUES (?, ?, ?::jsonb, ?) " +
+                            "ON CONFLICT (bot, chat_id) DO UPDATE SET state = EXCLUDED.state, updated_at = EXCLUDED.updated_at, " +
+                            "version = conversation_state.version + 1 RETURNING version",
+                    Long.class, bot, chatId, serialize(state), now);
+        } else if (expected.equals(NO_ROW)) {
+            written = jdbcTemplate.queryForList("INSERT INTO conversation_state (bot, chat_id, state, updated_at) " +
+                            "VALUES (?, ?, ?::jsonb, ?) ON CONFLICT (bot, chat_id) DO NOTHING RETURNING version",
+                    Long.class, bot, chatId, serialize(state), now);
+        } else {
+            written = jdbcTemplate.queryForList("UPDATE conversation_state SET state = ?::jsonb, updated_at = ?, " +
+                            "version = version + 1 WHERE bot = ? AND chat_id = ? AND version = ? RETURNING version",
+                    Long.class, serialize(state), now, bot, chatId, expected);
+        }
+
+        if (written.isEmpty()) {
+            log.warn("Conversation state of {} chat {} was changed by another replica, dropping this change", bot, chatId);
+            readVersions.remove(chatId);
+            return;
+        }
+        readVersions.put(chatId, written.get(0));
+    }
+
+    /**
+     * @return the chat's row, with a null state if it is idle or unreadable, or null if there is none
+     */
+    private Row<S> load(long chatId) {
+        List<Row<S>> rows = jdbcTemplate.query(
+                "SELECT state::text AS state, version, updated_at > ? AS active FROM conversation_state " +
+                        "WHERE bot = ? AND chat_id = ?",
+                (rs, rowNum) -> new Row<>(rs.getBoolean("active") ? parse(chatId, rs.getString("state")) : null,
+                        rs.getLong("version")),
+                Timestamp.valueOf(LocalDateTime.now().minus(idleTtl)), bot, chatId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private S parse(long chatId, String json) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            // Most likely written by an older version of the state class, start the chat over
+            log.warn("Discarding unreadable conversation state of {} chat {}", bot, chatId, e);
+            return null;
+        }
+    }
+
+    private String serialize(Object state) {
+        try {
+            return objectMapper.writeValueAsString(state);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize conversation state " + state, e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush conversation state of {}, will retry", bot, e);
+        }
+    }
+
+    private void removeExpired() {
+        try {
+            int deleted = jdbcTemplate.update("DELETE FROM conversation_state WHERE bot = ? AND updated_at < ?",
+                    bot, Timestamp.valueOf(LocalDateTime.now().minus(idleTtl)));
+            if (deleted > 0) {
+                log.info("Removed {} idle conversation states of {}", deleted, bot);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to remove idle conversation states of {}", bot, e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.kwonka.common.telegram;
+
+/**
+ * Actions of inline buttons and their callback data encoding.
+ * <p>
+ * Callback data is the action's one character code followed by its arguments, all separated by
+ * ':', e.g. {@code t:1042}. It keeps well under Telegram's 64 byte limit and is recognized by
+ * looking at two characters. Buttons sent before the compact encoding carry the long prefix
+ * ({@code take_order:1042}) and are still understood. Arguments are read in place with
+ * {@link #arg}, {@link #longArg} and {@link #rest}, without splitting the data.
+ */
+public enum CallbackAction {
+    TAKE_ORDER('t', "take_order"),
+    READY_ORDER('r', "ready_order"),
+    VIEW_ORDER('v', "view_order"),
+    NOTIFY_BARISTA('n', "notify_barista"),
+    ORDERS_MORE('m', "orders_more"),
+    CANCEL_STALE('x', "cancel_stale");
+
+    private static final char SEPARATOR = ':';
+    private static final CallbackAction[] VALUES = values();
+    private static final CallbackAction[] BY_CODE = new CallbackAction[128];
+
+    static {
+        for (CallbackAction action : VALUES) {
+            if (BY_CODE[action.code] != null) {
+                throw new IllegalStateException("Duplicate callback code " + action.code);
+            }
+            BY_CODE[action.code] = action;
+        }
+    }
+
+    private final char code;
+    private final String legacyPrefix;
+
+    CallbackAction(char code, String legacyPrefix) {
+        this.code = code;
+        this.legacyPrefix = legacyPrefix;
+    }
+
+    /**
+     * @param args Arguments, must not contain ':' except for the last one
+     * @return callback data for a button of this action
+     */
+    public String encode(Object... args) {
+        StringBuilder data = new StringBuilder(16).append(code);
+        for (Object arg : args) {
+            data.append(SEPARATOR).append(arg);
+        }
+        return data.toString();
+    }
+
+    /**
+     * @return the action of the callback data, or null if it is not one of ours
+     */
+    public static CallbackAction of(String data) {
+        if (data.length() >= 2 && data.charAt(1) == SEPARATOR) {
+            char code = data.charAt(0);
+            return code < BY_CODE.length ? BY_CODE[code] : null;
+        }
+        for (CallbackAction action : VALUES) {
+            if (data.length() > action.legacyPrefix.length()
+                    && data.charAt(action.legacyPrefix.length()) == SEPARATOR
+                    && data.startsWith(action.legacyPrefix)) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return index of the first argument in callback data of this action
+     */
+    public int argsStart(String data) {
+        return data.charAt(1) == SEPARATOR ? 2 : legacyPrefix.length() + 1;
+    }
+
+    /**
+     * @param argsStart Index of the first argument, as passed to the handler
+     * @param index     Zero based argument number
+     * @return the argument
+     * @throws IllegalArgumentException if there are not that many arguments
+     */
+    public static String arg(String data, int argsStart, int index) {
+        int begin = argBegin(data, argsStart, index);
+        int end = data.indexOf(SEPARATOR, begin);
+        return data.substring(begin, end < 0 ? data.length() : end);
+    }
+
+    /**
+     * Reads a numeric argument without creating a string for it
+     *
+     * @throws NumberFormatException if the argument is not a number
+     */
+    public static long longArg(String data, int argsStart, int index) {
+        int begin = argBegin(data, argsStart, index);
+        int end = data.indexOf(SEPARATOR, begin);
+        return Long.parseLong(data, begin, end < 0 ? data.length() : end, 10);
+    }
+
+    /**
+     * @return the argument and everything after it, for a last argument that may contain ':'
+     */
+    public static String rest(String data, int argsStart, int index) {
+        return data.substring(argBegin(data, argsStart, index));
+    }
+
+    private static int argBegin(String data, int argsStart, int index) {
+        int begin = argsStart;
+        for (int i = 0; i < index; i++) {
+            int separator = data.indexOf(SEPARATOR, begin);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Callback data " + data + " has no argument " + index);
+            }
+            begin = separator + 1;
+        }
+        if (begin > data.length()) {
+            throw new IllegalArgumentException("Callback data " + data + " has no argument " + index);
+        }
+        return begin;
+    }
+}
@@ -0,0 +1,161 @@
+package com.kwonka.common.telegram;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Routes text messages and inline button callbacks of a bot to their handlers.
+ * <p>
+ * A bot declares its routes once as a table of conversation state and button label to handler;
+ * {@link Builder#build()} compiles it into hash lookups. Dispatching a message then costs one
+ * lookup of the commands valid in every state, and only if none matches, the chat's state and
+ * one lookup in its table, however many buttons the bot has. Callbacks are routed by their
+ * {@link CallbackAction}. Instances are immutable and safe to share between threads.
+ *
+ * @param <S> Conversation states of the bot
+ */
+public final class CommandRouter<S extends Enum<S>> {
+
+    @FunctionalInterface
+    public interface TextHandler {
+        void handle(long chatId, String text);
+    }
+
+    @FunctionalInterface
+    public interface CallbackHandler {
+        /**
+         * @param data      Callback data of the button
+         * @param argsStart Index of the first argument in data, see {@link CallbackAction#arg}
+         */
+        void handle(long chatId, String data, int argsStart);
+    }
+
+    private final LongFunction<S> stateOf;
+    private final Map<String, TextHandler> commands;
+    private final Map<S, Map<String, TextHandler>> routes;
+    private final Map<S, TextHandler> anyText;
+    private final TextHandler unknown;
+    private final Map<CallbackAction, CallbackHandler> callbacks;
+
+    private CommandRouter(Builder<S> builder) {
+        this.stateOf = builder.stateOf;
+        this.commands = Map.copyOf(builder.commands);
+        this.routes = new EnumMap<>(builder.routes);
+        this.routes.replaceAll((state, labels) -> Map.copyOf(labels));
+        this.anyText = new EnumMap<>(builder.anyText);
+        this.unknown = builder.unknown;
+        this.callbacks = new EnumMap<>(builder.callbacks);
+    }
+
+    /**
+     * @param stateType Enum of the conversation states
+     * @param stateOf   Current state of a chat, only asked when the text is not a command
+     */
+    public static <S extends Enum<S>> Builder<S> builder(Class<S> stateType, LongFunction<S> stateOf) {
+        return new Builder<>(stateType, stateOf);
+    }
+
+    /**
+     * Handles a text message with the command of that text, else the route of the chat's state and
+     * text, else the state's free text handler, else the unknown command handler
+     */
+    public void route(long chatId, String text) {
+        TextHandler handler = commands.get(text);
+        if (handler == null) {
+            S state = stateOf.apply(chatId);
+            Map<String, TextHandler> labels = routes.get(state);
+            if (labels != null) {
+                handler = labels.get(text);
+            }
+            if (handler == null) {
+                handler = anyText.getOrDefault(state, unknown);
+            }
+        }
+        handler.handle(chatId, text);
+    }
+
+    /**
+     * Handles a button callback
+     *
+     * @return false if the data is not of an action this router handles
+     */
+    public boolean routeCallback(long chatId, String data) {
+        CallbackAction action = CallbackAction.of(data);
+        CallbackHandler handler = action != null ? callbacks.get(action) : null;
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(chatId, data, action.argsStart(data));
+        return true;
+    }
+
+    public static final class Builder<S extends Enum<S>> {
+
+        private final LongFunction<S> stateOf;
+        private final Map<String, TextHandler> commands = new HashMap<>();
+        private final Map<S, Map<String, TextHandler>> routes;
+        private final Map<S, TextHandler> anyText;
+        private final Map<CallbackAction, CallbackHandler> callbacks = new EnumMap<>(CallbackAction.class);
+        private TextHandler unknown;
+
+        private Builder(Class<S> stateType, LongFunction<S> stateOf) {
+            this.stateOf = stateOf;
+            this.routes = new EnumMap<>(stateType);
+            this.anyText = new EnumMap<>(stateType);
+        }
+
+        /**
+         * Text handled the same in every state, it takes precedence over the state routes
+         */
+        public Builder<S> command(String text, TextHandler handler) {
+            if (commands.putIfAbsent(text, handler) != null) {
+                throw new IllegalStateException("Command already routed: " + text);
+            }
+            return this;
+        }
+
+        /**
+         * Text handled in one state
+         */
+        public Builder<S> on(S state, String text, TextHandler handler) {
+            if (routes.computeIfAbsent(state, s -> new HashMap<>()).putIfAbsent(text, handler) != null) {
+                throw new IllegalStateException("Text already routed in " + state + ": " + text);
+            }
+            return this;
+        }
+
+        /**
+         * Any other text in the state, for states that take free input such as a name from a list
+         */
+        public Builder<S> onAnyText(S state, TextHandler handler) {
+            if (anyText.putIfAbsent(state, handler) != null) {
+                throw new IllegalStateException("Free text already routed in " + state);
+            }
+            return this;
+        }
+
+        /**
+         * Text that matches no route
+         */
+        public Builder<S> unknown(TextHandler handler) {
+            this.unknown = handler;
+            return this;
+        }
+
+        public Builder<S> callback(CallbackAction action, CallbackHandler handler) {
+            if (callbacks.putIfAbsent(action, handler) != null) {
+                throw new IllegalStateException("Callback already routed: " + action);
+            }
+            return this;
+        }
+
+        public CommandRouter<S> build() {
+            if (unknown == null) {
+                throw new IllegalStateException("No handler for unknown commands");
+            }
+            return new CommandRouter<>(this);
+        }
+    }
+}
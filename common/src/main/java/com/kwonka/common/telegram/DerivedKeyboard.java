@@ -0,0 +1,33 @@
+package com.kwonka.common.telegram;
+
+import java.util.function.Function;
+
+/**
+ * Keyboard built from data that is replaced rather than modified, such as the immutable
+ * snapshots handed out by the coffee shop and menu caches. The keyboard is rebuilt only when
+ * a different snapshot instance comes in.
+ *
+ * @param <T> Snapshot type, compared by identity
+ */
+public final class DerivedKeyboard<T> {
+
+    private final Function<T, PrebuiltKeyboard> builder;
+    private volatile Built<T> built;
+
+    public DerivedKeyboard(Function<T, PrebuiltKeyboard> builder) {
+        this.builder = builder;
+    }
+
+    public PrebuiltKeyboard get(T source) {
+        Built<T> current = built;
+        if (current == null || current.source != source) {
+            // Racing threads may both build, either result is correct
+            current = new Built<>(source, builder.apply(source));
+            built = current;
+        }
+        return current.keyboard;
+    }
+
+    private record Built<T>(T source, PrebuiltKeyboard keyboard) {
+    }
+}
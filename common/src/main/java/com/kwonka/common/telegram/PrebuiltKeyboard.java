@@ -0,0 +1,106 @@
+package com.kwonka.common.telegram;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A keyboard built and serialized once, to be attached to any number of messages.
+ * <p>
+ * Screens with fixed buttons keep one in a constant instead of building the markup per message.
+ * When the message is sent the cached JSON is copied into the request as is, so neither the
+ * object graph nor its serialization is repeated. Instances are immutable and shared.
+ */
+@JsonSerialize(using = PrebuiltKeyboard.Serializer.class)
+public final class PrebuiltKeyboard implements ReplyKeyboard {
+
+    // Same defaults as the mapper the Bot API client serializes requests with
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String json;
+
+    private PrebuiltKeyboard(ReplyKeyboard keyboard) {
+        try {
+            keyboard.validate();
+            this.json = MAPPER.writeValueAsString(keyboard);
+        } catch (TelegramApiValidationException | JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid keyboard: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reply keyboard with the given rows of buttons
+     */
+    public static PrebuiltKeyboard of(List<List<String>> rows) {
+        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
+        keyboardMarkup.setResizeKeyboard(true);
+        keyboardMarkup.setOneTimeKeyboard(false);
+        keyboardMarkup.setSelective(true);
+
+        List<KeyboardRow> keyboard = new ArrayList<>();
+        for (List<String> buttons : rows) {
+            KeyboardRow row = new KeyboardRow();
+            for (String button : buttons) {
+                row.add(new KeyboardButton(button));
+            }
+            keyboard.add(row);
+        }
+
+        keyboardMarkup.setKeyboard(keyboard);
+        return new PrebuiltKeyboard(keyboardMarkup);
+    }
+
+    /**
+     * Reply keyboard with one button per row
+     */
+    public static PrebuiltKeyboard column(String... buttons) {
+        return column(Arrays.asList(buttons));
+    }
+
+    public static PrebuiltKeyboard column(List<String> buttons) {
+        return of(buttons.stream().map(List::of).toList());
+    }
+
+    /**
+     * Freezes any other kind of keyboard, e.g. an inline one
+     */
+    public static PrebuiltKeyboard of(ReplyKeyboard keyboard) {
+        return new PrebuiltKeyboard(keyboard);
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Validated when built
+     */
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    static final class Serializer extends JsonSerializer<PrebuiltKeyboard> {
+        @Override
+        public void serialize(PrebuiltKeyboard keyboard, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+            generator.writeRawValue(keyboard.json);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.kwonka.common.telegram;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send pipeline shared by everything in a process that talks to the Bot API through one token.
+ * <p>
+ * Calls are queued per chat and go out through executeAsync, so callers never wait for Telegram.
+ * A chat has at most one call in flight, which keeps its messages in order, and its own token bucket
+ * (a short burst, then about one message per second); a global bucket keeps the bot under Telegram's
+ * overall limit. That limit is per token while the outbox only sees its own process, so each process
+ * sending through a token gets a share of it (kwonka.telegram.per-second) and the shares of one token
+ * must not add up to more than {@link #TOKEN_PER_SECOND}. High priority calls (order ready
+ * notifications) overtake normal ones both within a chat and across chats. A 429 response puts the
+ * call back at the head of its chat and pauses the chat for the retry_after Telegram asks for.
+ * The queue is bounded, calls over capacity fail fast.
+ * <p>
+ * Every Bot API call is timed as kwonka.telegram.calls, tagged with the outbox, the method and the
+ * outcome (ok, rate_limited, error); the time a call waited in the queue is kwonka.telegram.wait.
+ */
+@Slf4j
+public class TelegramOutbox {
+
+    public enum Priority {
+        HIGH,
+        NORMAL
+    }
+
+    /**
+     * Threads the Bot API client may use for executeAsync, the default of one would serialize all chats
+     */
+    public static final int SENDER_THREADS = 8;
+
+    /**
+     * Messages per second Telegram allows one bot token across all chats
+     */
+    public static final int TOKEN_PER_SECOND = 30;
+
+    private static final int CHAT_BURST = 3;
+    private static final Duration CHAT_PERIOD = Duration.ofSeconds(1);
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int MAX_RATE_LIMIT_RETRIES = 5;
+
+    private final AbsSender sender;
+    private final String name;
+    private final int capacity;
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private final Map<String, ChatLane> lanes = new LinkedHashMap<>();
+    private final TokenBucket globalBucket;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+    private int queued;
+    private Thread dispatcherThread;
+
+    /**
+     * @param perSecond     This process's share of the token's {@link #TOKEN_PER_SECOND}
+     * @param meterRegistry Registry the call, wait and queue meters are registered in
+     */
+    public TelegramOutbox(AbsSender sender, String name, int perSecond, MeterRegistry meterRegistry) {
+        this(sender, name, perSecond, DEFAULT_CAPACITY, meterRegistry);
+    }
+
+    public TelegramOutbox(AbsSender sender, String name, int perSecond, int capacity, MeterRegistry meterRegistry) {
+        if (perSecond < 1 || perSecond > TOKEN_PER_SECOND) {
+            throw new IllegalArgumentException("Telegram outbox " + name + " rate must be between 1 and "
+                    + TOKEN_PER_SECOND + " per second, got " + perSecond);
+        }
+        this.sender = sender;
+        this.name = name;
+        this.capacity = capacity;
+        this.meterRegistry = meterRegistry;
+        this.globalBucket = new TokenBucket(perSecond, Duration.ofSeconds(1).dividedBy(perSecond), System.nanoTime());
+
+        Gauge.builder("kwonka.telegram.queued", this, TelegramOutbox::getQueued)
+                .description("Bot API calls waiting in the outbox")
+                .tag("outbox", name)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("kwonka.telegram.wait")
+                .description("Time from queuing a call to sending it, including rate limit pauses")
+                .tag("outbox", name)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("kwonka.telegram.rejected")
+                .description("Calls rejected because the outbox was full")
+                .tag("outbox", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Bot options for senders used with an outbox
+     *
+     * @param apiUrl Bot API address the token is appended to, telegram.api-url
+     */
+    public static DefaultBotOptions newBotOptions(String apiUrl) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(SENDER_THREADS);
+        options.setBaseUrl(apiUrl);
+        return options;
+    }
+
+    /**
+     * Queues a message with normal priority
+     */
+    public CompletableFuture<Message> send(SendMessage message) {
+        return send(message, Priority.NORMAL);
+    }
+
+    public CompletableFuture<Message> send(SendMessage message, Priority priority) {
+        return submit(message.getChatId(), message, priority);
+    }
+
+    /**
+     * Queues any Bot API call addressed to a chat
+     *
+     * @param chatId Chat the call counts against for rate limiting and ordering
+     * @return Future completed with Telegram's response, or exceptionally if the call failed or was rejected
+     */
+    public <T extends Serializable> CompletableFuture<T> submit(String chatId, BotApiMethod<T> method, Priority priority) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (queued >= capacity) {
+                log.warn("Telegram outbox {} is full ({} calls), rejecting {} to chat {}", name, queued, method.getMethod(), chatId);
+                future.completeExceptionally(new RejectedExecutionException("Telegram outbox " + name + " is full"));
+                rejectedCounter.increment();
+                return future;
+            }
+            ensureStarted();
+            lanes.computeIfAbsent(chatId, id -> new ChatLane(id, System.nanoTime()))
+                    .add(new Call<>(method, future, priority, System.nanoTime()));
+            queued++;
+            lock.notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * @return calls waiting to be sent, not counting those in flight
+     */
+    public int getQueued() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    private void ensureStarted() {
+        if (dispatcherThread == null) {
+            dispatcherThread = new Thread(this::dispatch, "telegram-outbox-" + name);
+            dispatcherThread.setDaemon(true);
+            dispatcherThread.start();
+        }
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Call<?> call;
+            ChatLane lane;
+            synchronized (lock) {
+                long now = System.nanoTime();
+                lane = pickLane(now);
+                if (lane == null) {
+                    await(nextWakeUp(now) - now);
+                    continue;
+                }
+                long globalAt = globalBucket.availableAt(now);
+                if (globalAt > now) {
+                    await(globalAt - now);
+                    continue;
+                }
+
+                globalBucket.take(now);
+                lane.bucket.take(now);
+                call = lane.poll();
+                lane.inFlight = true;
+                queued--;
+
+                // Rotate the lane to the end so busy chats take turns
+                lanes.remove(lane.chatId);
+                lanes.put(lane.chatId, lane);
+            }
+            waitTimer.record(System.nanoTime() - call.queuedAtNanos, TimeUnit.NANOSECONDS);
+            execute(lane, call);
+        }
+    }
+
+    /**
+     * Chooses the chat to serve next: any chat with a high priority call at its head wins,
+     * otherwise the first ready chat in rotation order. Drops idle chats on the way.
+     */
+    private ChatLane pickLane(long now) {
+        ChatLane normal = null;
+        Iterator<ChatLane> it = lanes.values().iterator();
+        while (it.hasNext()) {
+            ChatLane lane = it.next();
+            if (lane.isEmpty()) {
+                if (!lane.inFlight && lane.pausedUntil <= now && lane.bucket.isFull(now)) {
+                    it.remove();
+                }
+                continue;
+            }
+            if (!lane.isReady(now)) {
+                continue;
+            }
+            if (lane.headPriority() == Priority.HIGH) {
+                return lane;
+            }
+            if (normal == null) {
+                normal = lane;
+            }
+        }
+        return normal;
+    }
+
+    private long nextWakeUp(long now) {
+        long next = now + TimeUnit.SECONDS.toNanos(1);
+        for (ChatLane lane : lanes.values()) {
+            if (!lane.isEmpty() && !lane.inFlight) {
+                next = Math.min(next, Math.max(lane.pausedUntil, lane.bucket.availableAt(now)));
+            }
+        }
+        return next;
+    }
+
+    private void await(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T extends Serializable> void execute(ChatLane lane, Call<T> call) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> response;
+        try {
+            response = sender.executeAsync(call.method);
+        } catch (TelegramApiException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, error) -> complete(lane, call, result, error, startNanos));
+    }
+
+    private <T extends Serializable> void complete(ChatLane lane, Call<T> call, T result, Throwable error, long startNanos) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Integer retryAfter = retryAfter(cause);
+
+        Timer.builder("kwonka.telegram.calls")
+                .tag("outbox", name)
+                .tag("method", call.method.getMethod())
+                .tag("outcome", cause == null ? "ok" : retryAfter != null ? "rate_limited" : "error")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        synchronized (lock) {
+            lane.inFlight = false;
+            boolean retry = retryAfter != null && call.rateLimitRetries < MAX_RATE_LIMIT_RETRIES;
+            if (retry) {
+                call.rateLimitRetries++;
+                lane.pausedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                lane.pushBack(call);
+                queued++;
+                log.warn("Telegram rate limit hit for chat {}, retrying {} in {}s", lane.chatId, call.method.getMethod(), retryAfter);
+            }
+            lock.notifyAll();
+            if (retry) {
+                return;
+            }
+        }
+
+        if (cause == null) {
+            call.future.complete(result);
+        } else {
+            log.error("Failed to send {} to chat {}", call.method.getMethod(), lane.chatId, cause);
+            call.future.completeExceptionally(cause);
+        }
+    }
+
+    private static Integer retryAfter(Throwable error) {
+        if (error instanceof TelegramApiRequestException requestException
+                && Integer.valueOf(429).equals(requestException.getErrorCode())) {
+            if (requestException.getParameters() != null && requestException.getParameters().getRetryAfter() != null) {
+                return requestException.getParameters().getRetryAfter();
+            }
+            return 1;
+        }
+        return null;
+    }
+
+    private static final class Call<T extends Serializable> {
+        private final BotApiMethod<T> method;
+        private final CompletableFuture<T> future;
+        private final Priority priority;
+        private final long queuedAtNanos;
+        private int rateLimitRetries;
+
+        private Call(BotApiMethod<T> method, CompletableFuture<T> future, Priority priority, long queuedAtNanos) {
+            this.method = method;
+            this.future = future;
+            this.priority = priority;
+            this.queuedAtNanos = queuedAtNanos;
+        }
+    }
+
+    private static final class ChatLane {
+        private final String chatId;
+        private final TokenBucket bucket;
+        private final Deque<Call<?>> high = new ArrayDeque<>();
+        private final Deque<Call<?>> normal = new ArrayDeque<>();
+        private boolean inFlight;
+        private long pausedUntil;
+
+        private ChatLane(String chatId, long now) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(CHAT_BURST, CHAT_PERIOD, now);
+            this.pausedUntil = now;
+        }
+
+        private void add(Call<?> call) {
+            (call.priority == Priority.HIGH ? high : normal).addLast(call);
+        }
+
+        private void pushBack(Call<?> call) {
+            (call.priority == Priority.HIGH ? high : normal).addFirst(call);
+        }
+
+        private Call<?> poll() {
+            return high.isEmpty() ? normal.pollFirst() : high.pollFirst();
+        }
+
+        private boolean isEmpty() {
+            return high.isEmpty() && normal.isEmpty();
+        }
+
+        private Priority headPriority() {
+            return high.isEmpty() ? Priority.NORMAL : Priority.HIGH;
+        }
+
+        private boolean isReady(long now) {
+            return !inFlight && pausedUntil <= now && bucket.availableAt(now) <= now;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.kwonka.common.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Receives a bot's updates through a webhook instead of long polling.
+ * <p>
+ * Telegram posts every update to {@code <public url>/telegram/webhook/<path>} with the secret token
+ * in a header; TelegramWebhookController checks it and hands the update to the receiver, which only
+ * queues it, so the request is answered right away.
+ * <p>
+ * Several replicas can sit behind the public URL only if each chat's state is read from the database
+ * on every update, i.e. with kwonka.sessions.shared set (see JdbcConversationStateStore). Without it
+ * every replica serves chats from its own cache, and the load balancer would have to send all updates
+ * of a chat to the same replica, which it cannot tell from the request path.
+ */
+@Slf4j
+public class TelegramWebhook {
+
+    public static final String ENDPOINT = "/telegram/webhook/";
+
+    // What the Bot API accepts as a secret token
+    private static final Pattern SECRET_TOKEN = Pattern.compile("[A-Za-z0-9_-]{1,256}");
+
+    private final String path;
+    private final DefaultAbsSender bot;
+    private final byte[] secretToken;
+    private final Predicate<Update> receiver;
+
+    /**
+     * @param path        Last segment of the endpoint, unique per bot
+     * @param bot         Bot the webhook is set for
+     * @param secretToken Expected in the X-Telegram-Bot-Api-Secret-Token header of every request
+     * @param receiver    Queues an update for handling, returns false if it cannot take more now
+     */
+    public TelegramWebhook(String path, DefaultAbsSender bot, String secretToken, Predicate<Update> receiver) {
+        if (secretToken == null || !SECRET_TOKEN.matcher(secretToken).matches()) {
+            throw new IllegalArgumentException("Webhook secret token of " + path + " must be 1-256 characters A-Z, a-z, 0-9, _ or -");
+        }
+        this.path = path;
+        this.bot = bot;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.receiver = receiver;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Points the bot's webhook at this service, Telegram stops serving getUpdates from then on
+     *
+     * @param publicUrl Address Telegram reaches this service at, e.g. https://bots.example.com
+     */
+    public void register(String publicUrl, int maxConnections) throws TelegramApiException {
+        if (publicUrl == null || publicUrl.isBlank()) {
+            throw new IllegalArgumentException("Public URL for the webhook of " + path + " is not set");
+        }
+        String url = publicUrl.replaceAll("/+$", "") + ENDPOINT + path;
+        bot.execute(SetWebhook.builder()
+                .url(url)
+                .secretToken(new String(secretToken, StandardCharsets.UTF_8))
+                .maxConnections(maxConnections)
+                .build());
+        log.info("Webhook of {} set to {}", path, url);
+    }
+
+    public boolean isAuthorized(String secretTokenHeader) {
+        // Constant time, the header is attacker controlled
+        return secretTokenHeader != null
+                && MessageDigest.isEqual(secretToken, secretTokenHeader.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return false if the update was not taken and Telegram has to deliver it again
+     */
+    public boolean receive(Update update) {
+        return receiver.test(update);
+    }
+}
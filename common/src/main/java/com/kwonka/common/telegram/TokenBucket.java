@@ -0,0 +1,53 @@
+package com.kwonka.common.telegram;
+
+import java.time.Duration;
+
+/**
+ * Classic token bucket on System.nanoTime, not thread safe - TelegramOutbox guards it with its lock
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double nanosPerToken;
+    private double tokens;
+    private long updatedAt;
+
+    /**
+     * @param capacity How many calls may go out back to back
+     * @param period   Time to earn one token back
+     */
+    TokenBucket(int capacity, Duration period, long now) {
+        this.capacity = capacity;
+        this.nanosPerToken = period.toNanos();
+        this.tokens = capacity;
+        this.updatedAt = now;
+    }
+
+    /**
+     * @return the moment a token is available, now or later
+     */
+    long availableAt(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return now;
+        }
+        return now + (long) Math.ceil((1 - tokens) * nanosPerToken);
+    }
+
+    void take(long now) {
+        refill(now);
+        tokens -= 1;
+    }
+
+    boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > updatedAt) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) / nanosPerToken);
+            updatedAt = now;
+        }
+    }
+}
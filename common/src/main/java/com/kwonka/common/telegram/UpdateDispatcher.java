@@ -0,0 +1,199 @@
+package com.kwonka.common.telegram;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Moves update handling off the long polling thread or webhook request onto virtual threads.
+ * <p>
+ * Updates of one chat are handled strictly one after another in arrival order, different chats
+ * run in parallel. A chat with queued updates has exactly one virtual thread working through them,
+ * the queue entry disappears once it is drained. At most maxInFlight updates are queued or running
+ * at a time; beyond that dispatch blocks the polling thread, which stops it from fetching more.
+ * <p>
+ * Handling time is recorded as the kwonka.updates timer, tagged with the bot, the conversation
+ * state the update arrived in, the command (/start, the callback prefix, or just text) and whether
+ * the handler threw.
+ */
+@Slf4j
+public class UpdateDispatcher {
+
+    // Longer callback prefixes are not ours and are not used as a tag value
+    private static final int MAX_CALLBACK_PREFIX = 32;
+
+    private final String name;
+    private final Consumer<Update> handler;
+    private final Function<Long, String> stateOf;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final Map<Long, ArrayDeque<Update>> chats = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param name          Used in thread names and logs
+     * @param maxInFlight   Updates allowed to be queued or running at once
+     * @param handler       Handles one update, called on a virtual thread
+     * @param stateOf       Conversation state of a chat for the metrics tag, read before its update is handled
+     * @param meterRegistry Registry the update meters are registered in
+     */
+    public UpdateDispatcher(String name, int maxInFlight, Consumer<Update> handler, Function<Long, String> stateOf,
+                            MeterRegistry meterRegistry) {
+        this.name = name;
+        this.meterRegistry = meterRegistry;
+        this.handler = handler;
+        this.stateOf = stateOf;
+        this.permits = new Semaphore(maxInFlight);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-update-", 0).factory());
+
+        Gauge.builder("kwonka.updates.in_flight", permits, available -> maxInFlight - available.availablePermits())
+                .description("Updates queued or being handled")
+                .tag("bot", name)
+                .register(meterRegistry);
+        Gauge.builder("kwonka.updates.active_chats", chats, Map::size)
+                .description("Chats with updates queued or being handled")
+                .tag("bot", name)
+                .register(meterRegistry);
+    }
+
+    public void dispatch(Update update) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while dispatching update {} of {}", update.getUpdateId(), name);
+            return;
+        }
+        enqueue(update);
+    }
+
+    /**
+     * Dispatches the update unless maxInFlight updates are already queued or running
+     *
+     * @return false if the update was not taken and has to be delivered again later
+     */
+    public boolean tryDispatch(Update update) {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        enqueue(update);
+        return true;
+    }
+
+    /**
+     * @return chats that currently have updates queued or running
+     */
+    public int getActiveChats() {
+        return chats.size();
+    }
+
+    private void enqueue(Update update) {
+        Long chatId = chatIdOf(update);
+        if (chatId == null) {
+            executor.execute(() -> process(update));
+            return;
+        }
+
+        boolean[] first = new boolean[1];
+        chats.compute(chatId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                first[0] = true;
+            }
+            queue.addLast(update);
+            return queue;
+        });
+
+        // Whoever created the queue drains it, later updates of the chat are picked up by that thread
+        if (first[0]) {
+            executor.execute(() -> drain(chatId, update));
+        }
+    }
+
+    private void drain(Long chatId, Update first) {
+        Update update = first;
+        while (update != null) {
+            process(update);
+
+            // The head of the queue is the update just handled
+            Update[] next = new Update[1];
+            chats.computeIfPresent(chatId, (id, queue) -> {
+                queue.pollFirst();
+                next[0] = queue.peekFirst();
+                return queue.isEmpty() ? null : queue;
+            });
+            update = next[0];
+        }
+    }
+
+    private void process(Update update) {
+        long startNanos = System.nanoTime();
+        String state = "unknown";
+        String outcome = "ok";
+        try {
+            Long chatId = chatIdOf(update);
+            state = chatId != null ? stateOf.apply(chatId) : "none";
+            handler.accept(update);
+        } catch (RuntimeException e) {
+            outcome = "error";
+            log.error("Error handling update {} in {}", update.getUpdateId(), name, e);
+        } finally {
+            permits.release();
+            Timer.builder("kwonka.updates")
+                    .tag("bot", name)
+                    .tag("state", state)
+                    .tag("command", commandOf(update))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Kind of the update for the metrics tag; free text is not used as a tag value
+     */
+    static String commandOf(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            String text = update.getMessage().getText();
+            if (!text.startsWith("/")) {
+                return "text";
+            }
+            return text.equals("/start") || text.startsWith("/start ") ? "/start" : "command";
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getData() != null) {
+            // Callback data is ours, its prefix names the action
+            String data = update.getCallbackQuery().getData();
+            int colon = data.indexOf(':');
+            return colon > 0 && colon <= MAX_CALLBACK_PREFIX ? data.substring(0, colon) : "callback";
+        }
+        return "other";
+    }
+
+    static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery()) {
+            if (update.getCallbackQuery().getMessage() != null) {
+                return update.getCallbackQuery().getMessage().getChatId();
+            }
+            return update.getCallbackQuery().getFrom().getId();
+        }
+        if (update.hasEditedMessage()) {
+            return update.getEditedMessage().getChatId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,58 @@
+package com.kwonka.common.web;
+
+import com.kwonka.common.telegram.TelegramWebhook;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Endpoint Telegram posts updates to in webhook mode (telegram.mode=webhook).
+ * <p>
+ * The update is only queued here and answered with 200 at once; handling runs on the bot's
+ * update dispatcher. When the dispatcher is full the answer is 503 and Telegram delivers the
+ * update again later, the same back pressure long polling gets by not fetching.
+ */
+@RestController
+@ConditionalOnProperty(name = "telegram.mode", havingValue = "webhook")
+@Slf4j
+public class TelegramWebhookController {
+
+    private static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final Map<String, TelegramWebhook> webhooks;
+
+    public TelegramWebhookController(List<TelegramWebhook> webhooks) {
+        this.webhooks = webhooks.stream().collect(Collectors.toMap(TelegramWebhook::getPath, Function.identity()));
+    }
+
+    @PostMapping(TelegramWebhook.ENDPOINT + "{path}")
+    public ResponseEntity<Void> receive(@PathVariable String path,
+                                        @RequestHeader(name = SECRET_TOKEN_HEADER, required = false) String secretToken,
+                                        @RequestBody Update update) {
+        TelegramWebhook webhook = webhooks.get(path);
+        if (webhook == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!webhook.isAuthorized(secretToken)) {
+            log.warn("Rejected webhook request for {} with a wrong secret token", path);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!webhook.receive(update)) {
+            log.warn("Update {} of {} deferred, too many updates in flight", update.getUpdateId(), path);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
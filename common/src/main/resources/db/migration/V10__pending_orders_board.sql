@@ -0,0 +1,3 @@
+-- Admin board of pending orders across all shops, paged newest first by (created_at, id)
+CREATE INDEX idx_orders_pending_board ON orders (created_at DESC, id DESC)
+    WHERE status = 'PENDING';
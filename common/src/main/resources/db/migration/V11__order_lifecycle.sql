@@ -0,0 +1,18 @@
+-- When an order entered each status, set by OrderService.updateOrderStatus.
+-- Orders placed before this migration keep NULLs and are left out of stage timings.
+ALTER TABLE orders
+    ADD COLUMN taken_at     TIMESTAMP,
+    ADD COLUMN ready_at     TIMESTAMP,
+    ADD COLUMN completed_at TIMESTAMP,
+    ADD COLUMN cancelled_at TIMESTAMP;
+
+-- Stage durations per day, coffee shop and stage as compressed HdrHistograms.
+-- Each process records into memory and StageTimingService merges its interval into the row.
+CREATE TABLE order_stage_histograms
+(
+    stat_date      DATE        NOT NULL,
+    coffee_shop_id BIGINT      NOT NULL REFERENCES coffee_shops (id),
+    stage          VARCHAR(20) NOT NULL,
+    histogram      BYTEA       NOT NULL,
+    PRIMARY KEY (stat_date, coffee_shop_id, stage)
+);
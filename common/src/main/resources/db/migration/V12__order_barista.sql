@@ -0,0 +1,6 @@
+-- Barista chat that took the order, lets a barista act on all of their own orders at once
+ALTER TABLE orders
+    ADD COLUMN barista_chat_id BIGINT;
+
+CREATE INDEX idx_orders_barista_in_preparation ON orders (barista_chat_id)
+    WHERE status = 'IN_PREPARATION';
@@ -0,0 +1,4 @@
+-- Row version of conversation_state, bumped on every write.
+-- Stores shared by several replicas write with compare-and-set on it, see JdbcConversationStateStore.
+ALTER TABLE conversation_state
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 1;
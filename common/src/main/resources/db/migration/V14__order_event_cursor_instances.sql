@@ -0,0 +1,4 @@
+-- Cursors are kept per running instance (consumer@instance), see OrderEventSubscriber.
+-- Cursors of instances gone for longer than the event retention are removed.
+ALTER TABLE order_event_cursors
+    ADD COLUMN updated_at TIMESTAMP NOT NULL DEFAULT now();
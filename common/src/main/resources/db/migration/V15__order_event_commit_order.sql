@@ -0,0 +1,13 @@
+-- Journal readers order events by the transaction that wrote them instead of serialising appends
+-- with a lock, see OrderEventSubscriber. Events written before this migration all get its own ID.
+ALTER TABLE order_events
+    ADD COLUMN transaction_id BIGINT NOT NULL DEFAULT (pg_current_xact_id()::text::bigint);
+
+CREATE INDEX idx_order_events_transaction ON order_events (transaction_id, id);
+
+-- Cursors become (transaction, event), existing ones keep their place among the old events
+ALTER TABLE order_event_cursors
+    ADD COLUMN last_transaction_id BIGINT NOT NULL DEFAULT 0;
+
+UPDATE order_event_cursors
+SET last_transaction_id = pg_current_xact_id()::text::bigint;
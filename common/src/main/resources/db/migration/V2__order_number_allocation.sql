@@ -0,0 +1,15 @@
+-- Global order numbers are handed out in blocks of 100 (see OrderNumberAllocator.BLOCK_SIZE)
+CREATE SEQUENCE order_number_seq START WITH 1 INCREMENT BY 100;
+
+SELECT setval('order_number_seq',
+              COALESCE((SELECT MAX(order_number::bigint) FROM orders WHERE order_number ~ '^[0-9]+$'), 0) + 1,
+              false);
+
+-- Optional per-shop daily numbering
+CREATE TABLE shop_daily_order_counters
+(
+    coffee_shop_id BIGINT  NOT NULL REFERENCES coffee_shops (id),
+    counter_date   DATE    NOT NULL,
+    last_value     INTEGER NOT NULL,
+    PRIMARY KEY (coffee_shop_id, counter_date)
+);
@@ -0,0 +1,14 @@
+-- Statistics and admin views filter by status and creation time
+CREATE INDEX idx_orders_status_created_at ON orders (status, created_at);
+
+-- Barista views: orders of a coffee shop in a given status
+CREATE INDEX idx_orders_shop_status_created_at ON orders (coffee_shop_id, status, created_at);
+
+-- Customer "Я забрал(а)" lookup of READY orders
+CREATE INDEX idx_orders_customer_status ON orders (customer_id, status);
+
+CREATE INDEX idx_orders_created_at ON orders (created_at);
+
+-- Active orders are a tiny fraction of the history, keep a small index for them only
+CREATE INDEX idx_orders_active_by_shop ON orders (coffee_shop_id, created_at)
+    WHERE status IN ('PENDING', 'IN_PREPARATION', 'READY');
@@ -0,0 +1,19 @@
+-- Rollup of completed orders per day, coffee shop, drink and size.
+-- Maintained incrementally by DailyStatsRollupService when an order is completed.
+CREATE TABLE daily_shop_stats
+(
+    stat_date      DATE           NOT NULL,
+    coffee_shop_id BIGINT         NOT NULL REFERENCES coffee_shops (id),
+    coffee_type    VARCHAR(100)   NOT NULL,
+    size           VARCHAR(50)    NOT NULL,
+    order_count    INTEGER        NOT NULL,
+    revenue        DECIMAL(12, 2) NOT NULL,
+    PRIMARY KEY (stat_date, coffee_shop_id, coffee_type, size)
+);
+
+-- Backfill from history
+INSERT INTO daily_shop_stats (stat_date, coffee_shop_id, coffee_type, size, order_count, revenue)
+SELECT CAST(created_at AS DATE), coffee_shop_id, coffee_type, size, COUNT(*), SUM(total_price)
+FROM orders
+WHERE status = 'COMPLETED'
+GROUP BY CAST(created_at AS DATE), coffee_shop_id, coffee_type, size;
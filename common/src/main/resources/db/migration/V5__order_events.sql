@@ -0,0 +1,34 @@
+-- Journal of order lifecycle events shared by all bots (see OrderEventJournal / OrderEventSubscriber)
+CREATE TABLE order_events
+(
+    id              BIGSERIAL PRIMARY KEY,
+    order_id        BIGINT      NOT NULL REFERENCES orders (id),
+    previous_status VARCHAR(20),
+    status          VARCHAR(20) NOT NULL,
+    origin          VARCHAR(64) NOT NULL,
+    created_at      TIMESTAMP   NOT NULL
+);
+
+CREATE INDEX idx_order_events_created_at ON order_events (created_at);
+
+-- Last event processed by each consuming bot
+CREATE TABLE order_event_cursors
+(
+    consumer      VARCHAR(100) PRIMARY KEY,
+    last_event_id BIGINT       NOT NULL
+);
+
+-- Wake up listeners as soon as an event is committed
+CREATE FUNCTION notify_order_event() RETURNS trigger AS
+$$
+BEGIN
+    PERFORM pg_notify('order_events', NEW.id::text);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER order_events_notify
+    AFTER INSERT
+    ON order_events
+    FOR EACH ROW
+EXECUTE FUNCTION notify_order_event();
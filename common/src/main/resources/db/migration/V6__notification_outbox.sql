@@ -0,0 +1,19 @@
+-- Customer notifications written in the same transaction as the order status change
+-- and delivered by NotificationOutboxDispatcher
+CREATE TABLE notification_outbox
+(
+    id              BIGSERIAL PRIMARY KEY,
+    dedup_key       VARCHAR(150) NOT NULL UNIQUE,
+    type            VARCHAR(30)  NOT NULL,
+    chat_id         BIGINT       NOT NULL,
+    order_number    VARCHAR(50),
+    attempts        INTEGER      NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP    NOT NULL,
+    created_at      TIMESTAMP    NOT NULL,
+    sent_at         TIMESTAMP,
+    failed_at       TIMESTAMP,
+    last_error      VARCHAR(500)
+);
+
+CREATE INDEX idx_notification_outbox_due ON notification_outbox (next_attempt_at)
+    WHERE sent_at IS NULL AND failed_at IS NULL;
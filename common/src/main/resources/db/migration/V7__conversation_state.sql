@@ -0,0 +1,11 @@
+-- Conversation state of bot chats, written behind by JdbcConversationStateStore
+CREATE TABLE conversation_state
+(
+    bot        VARCHAR(30) NOT NULL,
+    chat_id    BIGINT      NOT NULL,
+    state      JSONB       NOT NULL,
+    updated_at TIMESTAMP   NOT NULL,
+    PRIMARY KEY (bot, chat_id)
+);
+
+CREATE INDEX idx_conversation_state_updated_at ON conversation_state (bot, updated_at);
@@ -0,0 +1,14 @@
+-- Tell every bot process to reload its coffee shop cache once a change is committed
+CREATE FUNCTION notify_coffee_shops_changed() RETURNS trigger AS
+$$
+BEGIN
+    PERFORM pg_notify('coffee_shops_changed', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER coffee_shops_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON coffee_shops
+    FOR EACH STATEMENT
+EXECUTE FUNCTION notify_coffee_shops_changed();
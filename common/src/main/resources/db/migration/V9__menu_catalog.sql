@@ -0,0 +1,88 @@
+-- Drinks and add-ons offered by the customer bot, in keyboard order
+CREATE TABLE menu_items
+(
+    id         BIGSERIAL PRIMARY KEY,
+    kind       VARCHAR(20)  NOT NULL,
+    name       VARCHAR(100) NOT NULL,
+    sort_order INTEGER      NOT NULL DEFAULT 0,
+    active     BOOLEAN      NOT NULL DEFAULT TRUE,
+    UNIQUE (kind, name)
+);
+
+-- Prices in tenge. A row without a coffee shop is the base price, a row with one overrides it for
+-- that shop; a row without a size applies to every size. A drink is offered in the sizes it has a price for.
+CREATE TABLE menu_prices
+(
+    id             BIGSERIAL PRIMARY KEY,
+    menu_item_id   BIGINT      NOT NULL REFERENCES menu_items (id),
+    coffee_shop_id BIGINT REFERENCES coffee_shops (id),
+    size           VARCHAR(10),
+    price          INTEGER     NOT NULL
+);
+
+CREATE UNIQUE INDEX uq_menu_prices ON menu_prices (menu_item_id, COALESCE(coffee_shop_id, 0), COALESCE(size, ''));
+
+INSERT INTO menu_items (kind, name, sort_order)
+VALUES ('DRINK', 'Американо', 1),
+       ('DRINK', 'Латте', 2),
+       ('DRINK', 'Капучино', 3),
+       ('DRINK', 'Раф', 4),
+       ('DRINK', 'Флэт Уайт', 5),
+       ('MILK', 'Кокосовое', 1),
+       ('MILK', 'Миндальное', 2),
+       ('MILK', 'Фундучное', 3),
+       ('MILK', 'Овсяное', 4),
+       ('SYRUP', 'Ванильный', 1),
+       ('SYRUP', 'Ореховый', 2),
+       ('SYRUP', 'Карамельный', 3);
+
+INSERT INTO menu_prices (menu_item_id, size, price)
+SELECT i.id, p.size, p.price
+FROM menu_items i
+         JOIN (VALUES ('Американо', 'SMALL', 990),
+                      ('Американо', 'MEDIUM', 1090),
+                      ('Американо', 'LARGE', 1190),
+                      ('Латте', 'SMALL', 1090),
+                      ('Латте', 'MEDIUM', 1190),
+                      ('Латте', 'LARGE', 1290),
+                      ('Капучино', 'SMALL', 1090),
+                      ('Капучино', 'MEDIUM', 1190),
+                      ('Капучино', 'LARGE', 1290),
+                      ('Раф', 'SMALL', 1290),
+                      ('Раф', 'MEDIUM', 1490),
+                      ('Раф', 'LARGE', 1590),
+                      ('Флэт Уайт', 'SMALL', 1090)) AS p (name, size, price)
+              ON p.name = i.name
+WHERE i.kind = 'DRINK';
+
+INSERT INTO menu_prices (menu_item_id, size, price)
+SELECT i.id, p.size, p.price
+FROM menu_items i
+         CROSS JOIN (VALUES ('SMALL', 350), ('MEDIUM', 450), ('LARGE', 550)) AS p (size, price)
+WHERE i.kind = 'MILK';
+
+INSERT INTO menu_prices (menu_item_id, price)
+SELECT id, 160
+FROM menu_items
+WHERE kind = 'SYRUP';
+
+-- Tell every bot process to reload its menu once a change is committed
+CREATE FUNCTION notify_menu_changed() RETURNS trigger AS
+$$
+BEGIN
+    PERFORM pg_notify('menu_changed', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER menu_items_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON menu_items
+    FOR EACH STATEMENT
+EXECUTE FUNCTION notify_menu_changed();
+
+CREATE TRIGGER menu_prices_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON menu_prices
+    FOR EACH STATEMENT
+EXECUTE FUNCTION notify_menu_changed();
@@ -0,0 +1,269 @@
+package com.kwonka.common.service;
+
+import com.kwonka.common.entity.CoffeeShop;
+import com.kwonka.common.entity.Order;
+import com.kwonka.common.repository.CoffeeShopRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Races transitions of one order from many threads against Postgres and checks that exactly one
+ * of them wins, whatever the interleaving. Repeated over many orders to hit different ones.
+ * Also runs the bulk transitions, whose native UPDATE ... RETURNING queries only Postgres executes.
+ * Skipped where Docker is not available.
+ */
+@SpringBootTest(classes = OrderServiceConcurrencyTest.TestApplication.class)
+@Testcontainers(disabledWithoutDocker = true)
+class OrderServiceConcurrencyTest {
+
+    private static final int ROUNDS = 50;
+    private static final int TAKERS = 16;
+    private static final int BULK_ROUNDS = 10;
+    private static final int PENDING_ORDERS = 40;
+    private static final int TAKE_LIMIT = 5;
+
+    // Barista chats and coffee shops unique to each case, so bulk transitions see only its own orders
+    private static final AtomicLong nextBaristaChatId = new AtomicLong(1000);
+    private static final AtomicLong nextShop = new AtomicLong();
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private static ExecutorService executor;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CoffeeShopRepository coffeeShopRepository;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(TAKERS);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void baristasTakingAnOrderHaveOneWinner() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Order order = newOrder();
+
+            List<Boolean> results = race(IntStream.range(0, TAKERS)
+                    .mapToObj(barista -> (Callable<Boolean>) () -> orderService.takeOrder(order.getOrderNumber(), (long) barista))
+                    .toList());
+
+            assertEquals(1, results.stream().filter(Boolean::booleanValue).count(),
+                    "Order " + order.getOrderNumber() + " was taken " + results);
+            Order taken = reload(order);
+            assertEquals(Order.OrderStatus.IN_PREPARATION, taken.getStatus());
+            assertEquals(Long.valueOf(results.indexOf(true)), taken.getBaristaChatId());
+        }
+    }
+
+    @Test
+    void racingTransitionsHaveOneWinner() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Order order = newOrder();
+
+            List<Boolean> results = race(Collections.nCopies(TAKERS,
+                    () -> orderService.transition(order.getOrderNumber(), Order.OrderStatus.PENDING, Order.OrderStatus.IN_PREPARATION)));
+
+            assertEquals(1, results.stream().filter(Boolean::booleanValue).count(),
+                    "Order " + order.getOrderNumber() + " was taken " + results);
+            assertEquals(Order.OrderStatus.IN_PREPARATION, reload(order).getStatus());
+        }
+    }
+
+    @Test
+    void takeRacingCancelLeavesTheWinnersStatus() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Order order = newOrder();
+
+            List<Boolean> results = race(List.of(
+                    () -> orderService.takeOrder(order.getOrderNumber(), 1L),
+                    () -> orderService.transition(order.getOrderNumber(), Order.OrderStatus.PENDING, Order.OrderStatus.CANCELLED)));
+
+            assertNotEquals(results.get(0), results.get(1), "Order " + order.getOrderNumber() + " results " + results);
+            Order.OrderStatus expected = results.get(0) ? Order.OrderStatus.IN_PREPARATION : Order.OrderStatus.CANCELLED;
+            assertEquals(expected, reload(order).getStatus());
+        }
+    }
+
+    @Test
+    void baristasTakingNextOrdersGetDisjointOrders() throws Exception {
+        for (int round = 0; round < BULK_ROUNDS; round++) {
+            CoffeeShop shop = newShop();
+            for (int i = 0; i < PENDING_ORDERS; i++) {
+                newOrder(shop);
+            }
+            List<Long> baristas = IntStream.range(0, TAKERS).mapToObj(i -> nextBaristaChatId.incrementAndGet()).toList();
+
+            List<List<Order>> taken = race(baristas.stream()
+                    .map(barista -> (Callable<List<Order>>) () -> orderService.takeNextOrders(shop, barista, TAKE_LIMIT))
+                    .toList());
+
+            Set<String> takenNumbers = new HashSet<>();
+            for (int i = 0; i < TAKERS; i++) {
+                assertTrue(taken.get(i).size() <= TAKE_LIMIT, "Barista took " + numbers(taken.get(i)));
+                for (Order order : taken.get(i)) {
+                    assertTrue(takenNumbers.add(order.getOrderNumber()), "Order " + order.getOrderNumber() + " was taken twice");
+                    assertEquals(Order.OrderStatus.IN_PREPARATION, order.getStatus());
+                    Order stored = reload(order);
+                    assertEquals(Order.OrderStatus.IN_PREPARATION, stored.getStatus());
+                    assertEquals(baristas.get(i), stored.getBaristaChatId());
+                    assertNotNull(stored.getTakenAt());
+                }
+            }
+            assertFalse(takenNumbers.isEmpty());
+            assertEquals(PENDING_ORDERS - takenNumbers.size(),
+                    orderService.getOrdersByShopAndStatus(shop, Order.OrderStatus.PENDING).size());
+        }
+    }
+
+    @Test
+    void markAllReadyMarksOnlyTheBaristasOrders() {
+        CoffeeShop shop = newShop();
+        long barista = nextBaristaChatId.incrementAndGet();
+        long otherBarista = nextBaristaChatId.incrementAndGet();
+        List<Order> own = List.of(newOrder(shop), newOrder(shop), newOrder(shop));
+        own.forEach(order -> assertTrue(orderService.takeOrder(order.getOrderNumber(), barista)));
+        Order others = newOrder(shop);
+        assertTrue(orderService.takeOrder(others.getOrderNumber(), otherBarista));
+        Order pending = newOrder(shop);
+
+        List<Order> ready = orderService.markAllReady(barista);
+
+        assertEquals(numbers(own), numbers(ready));
+        for (Order order : ready) {
+            assertEquals(Order.OrderStatus.READY, order.getStatus());
+            Order stored = reload(order);
+            assertEquals(Order.OrderStatus.READY, stored.getStatus());
+            assertNotNull(stored.getReadyAt());
+            assertFalse(stored.getReadyAt().isBefore(stored.getTakenAt()));
+            assertEquals(stored.getReadyAt(), stored.getUpdatedAt());
+        }
+        assertEquals(Order.OrderStatus.IN_PREPARATION, reload(others).getStatus());
+        assertNull(reload(others).getReadyAt());
+        assertEquals(Order.OrderStatus.PENDING, reload(pending).getStatus());
+        assertEquals(List.of(), orderService.markAllReady(barista));
+    }
+
+    @Test
+    void cancelStalePendingOrdersCancelsOnlyPendingOrdersBeforeTheCutoff() throws InterruptedException {
+        CoffeeShop shop = newShop();
+        List<Order> stale = List.of(newOrder(shop), newOrder(shop));
+        Order taken = newOrder(shop);
+        assertTrue(orderService.takeOrder(taken.getOrderNumber(), nextBaristaChatId.incrementAndGet()));
+        Thread.sleep(10);
+        LocalDateTime cutoff = LocalDateTime.now();
+        Thread.sleep(10);
+        Order fresh = newOrder(shop);
+
+        List<Order> cancelled = orderService.cancelStalePendingOrders(shop, cutoff);
+
+        assertEquals(numbers(stale), numbers(cancelled));
+        for (Order order : cancelled) {
+            assertEquals(Order.OrderStatus.CANCELLED, order.getStatus());
+            Order stored = reload(order);
+            assertEquals(Order.OrderStatus.CANCELLED, stored.getStatus());
+            assertNotNull(stored.getCancelledAt());
+            assertTrue(stored.getCancelledAt().isAfter(cutoff));
+            assertEquals(stored.getCancelledAt(), stored.getUpdatedAt());
+        }
+        assertEquals(Order.OrderStatus.IN_PREPARATION, reload(taken).getStatus());
+        assertNull(reload(taken).getCancelledAt());
+        assertEquals(Order.OrderStatus.PENDING, reload(fresh).getStatus());
+        assertEquals(List.of(), orderService.cancelStalePendingOrders(shop, cutoff));
+    }
+
+    private Order newOrder() {
+        return newOrder(coffeeShopRepository.findByCode("BIGROUP").orElseThrow());
+    }
+
+    private Order newOrder(CoffeeShop shop) {
+        return orderService.createOrder(1L, shop, "Капучино", "M", null, null, new BigDecimal("1200"));
+    }
+
+    private CoffeeShop newShop() {
+        String code = "TEST" + nextShop.incrementAndGet();
+        return coffeeShopRepository.save(CoffeeShop.builder().code(code).name(code).active(true).build());
+    }
+
+    private static List<String> numbers(List<Order> orders) {
+        return orders.stream().map(Order::getOrderNumber).toList();
+    }
+
+    private Order reload(Order order) {
+        return orderService.getOrderByNumber(order.getOrderNumber()).orElseThrow();
+    }
+
+    /**
+     * Runs all calls at once, released together from a latch so their updates overlap
+     *
+     * @return Results in the order of the calls
+     */
+    private <T> List<T> race(List<Callable<T>> calls) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> call : calls) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("com.kwonka.common.entity")
+    @EnableJpaRepositories("com.kwonka.common.repository")
+    @Import({OrderService.class, OrderNumberAllocator.class, DailyStatsRollupService.class, StageTimingService.class})
+    static class TestApplication {
+    }
+}
@@ -7,7 +7,7 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @SpringBootApplication
-@ComponentScan(basePackages = {"com.kwonka.customer", "com.kwonka.common.service"})
+@ComponentScan(basePackages = {"com.kwonka.customer", "com.kwonka.common.service", "com.kwonka.common.web"})
 @EntityScan("com.kwonka.common.entity")
 @EnableJpaRepositories("com.kwonka.common.repository")
 public class CustomerBotApplication {
@@ -2,34 +2,70 @@ package com.kwonka.customer.bot;
 
 import com.kwonka.common.entity.CoffeeShop;
 import com.kwonka.common.entity.Order;
+import com.kwonka.common.menu.CupSize;
+import com.kwonka.common.menu.MenuCatalog;
 import com.kwonka.common.service.CoffeeShopService;
 import com.kwonka.common.service.CustomerNotificationService;
+import com.kwonka.common.service.MenuCatalogService;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.CommandRouter;
+import com.kwonka.common.telegram.DerivedKeyboard;
+import com.kwonka.common.telegram.PrebuiltKeyboard;
+import com.kwonka.common.telegram.TelegramOutbox;
+import com.kwonka.common.telegram.UpdateDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 @Slf4j
 public class CustomerBot extends TelegramLongPollingBot {
 
+    private static final PrebuiltKeyboard PAYMENT_KEYBOARD = PrebuiltKeyboard.column("Оплатить");
+    private static final PrebuiltKeyboard PAID_KEYBOARD = PrebuiltKeyboard.column("Я оплатил(а)");
+    private static final PrebuiltKeyboard NEW_ORDER_KEYBOARD = PrebuiltKeyboard.column("Новый заказ");
+    private static final PrebuiltKeyboard CONFIRMATION_KEYBOARD = PrebuiltKeyboard.column("Да", "Изменить заказ", "Отмена");
+    private static final PrebuiltKeyboard START_KEYBOARD = PrebuiltKeyboard.column("Старт");
+    private static final PrebuiltKeyboard WANT_COFFEE_KEYBOARD = PrebuiltKeyboard.column("Хочу кофе");
+    private static final PrebuiltKeyboard ORDER_AGAIN_KEYBOARD = PrebuiltKeyboard.column("Сделать новый заказ");
+    private static final PrebuiltKeyboard ADDONS_KEYBOARD = PrebuiltKeyboard.column(
+            "Молоко (растительное)", "Сироп (ванильный, ореховый, карамельный)", "Без добавок");
+    private static final PrebuiltKeyboard ADDONS_WITH_MILK_KEYBOARD = PrebuiltKeyboard.column(
+            "Молоко (растительное)", "Сироп (ванильный, ореховый, карамельный)", "Убрать молоко", "Готово", "Без добавок");
+    private static final PrebuiltKeyboard ADDONS_WITH_SYRUP_KEYBOARD = PrebuiltKeyboard.column(
+            "Молоко (растительное)", "Сироп (ванильный, ореховый, карамельный)", "Убрать сироп", "Готово", "Без добавок");
+    private static final PrebuiltKeyboard ADDONS_WITH_MILK_AND_SYRUP_KEYBOARD = PrebuiltKeyboard.column(
+            "Молоко (растительное)", "Сироп (ванильный, ореховый, карамельный)", "Убрать молоко", "Убрать сироп", "Готово", "Без добавок");
+
     private final String botUsername;
     private final OrderService orderService;
     private final CoffeeShopService coffeeShopService;
     private final CustomerNotificationService customerNotificationService;
-
-    private final Map<Long, Map<String, String>> userSelections = new HashMap<>();
-    private final Map<Long, UserState> userStates = new HashMap<>();
-    private final Map<Long, String> userOrderNumbers = new HashMap<>();
-
-    private enum UserState {
+    private final MenuCatalogService menuCatalogService;
+    private final TelegramOutbox telegramOutbox;
+    private final UpdateDispatcher updateDispatcher;
+    private final CommandRouter<UserState> router;
+
+    private final ConversationStateStore<CustomerSession> sessions;
+
+    private final DerivedKeyboard<List<CoffeeShop>> coffeeShopKeyboard =
+            new DerivedKeyboard<>(shops -> PrebuiltKeyboard.column(shops.stream().map(CoffeeShop::getName).toList()));
+    private final DerivedKeyboard<MenuCatalog> drinkKeyboard = new DerivedKeyboard<>(CustomerBot::buildDrinkKeyboard);
+    private final DerivedKeyboard<MenuCatalog> milkKeyboard =
+            new DerivedKeyboard<>(catalog -> PrebuiltKeyboard.column(catalog.getMilkNames()));
+    private final DerivedKeyboard<MenuCatalog> syrupKeyboard =
+            new DerivedKeyboard<>(catalog -> PrebuiltKeyboard.column(catalog.getSyrupNames()));
+    // At most one keyboard per combination of sizes
+    private final Map<List<CupSize>, PrebuiltKeyboard> sizeKeyboards = new ConcurrentHashMap<>();
+
+    public enum UserState {
         START,
         INTRO,
         SELECTING_COFFEE_SHOP,
@@ -44,12 +80,20 @@ public class CustomerBot extends TelegramLongPollingBot {
         ORDER_COMPLETED
     }
 
-    public CustomerBot(String botToken, String botUsername, OrderService orderService, CoffeeShopService coffeeShopService, CustomerNotificationService customerNotificationService) {
-        super(botToken);
+    public CustomerBot(String botToken, String apiUrl, String botUsername, OrderService orderService, CoffeeShopService coffeeShopService, CustomerNotificationService customerNotificationService,
+                       MenuCatalogService menuCatalogService, ConversationStateStore<CustomerSession> sessions, int maxUpdatesInFlight, int perSecond,
+                       MeterRegistry meterRegistry) {
+        super(TelegramOutbox.newBotOptions(apiUrl), botToken);
+        this.telegramOutbox = new TelegramOutbox(this, "customer-bot", perSecond, meterRegistry);
+        this.updateDispatcher = new UpdateDispatcher("customer-bot", maxUpdatesInFlight, this::handleUpdate,
+                chatId -> getSession(chatId).state().name(), meterRegistry);
         this.botUsername = botUsername;
         this.orderService = orderService;
         this.coffeeShopService = coffeeShopService;
         this.customerNotificationService = customerNotificationService;
+        this.menuCatalogService = menuCatalogService;
+        this.sessions = sessions;
+        this.router = buildRouter();
     }
 
     @Override
@@ -59,186 +103,229 @@ public class CustomerBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        updateDispatcher.dispatch(update);
+    }
+
+    /**
+     * Takes an update delivered by webhook without blocking the request
+     *
+     * @return false if too many updates are in flight and it has to be delivered again
+     */
+    public boolean offerUpdate(Update update) {
+        return updateDispatcher.tryDispatch(update);
+    }
+
+    /**
+     * Handles one update, updates of the same chat never run concurrently
+     */
+    private void handleUpdate(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
             String messageText = update.getMessage().getText();
             long chatId = update.getMessage().getChatId();
 
             log.debug("Received message: '{}' from chatId: {}", messageText, chatId);
 
-            // Check for the "I've picked it up" message (step 11 -> 12 transition)
-            if (messageText.equals("Я забрал(а)")) {
-                // Find the latest ready order for this customer
-                List<Order> readyOrders = orderService.getOrdersByCustomerIdAndStatus(chatId, Order.OrderStatus.READY);
-
-                if (!readyOrders.isEmpty()) {
-                    // Sort by creation date (newest first)
-                    readyOrders.sort((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()));
-
-                    // Mark the most recent ready order as completed
-                    Order latestOrder = readyOrders.get(0);
-                    try {
-                        orderService.updateOrderStatus(latestOrder.getOrderNumber(), Order.OrderStatus.COMPLETED);
-                        log.info("Order {} marked as completed by customer {}", latestOrder.getOrderNumber(), chatId);
-
-                        // Send completion message (step 12)
-                        sendCompletionMessage(chatId);
-                    } catch (Exception e) {
-                        log.error("Error completing order for customer {}", chatId, e);
-                        SendMessage message = new SendMessage();
-                        message.setChatId(chatId);
-                        message.setText("Произошла ошибка при обработке вашего заказа. Пожалуйста, попробуйте еще раз.");
-                        try {
-                            execute(message);
-                        } catch (TelegramApiException ex) {
-                            log.error("Error sending error message to customer {}", chatId, ex);
-                        }
+            router.route(chatId, messageText);
+        }
+    }
+
+    /**
+     * The whole conversation as a table of state and button to what happens next
+     */
+    private CommandRouter<UserState> buildRouter() {
+        return CommandRouter.builder(UserState.class, chatId -> getSession(chatId).state())
+                // Step 11 -> 12, valid whatever the chat is doing
+                .command("Я забрал(а)", (chatId, text) -> handlePickedUp(chatId))
+                .command("/start", (chatId, text) -> {
+                    // Reset user state
+                    setState(chatId, UserState.START);
+                    clearUserSelections(chatId);
+                    sendWelcomeMessage(chatId);
+                })
+                .command("Новый заказ", (chatId, text) -> startNewOrder(chatId))
+                .command("Сделать новый заказ", (chatId, text) -> startNewOrder(chatId))
+
+                .on(UserState.START, "Старт", (chatId, text) -> {
+                    setState(chatId, UserState.INTRO);
+                    sendSecondPage(chatId);
+                })
+                .on(UserState.INTRO, "Хочу кофе", (chatId, text) -> {
+                    setState(chatId, UserState.SELECTING_COFFEE_SHOP);
+                    sendCoffeeShopSelectionPage(chatId);
+                })
+                .onAnyText(UserState.SELECTING_COFFEE_SHOP, this::handleCoffeeShopSelection)
+                .onAnyText(UserState.SELECTING_COFFEE, (chatId, text) -> {
+                    if (isValidCoffeeType(text)) {
+                        updateSession(chatId, session -> session.withCoffeeType(text));
+                        setState(chatId, UserState.SELECTING_SIZE);
+                        sendSizeSelectionPage(chatId);
+                    } else {
+                        handleUnknownCommand(chatId);
                     }
-                } else {
-                    // No ready orders found
-                    SendMessage message = new SendMessage();
-                    message.setChatId(chatId);
-                    message.setText("У вас нет готовых заказов в данный момент.");
-                    try {
-                        execute(message);
-                    } catch (TelegramApiException ex) {
-                        log.error("Error sending no orders message to customer {}", chatId, ex);
+                })
+                .onAnyText(UserState.SELECTING_SIZE, (chatId, text) -> {
+                    if (isValidSize(chatId, text)) {
+                        updateSession(chatId, session -> session.withSize(text));
+                        setState(chatId, UserState.SELECTING_ADDONS);
+                        sendAddonsSelectionPage(chatId);
+                    } else {
+                        handleUnknownCommand(chatId);
                     }
-                }
-                return;
-            }
-
-            if (messageText.equals("/start")) {
-                // Reset user state
-                userStates.put(chatId, UserState.START);
-                clearUserSelections(chatId);
-                sendWelcomeMessage(chatId);
-            } else if (messageText.equals("Новый заказ") || messageText.equals("Сделать новый заказ")) {
-                // Clear previous selections and start ordering process
-                clearUserSelections(chatId);
-                userStates.put(chatId, UserState.SELECTING_COFFEE_SHOP);
-                sendCoffeeShopSelectionPage(chatId);
-            } else {
-                // Get current state and handle accordingly
-                UserState currentState = userStates.getOrDefault(chatId, UserState.START);
-
-                switch (currentState) {
-                    case START:
-                        if (messageText.equals("Старт")) {
-                            userStates.put(chatId, UserState.INTRO);
-                            sendSecondPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case INTRO:
-                        if (messageText.equals("Хочу кофе")) {
-                            userStates.put(chatId, UserState.SELECTING_COFFEE_SHOP);
-                            sendCoffeeShopSelectionPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case SELECTING_COFFEE_SHOP:
-                        handleCoffeeShopSelection(chatId, messageText);
-                        break;
-
-                    case SELECTING_COFFEE:
-                        if (isValidCoffeeType(messageText)) {
-                            saveUserSelection(chatId, "coffeeType", messageText);
-                            userStates.put(chatId, UserState.SELECTING_SIZE);
-                            sendSizeSelectionPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case SELECTING_SIZE:
-                        if (isValidSize(messageText)) {
-                            saveUserSelection(chatId, "size", messageText);
-                            userStates.put(chatId, UserState.SELECTING_ADDONS);
-                            sendAddonsSelectionPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case SELECTING_ADDONS:
-                        handleAddonsSelection(chatId, messageText);
-                        break;
-
-                    case SELECTING_MILK:
-                        if (isValidMilkType(messageText)) {
-                            saveUserSelection(chatId, "milkType", messageText);
-                            userStates.put(chatId, UserState.SELECTING_ADDONS);
-                            sendAddonsSelectionPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case SELECTING_SYRUP:
-                        if (isValidSyrupType(messageText)) {
-                            saveUserSelection(chatId, "syrupType", messageText);
-                            userStates.put(chatId, UserState.SELECTING_ADDONS);
-                            sendAddonsSelectionPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case CONFIRMING_ORDER:
-                        handleOrderConfirmation(chatId, messageText);
-                        break;
-
-                    case PAYMENT_INIT:
-                        if (messageText.equals("Оплатить")) {
-                            userStates.put(chatId, UserState.PAYMENT_CONFIRM);
-                            sendPaymentConfirmPage(chatId);
-                        } else {
-                            handleUnknownCommand(chatId);
-                        }
-                        break;
-
-                    case PAYMENT_CONFIRM:
-                        if (messageText.equals("Я оплатил(а)")) {
-                            // Payment successful - create order in database
-                            createOrderInDatabase(chatId);
-                            userStates.put(chatId, UserState.ORDER_COMPLETED);
-                            sendOrderSuccessMessage(chatId);
-                        } else {
-                            // Pretend payment failed for testing
-                            sendPaymentRetryMessage(chatId);
-                        }
-                        break;
-
-                    default:
+                })
+
+                .on(UserState.SELECTING_ADDONS, "Молоко (растительное)", (chatId, text) -> {
+                    setState(chatId, UserState.SELECTING_MILK);
+                    sendMilkSelectionPage(chatId);
+                })
+                .on(UserState.SELECTING_ADDONS, "Сироп (ванильный, ореховый, карамельный)", (chatId, text) -> {
+                    setState(chatId, UserState.SELECTING_SYRUP);
+                    sendSyrupSelectionPage(chatId);
+                })
+                .on(UserState.SELECTING_ADDONS, "Убрать молоко", (chatId, text) -> {
+                    updateSession(chatId, session -> session.withMilkType(null));
+                    sendAddonsSelectionPage(chatId);
+                })
+                .on(UserState.SELECTING_ADDONS, "Убрать сироп", (chatId, text) -> {
+                    updateSession(chatId, session -> session.withSyrupType(null));
+                    sendAddonsSelectionPage(chatId);
+                })
+                .on(UserState.SELECTING_ADDONS, "Без добавок", (chatId, text) -> {
+                    // Remove any selections and move to the next step
+                    updateSession(chatId, session -> session.withMilkType(null).withSyrupType(null));
+                    setState(chatId, UserState.CONFIRMING_ORDER);
+                    sendOrderSummary(chatId);
+                })
+                .on(UserState.SELECTING_ADDONS, "Готово", (chatId, text) -> {
+                    setState(chatId, UserState.CONFIRMING_ORDER);
+                    sendOrderSummary(chatId);
+                })
+                .onAnyText(UserState.SELECTING_MILK, (chatId, text) -> {
+                    if (isValidMilkType(text)) {
+                        updateSession(chatId, session -> session.withMilkType(text));
+                        setState(chatId, UserState.SELECTING_ADDONS);
+                        sendAddonsSelectionPage(chatId);
+                    } else {
                         handleUnknownCommand(chatId);
-                        break;
-                }
+                    }
+                })
+                .onAnyText(UserState.SELECTING_SYRUP, (chatId, text) -> {
+                    if (isValidSyrupType(text)) {
+                        updateSession(chatId, session -> session.withSyrupType(text));
+                        setState(chatId, UserState.SELECTING_ADDONS);
+                        sendAddonsSelectionPage(chatId);
+                    } else {
+                        handleUnknownCommand(chatId);
+                    }
+                })
+
+                .on(UserState.CONFIRMING_ORDER, "Да", (chatId, text) -> {
+                    // Move to payment flow
+                    setState(chatId, UserState.PAYMENT_INIT);
+                    sendPaymentInitPage(chatId);
+                })
+                .on(UserState.CONFIRMING_ORDER, "Изменить заказ", (chatId, text) -> {
+                    // Go back to add-ons selection page instead of coffee selection
+                    setState(chatId, UserState.SELECTING_ADDONS);
+                    sendAddonsSelectionPage(chatId);
+                })
+                .on(UserState.CONFIRMING_ORDER, "Отмена", (chatId, text) -> {
+                    // Cancel order and restart
+                    clearUserSelections(chatId);
+                    setState(chatId, UserState.START);
+                    sendWelcomeMessage(chatId);
+                })
+
+                .on(UserState.PAYMENT_INIT, "Оплатить", (chatId, text) -> {
+                    setState(chatId, UserState.PAYMENT_CONFIRM);
+                    sendPaymentConfirmPage(chatId);
+                })
+                .on(UserState.PAYMENT_CONFIRM, "Я оплатил(а)", (chatId, text) -> {
+                    // Payment successful - create order in database
+                    if (createOrderInDatabase(chatId)) {
+                        setState(chatId, UserState.ORDER_COMPLETED);
+                        sendOrderSuccessMessage(chatId);
+                    }
+                })
+                // Pretend payment failed for testing
+                .onAnyText(UserState.PAYMENT_CONFIRM, (chatId, text) -> sendPaymentRetryMessage(chatId))
+
+                .unknown((chatId, text) -> handleUnknownCommand(chatId))
+                .build();
+    }
+
+    private void startNewOrder(long chatId) {
+        // Clear previous selections and start ordering process
+        clearUserSelections(chatId);
+        setState(chatId, UserState.SELECTING_COFFEE_SHOP);
+        sendCoffeeShopSelectionPage(chatId);
+    }
+
+    private void handlePickedUp(long chatId) {
+        // Find the latest ready order for this customer
+        List<Order> readyOrders = orderService.getOrdersByCustomerIdAndStatus(chatId, Order.OrderStatus.READY);
+
+        if (readyOrders.isEmpty()) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("У вас нет готовых заказов в данный момент.");
+            telegramOutbox.send(message);
+            return;
+        }
+
+        // Sort by creation date (newest first)
+        readyOrders.sort((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()));
+
+        // Mark the most recent ready order as completed
+        Order latestOrder = readyOrders.get(0);
+        try {
+            // A repeated tap loses the transition and gets no second completion message
+            if (orderService.transition(latestOrder.getOrderNumber(), Order.OrderStatus.READY, Order.OrderStatus.COMPLETED)) {
+                log.info("Order {} marked as completed by customer {}", latestOrder.getOrderNumber(), chatId);
+
+                // Send completion message (step 12)
+                sendCompletionMessage(chatId);
             }
+        } catch (Exception e) {
+            log.error("Error completing order for customer {}", chatId, e);
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("Произошла ошибка при обработке вашего заказа. Пожалуйста, попробуйте еще раз.");
+            telegramOutbox.send(message);
         }
     }
 
-    private void createOrderInDatabase(long chatId) {
+    /**
+     * Creates the order of the current selection, or tells the customer why it could not be placed
+     * and takes them back to where they can fix it
+     *
+     * @return true if the order was created
+     */
+    private boolean createOrderInDatabase(long chatId) {
         try {
-            String coffeeType = getUserSelection(chatId, "coffeeType");
-            String size = getSizeLabel(getUserSelection(chatId, "size"));
-            String milkType = getUserSelection(chatId, "milkType");
-            String syrupType = getUserSelection(chatId, "syrupType");
-            BigDecimal totalPrice = new BigDecimal(calculateTotalPrice(chatId));
+            String coffeeType = getSession(chatId).coffeeType();
+            String size = getSizeLabel(getSession(chatId).size());
+            String milkType = getSession(chatId).milkType();
+            String syrupType = getSession(chatId).syrupType();
 
             // Get the selected coffee shop
-            String coffeeShopIdStr = getUserSelection(chatId, "coffeeShopId");
-            if (coffeeShopIdStr == null) {
+            Long coffeeShopId = getSession(chatId).coffeeShopId();
+            Optional<CoffeeShop> coffeeShop = coffeeShopId != null ? coffeeShopService.findById(coffeeShopId) : Optional.empty();
+            if (coffeeShop.isEmpty()) {
                 log.error("No coffee shop selected for chatId: {}", chatId);
-                return;
+                sendNotice(chatId, "Не удалось определить кофейню. Пожалуйста, выберите её ещё раз.");
+                clearUserSelections(chatId);
+                setState(chatId, UserState.SELECTING_COFFEE_SHOP);
+                sendCoffeeShopSelectionPage(chatId);
+                return false;
             }
 
-            Long coffeeShopId = Long.parseLong(coffeeShopIdStr);
-            CoffeeShop coffeeShop = coffeeShopService.findById(coffeeShopId)
-                    .orElseThrow(() -> new RuntimeException("Coffee shop not found: " + coffeeShopId));
+            int price = calculateTotalPrice(chatId);
+            if (price == MenuCatalog.UNAVAILABLE) {
+                log.warn("Order of chatId {} is no longer on the menu", chatId);
+                sendDrinkUnavailable(chatId);
+                return false;
+            }
+            BigDecimal totalPrice = new BigDecimal(price);
 
             // Use chatId as customer ID for now
             Long customerId = chatId;
@@ -246,7 +333,7 @@ public class CustomerBot extends TelegramLongPollingBot {
             // Create the order using OrderService
             Order order = orderService.createOrder(
                     customerId,
-                    coffeeShop,
+                    coffeeShop.get(),
                     coffeeType,
                     size,
                     milkType,
@@ -254,153 +341,93 @@ public class CustomerBot extends TelegramLongPollingBot {
                     totalPrice);
 
             // Store the order number for reference
-            userOrderNumbers.put(chatId, order.getOrderNumber());
+            updateSession(chatId, session -> session.withOrderNumber(order.getOrderNumber()));
 
             log.info("Created order in database: {}", order);
+            return true;
         } catch (Exception e) {
             log.error("Error creating order in database for chatId: {}", chatId, e);
+            // Keep the selection, the customer can confirm the payment again
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText("Не удалось оформить заказ из-за технической ошибки. Пожалуйста, нажмите кнопку ещё раз.");
+            message.setReplyMarkup(PAID_KEYBOARD);
+            telegramOutbox.send(message);
+            return false;
         }
     }
 
-    private void saveUserSelection(long chatId, String key, String value) {
-        userSelections.computeIfAbsent(chatId, k -> new HashMap<>()).put(key, value);
+    private void sendNotice(long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(text);
+        telegramOutbox.send(message);
     }
 
-    private String getUserSelection(long chatId, String key) {
-        Map<String, String> selections = userSelections.get(chatId);
-        return selections != null ? selections.get(key) : null;
+    /**
+     * Sends the customer back to the drink choice when their selection has left the menu
+     */
+    private void sendDrinkUnavailable(long chatId) {
+        sendNotice(chatId, "К сожалению, этот напиток сейчас недоступен. Пожалуйста, выберите другой.");
+
+        // Keep the coffee shop, the drink has to be chosen again
+        updateSession(chatId, selection -> selection.withCoffeeType(null).withSize(null).withMilkType(null).withSyrupType(null));
+        setState(chatId, UserState.SELECTING_COFFEE);
+        sendCoffeeSelectionPage(chatId);
     }
 
-    private void removeUserSelection(long chatId, String key) {
-        Map<String, String> selections = userSelections.get(chatId);
-        if (selections != null) {
-            selections.remove(key);
-        }
+    private CustomerSession getSession(long chatId) {
+        CustomerSession session = sessions.get(chatId);
+        return session != null ? session : CustomerSession.NEW;
+    }
+
+    private void updateSession(long chatId, UnaryOperator<CustomerSession> change) {
+        sessions.put(chatId, change.apply(getSession(chatId)));
+    }
+
+    private void setState(long chatId, UserState state) {
+        updateSession(chatId, session -> session.withState(state));
     }
 
     private void clearUserSelections(long chatId) {
-        userSelections.remove(chatId);
+        updateSession(chatId, CustomerSession::clearSelections);
     }
 
     private boolean isValidCoffeeType(String messageText) {
-        List<String> validCoffeeTypes = Arrays.asList(
-                "Американо", "Латте", "Капучино", "Раф", "Флэт Уайт"
-        );
-        return validCoffeeTypes.contains(messageText);
+        return menuCatalogService.getCatalog().isDrink(messageText);
     }
 
-    private boolean isValidSize(String messageText) {
-        List<String> validSizes = Arrays.asList(
-                "Маленький 250 мл", "Средний 350 мл", "Большой 450 мл"
-        );
-        return validSizes.contains(messageText);
+    private boolean isValidSize(long chatId, String messageText) {
+        CustomerSession session = getSession(chatId);
+        CupSize size = CupSize.fromLabel(messageText);
+        return size != null && menuCatalogService.getCatalog().getSizes(session.coffeeShopId(), session.coffeeType()).contains(size);
     }
 
     private boolean isValidMilkType(String messageText) {
-        List<String> validMilkTypes = Arrays.asList(
-                "Кокосовое", "Миндальное", "Фундучное", "Овсяное"
-        );
-        return validMilkTypes.contains(messageText);
+        return menuCatalogService.getCatalog().isMilk(messageText);
     }
 
     private boolean isValidSyrupType(String messageText) {
-        List<String> validSyrupTypes = Arrays.asList(
-                "Ванильный", "Ореховый", "Карамельный"
-        );
-        return validSyrupTypes.contains(messageText);
+        return menuCatalogService.getCatalog().isSyrup(messageText);
     }
 
     private void handleCoffeeShopSelection(long chatId, String messageText) {
         // Find the coffee shop by name - exact match
-        Optional<CoffeeShop> coffeeShopOpt = coffeeShopService.getAllActiveShops().stream()
-                .filter(shop -> shop.getName().equals(messageText))
-                .findFirst();
+        Optional<CoffeeShop> coffeeShopOpt = coffeeShopService.findActiveShopByName(messageText);
 
         if (coffeeShopOpt.isPresent()) {
             // Save the selected coffee shop ID
-            saveUserSelection(chatId, "coffeeShopId", String.valueOf(coffeeShopOpt.get().getId()));
+            updateSession(chatId, session -> session.withCoffeeShopId(coffeeShopOpt.get().getId()));
 
             // Move to the next step
-            userStates.put(chatId, UserState.SELECTING_COFFEE);
+            setState(chatId, UserState.SELECTING_COFFEE);
             sendCoffeeSelectionPage(chatId);
         } else {
             SendMessage message = new SendMessage();
             message.setChatId(chatId);
             message.setText("Пожалуйста, выберите кофейню из списка.");
 
-            try {
-                execute(message);
-            } catch (TelegramApiException e) {
-                log.error("Error sending invalid coffee shop message to chatId: {}", chatId, e);
-            }
-        }
-    }
-
-    private void handleAddonsSelection(long chatId, String messageText) {
-        switch (messageText) {
-            case "Молоко (растительное)":
-                userStates.put(chatId, UserState.SELECTING_MILK);
-                sendMilkSelectionPage(chatId);
-                break;
-
-            case "Сироп (ванильный, ореховый, карамельный)":
-                userStates.put(chatId, UserState.SELECTING_SYRUP);
-                sendSyrupSelectionPage(chatId);
-                break;
-
-            case "Убрать молоко":
-                removeUserSelection(chatId, "milkType");
-                sendAddonsSelectionPage(chatId);
-                break;
-
-            case "Убрать сироп":
-                removeUserSelection(chatId, "syrupType");
-                sendAddonsSelectionPage(chatId);
-                break;
-
-            case "Без добавок":
-                // Remove any selections and move to the next step
-                removeUserSelection(chatId, "milkType");
-                removeUserSelection(chatId, "syrupType");
-                userStates.put(chatId, UserState.CONFIRMING_ORDER);
-                sendOrderSummary(chatId);
-                break;
-
-            case "Готово":
-                userStates.put(chatId, UserState.CONFIRMING_ORDER);
-                sendOrderSummary(chatId);
-                break;
-
-            default:
-                handleUnknownCommand(chatId);
-                break;
-        }
-    }
-
-    private void handleOrderConfirmation(long chatId, String messageText) {
-        switch (messageText) {
-            case "Да":
-                // Move to payment flow
-                userStates.put(chatId, UserState.PAYMENT_INIT);
-                sendPaymentInitPage(chatId);
-                break;
-
-            case "Изменить заказ":
-                // Go back to add-ons selection page instead of coffee selection
-                userStates.put(chatId, UserState.SELECTING_ADDONS);
-                sendAddonsSelectionPage(chatId);
-                break;
-
-            case "Отмена":
-                // Cancel order and restart
-                clearUserSelections(chatId);
-                userStates.put(chatId, UserState.START);
-                sendWelcomeMessage(chatId);
-                break;
-
-            default:
-                handleUnknownCommand(chatId);
-                break;
+            telegramOutbox.send(message);
         }
     }
 
@@ -409,26 +436,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Собрали заказ 👋\nТеперь, чтобы запустить его в работу, нужно произвести оплату.");
 
-        // Create keyboard with payment button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        message.setReplyMarkup(PAYMENT_KEYBOARD);
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Оплатить"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Payment init page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending payment init page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Payment init page queued for chatId: {}", chatId);
     }
 
     private void sendPaymentConfirmPage(long chatId) {
@@ -436,26 +447,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Получилось оплатить?\nКак только завершишь, нажми кнопку ниже.");
 
-        // Create keyboard with payment confirmation button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Я оплатил(а)"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        message.setReplyMarkup(PAID_KEYBOARD);
 
-        try {
-            execute(message);
-            log.debug("Payment confirmation page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending payment confirmation page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Payment confirmation page queued for chatId: {}", chatId);
     }
 
     private void sendPaymentRetryMessage(long chatId) {
@@ -463,30 +458,14 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Понимаю, что-то пошло не так с оплатой? Не переживай, такое бывает. Попробуй ещё раз 👋");
 
-        // Keep the same keyboard for retry
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        message.setReplyMarkup(PAID_KEYBOARD);
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Я оплатил(а)"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Payment retry message sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending payment retry message to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Payment retry message queued for chatId: {}", chatId);
     }
 
     private void sendOrderSuccessMessage(long chatId) {
-        String orderNumber = userOrderNumbers.get(chatId);
+        String orderNumber = getSession(chatId).orderNumber();
         String messageText = "Заказ принят в работу! Мы уведомим вас, когда он будет готов.";
 
         if (orderNumber != null) {
@@ -499,104 +478,40 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText(messageText);
 
-        // Create keyboard to restart
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Новый заказ"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        message.setReplyMarkup(NEW_ORDER_KEYBOARD);
 
-        try {
-            execute(message);
-            log.debug("Order success message sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending order success message to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Order success message queued for chatId: {}", chatId);
     }
 
+    /**
+     * @return price of the current selection in tenge, or MenuCatalog.UNAVAILABLE if it is no longer on the menu
+     */
     private int calculateTotalPrice(long chatId) {
-        String coffeeType = getUserSelection(chatId, "coffeeType");
-        String size = getUserSelection(chatId, "size");
-        String milkType = getUserSelection(chatId, "milkType");
-        String syrupType = getUserSelection(chatId, "syrupType");
-
-        int totalPrice = 0;
-
-        // Get size in ml
-        int sizeInMl = 0;
-        if (size != null) {
-            if (size.contains("250")) {
-                sizeInMl = 250;
-            } else if (size.contains("350")) {
-                sizeInMl = 350;
-            } else if (size.contains("450")) {
-                sizeInMl = 450;
-            }
-        }
-
-        // Coffee base price
-        if (coffeeType != null) {
-            switch (coffeeType) {
-                case "Американо":
-                    if (sizeInMl == 250) totalPrice += 990;
-                    else if (sizeInMl == 350) totalPrice += 1090;
-                    else if (sizeInMl == 450) totalPrice += 1190;
-                    break;
-                case "Флэт Уайт":
-                    totalPrice += 1090; // Only 250ml
-                    break;
-                case "Латте":
-                case "Капучино":
-                    if (sizeInMl == 250) totalPrice += 1090;
-                    else if (sizeInMl == 350) totalPrice += 1190;
-                    else if (sizeInMl == 450) totalPrice += 1290;
-                    break;
-                case "Раф":
-                    if (sizeInMl == 250) totalPrice += 1290;
-                    else if (sizeInMl == 350) totalPrice += 1490;
-                    else if (sizeInMl == 450) totalPrice += 1590;
-                    break;
-            }
-        }
-
-        // Add-ons
-        if (milkType != null) {
-            if (sizeInMl == 250) totalPrice += 350;
-            else if (sizeInMl == 350) totalPrice += 450;
-            else if (sizeInMl == 450) totalPrice += 550;
-        }
-
-        if (syrupType != null) {
-            totalPrice += 160;
-        }
-
-        return totalPrice;
+        CustomerSession session = getSession(chatId);
+        return menuCatalogService.getCatalog().price(session.coffeeShopId(), session.coffeeType(),
+                CupSize.fromLabel(session.size()), session.milkType(), session.syrupType());
     }
 
     private String getSizeLabel(String size) {
         if (size == null) return "";
 
-        if (size.contains("Маленький")) return "Маленький";
-        else if (size.contains("Средний")) return "Средний";
-        else if (size.contains("Большой")) return "Большой";
-
-        return size;
+        CupSize cupSize = CupSize.fromLabel(size);
+        return cupSize != null ? cupSize.getName() : size;
     }
 
     private void sendOrderSummary(long chatId) {
-        String coffeeType = getUserSelection(chatId, "coffeeType");
-        String size = getUserSelection(chatId, "size");
-        String milkType = getUserSelection(chatId, "milkType");
-        String syrupType = getUserSelection(chatId, "syrupType");
+        String coffeeType = getSession(chatId).coffeeType();
+        String size = getSession(chatId).size();
+        String milkType = getSession(chatId).milkType();
+        String syrupType = getSession(chatId).syrupType();
         int totalPrice = calculateTotalPrice(chatId);
 
+        if (totalPrice == MenuCatalog.UNAVAILABLE) {
+            sendDrinkUnavailable(chatId);
+            return;
+        }
+
         StringBuilder messageText = new StringBuilder("Вот что получилось:\n");
         messageText.append("Напиток: ").append(coffeeType).append("\n");
         messageText.append("Размер: ").append(getSizeLabel(size)).append("\n");
@@ -616,35 +531,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText(messageText.toString());
 
-        // Create keyboard with confirmation options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Да"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Изменить заказ"));
-        keyboard.add(row2);
-
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Отмена"));
-        keyboard.add(row3);
+        message.setReplyMarkup(CONFIRMATION_KEYBOARD);
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Order summary sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending order summary to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Order summary queued for chatId: {}", chatId);
     }
 
     private void sendWelcomeMessage(long chatId) {
@@ -653,26 +543,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setText("Добро пожаловать в One Shott Coffee! ☕️\n" +
                 "Нажми «Старт» внизу 👇");
 
-        // Create keyboard with Start button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Старт"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        message.setReplyMarkup(START_KEYBOARD);
 
-        try {
-            execute(message);
-            log.debug("Welcome message sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending welcome message to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Welcome message queued for chatId: {}", chatId);
     }
 
     private void sendSecondPage(long chatId) {
@@ -680,26 +554,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Привет, я Kwonka! Помогу заказать кофе, чтобы ты не ждал в очереди 🙌");
 
-        // Create keyboard with "Хочу кофе" button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Хочу кофе"));
-        keyboard.add(row);
+        message.setReplyMarkup(WANT_COFFEE_KEYBOARD);
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Second page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending second page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Second page queued for chatId: {}", chatId);
     }
 
     private void sendCoffeeShopSelectionPage(long chatId) {
@@ -707,33 +565,11 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Где тебе будет удобно забрать кофе?");
 
-        // Create keyboard with coffee shop options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        // Fetch active coffee shops from the database
-        List<CoffeeShop> coffeeShops = coffeeShopService.getAllActiveShops();
-
-        for (CoffeeShop shop : coffeeShops) {
-            KeyboardRow row = new KeyboardRow();
-            // Remove the icon prefix
-            row.add(new KeyboardButton(shop.getName()));
-            keyboard.add(row);
-        }
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        // Active coffee shops, rebuilt only when the shop list changes
+        message.setReplyMarkup(coffeeShopKeyboard.get(coffeeShopService.getAllActiveShops()));
 
-        try {
-            execute(message);
-            log.debug("Coffee shop selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending coffee shop selection page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Coffee shop selection page queued for chatId: {}", chatId);
     }
 
     private void sendCoffeeSelectionPage(long chatId) {
@@ -741,40 +577,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Что будем пить сегодня?");
 
-        // Create keyboard with coffee options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        // Row 1: Американо, Латте
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Американо"));
-        row1.add(new KeyboardButton("Латте"));
-        keyboard.add(row1);
-
-        // Row 2: Капучино, Раф
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Капучино"));
-        row2.add(new KeyboardButton("Раф"));
-        keyboard.add(row2);
-
-        // Row 3: Флэт Уайт
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Флэт Уайт"));
-        keyboard.add(row3);
+        message.setReplyMarkup(drinkKeyboard.get(menuCatalogService.getCatalog()));
 
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Coffee selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending coffee selection page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Coffee selection page queued for chatId: {}", chatId);
     }
 
     private void sendSizeSelectionPage(long chatId) {
@@ -782,45 +588,14 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Какой размер выберем?");
 
-        // Create keyboard with size options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        String coffeeType = getUserSelection(chatId, "coffeeType");
+        // Only the sizes the drink is offered in at the selected coffee shop
+        CustomerSession session = getSession(chatId);
+        List<CupSize> sizes = menuCatalogService.getCatalog().getSizes(session.coffeeShopId(), session.coffeeType());
+        message.setReplyMarkup(sizeKeyboards.computeIfAbsent(sizes,
+                offered -> PrebuiltKeyboard.column(offered.stream().map(CupSize::getLabel).toList())));
 
-        // Флэт Уайт only comes in small size
-        if ("Флэт Уайт".equals(coffeeType)) {
-            KeyboardRow row = new KeyboardRow();
-            row.add(new KeyboardButton("Маленький 250 мл"));
-            keyboard.add(row);
-        } else {
-            // Add size options as separate rows
-            KeyboardRow row1 = new KeyboardRow();
-            row1.add(new KeyboardButton("Маленький 250 мл"));
-            keyboard.add(row1);
-
-            KeyboardRow row2 = new KeyboardRow();
-            row2.add(new KeyboardButton("Средний 350 мл"));
-            keyboard.add(row2);
-
-            KeyboardRow row3 = new KeyboardRow();
-            row3.add(new KeyboardButton("Большой 450 мл"));
-            keyboard.add(row3);
-        }
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Size selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending size selection page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Size selection page queued for chatId: {}", chatId);
     }
 
     private void sendAddonsSelectionPage(long chatId) {
@@ -830,8 +605,8 @@ public class CustomerBot extends TelegramLongPollingBot {
         // Create message text with current selections if any
         StringBuilder messageText = new StringBuilder("Хочешь добавить что-нибудь вкусненькое?");
 
-        String milkType = getUserSelection(chatId, "milkType");
-        String syrupType = getUserSelection(chatId, "syrupType");
+        String milkType = getSession(chatId).milkType();
+        String syrupType = getSession(chatId).syrupType();
 
         if (milkType != null || syrupType != null) {
             messageText.append("\n\nТвои текущие добавки:");
@@ -845,54 +620,19 @@ public class CustomerBot extends TelegramLongPollingBot {
 
         message.setText(messageText.toString());
 
-        // Create keyboard with add-on options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Молоко (растительное)"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Сироп (ванильный, ореховый, карамельный)"));
-        keyboard.add(row2);
-
-        // Add buttons to remove selections if they exist
-        if (milkType != null) {
-            KeyboardRow rowMilk = new KeyboardRow();
-            rowMilk.add(new KeyboardButton("Убрать молоко"));
-            keyboard.add(rowMilk);
-        }
-
-        if (syrupType != null) {
-            KeyboardRow rowSyrup = new KeyboardRow();
-            rowSyrup.add(new KeyboardButton("Убрать сироп"));
-            keyboard.add(rowSyrup);
-        }
-
-        if (milkType != null || syrupType != null) {
-            KeyboardRow rowNext = new KeyboardRow();
-            rowNext.add(new KeyboardButton("Готово"));
-            keyboard.add(rowNext);
+        // Buttons to remove selections are shown only for the add-ons already chosen
+        if (milkType != null && syrupType != null) {
+            message.setReplyMarkup(ADDONS_WITH_MILK_AND_SYRUP_KEYBOARD);
+        } else if (milkType != null) {
+            message.setReplyMarkup(ADDONS_WITH_MILK_KEYBOARD);
+        } else if (syrupType != null) {
+            message.setReplyMarkup(ADDONS_WITH_SYRUP_KEYBOARD);
+        } else {
+            message.setReplyMarkup(ADDONS_KEYBOARD);
         }
 
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Без добавок"));
-        keyboard.add(row3);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Add-ons selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending add-ons selection page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Add-ons selection page queued for chatId: {}", chatId);
     }
 
     private void sendMilkSelectionPage(long chatId) {
@@ -900,39 +640,10 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Выберите тип растительного молока:");
 
-        // Create keyboard with milk options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
+        message.setReplyMarkup(milkKeyboard.get(menuCatalogService.getCatalog()));
 
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Кокосовое"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Миндальное"));
-        keyboard.add(row2);
-
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Фундучное"));
-        keyboard.add(row3);
-
-        KeyboardRow row4 = new KeyboardRow();
-        row4.add(new KeyboardButton("Овсяное"));
-        keyboard.add(row4);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
-
-        try {
-            execute(message);
-            log.debug("Milk selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending milk selection page to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Milk selection page queued for chatId: {}", chatId);
     }
 
     private void sendSyrupSelectionPage(long chatId) {
@@ -940,35 +651,22 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Выберите сироп:");
 
-        // Create keyboard with syrup options
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-
-        KeyboardRow row1 = new KeyboardRow();
-        row1.add(new KeyboardButton("Ванильный"));
-        keyboard.add(row1);
-
-        KeyboardRow row2 = new KeyboardRow();
-        row2.add(new KeyboardButton("Ореховый"));
-        keyboard.add(row2);
+        message.setReplyMarkup(syrupKeyboard.get(menuCatalogService.getCatalog()));
 
-        KeyboardRow row3 = new KeyboardRow();
-        row3.add(new KeyboardButton("Карамельный"));
-        keyboard.add(row3);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        telegramOutbox.send(message);
+        log.debug("Syrup selection page queued for chatId: {}", chatId);
+    }
 
-        try {
-            execute(message);
-            log.debug("Syrup selection page sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending syrup selection page to chatId: {}", chatId, e);
+    /**
+     * Two drinks per row, in menu order
+     */
+    private static PrebuiltKeyboard buildDrinkKeyboard(MenuCatalog catalog) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> drinks = catalog.getDrinkNames();
+        for (int i = 0; i < drinks.size(); i += 2) {
+            rows.add(drinks.subList(i, Math.min(i + 2, drinks.size())));
         }
+        return PrebuiltKeyboard.of(rows);
     }
 
     private void handleUnknownCommand(long chatId) {
@@ -976,11 +674,7 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Извините, я не понимаю эту команду. Пожалуйста, воспользуйтесь предложенными кнопками или отправьте /start, чтобы начать заново.");
 
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Error sending unknown command message to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
     }
 
     /**
@@ -991,25 +685,9 @@ public class CustomerBot extends TelegramLongPollingBot {
         message.setChatId(chatId);
         message.setText("Спасибо за заказ! Заглядывайте снова - мы уже скучаем 💛");
 
-        // Create keyboard with "New order" button
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        keyboardMarkup.setSelective(true);
-
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        KeyboardRow row = new KeyboardRow();
-        row.add(new KeyboardButton("Сделать новый заказ"));
-        keyboard.add(row);
-
-        keyboardMarkup.setKeyboard(keyboard);
-        message.setReplyMarkup(keyboardMarkup);
+        message.setReplyMarkup(ORDER_AGAIN_KEYBOARD);
 
-        try {
-            execute(message);
-            log.debug("Completion message sent to chatId: {}", chatId);
-        } catch (TelegramApiException e) {
-            log.error("Error sending completion message to chatId: {}", chatId, e);
-        }
+        telegramOutbox.send(message);
+        log.debug("Completion message queued for chatId: {}", chatId);
     }
 }
\ No newline at end of file
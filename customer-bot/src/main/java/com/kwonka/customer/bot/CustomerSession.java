@@ -0,0 +1,52 @@
+package com.kwonka.customer.bot;
+
+/**
+ * Conversation state of one customer chat: where they are in the ordering flow,
+ * the drink being put together and the number of their last order
+ */
+public record CustomerSession(CustomerBot.UserState state,
+                              Long coffeeShopId,
+                              String coffeeType,
+                              String size,
+                              String milkType,
+                              String syrupType,
+                              String orderNumber) {
+
+    static final CustomerSession NEW = new CustomerSession(CustomerBot.UserState.START, null, null, null, null, null, null);
+
+    CustomerSession withState(CustomerBot.UserState state) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withCoffeeShopId(Long coffeeShopId) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withCoffeeType(String coffeeType) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withSize(String size) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withMilkType(String milkType) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withSyrupType(String syrupType) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    CustomerSession withOrderNumber(String orderNumber) {
+        return new CustomerSession(state, coffeeShopId, coffeeType, size, milkType, syrupType, orderNumber);
+    }
+
+    /**
+     * Drops the drink being put together and the number of the last order, keeps the state.
+     * Called when a new order starts, so its confirmation never shows the previous number.
+     */
+    CustomerSession clearSelections() {
+        return new CustomerSession(state, null, null, null, null, null, null);
+    }
+}
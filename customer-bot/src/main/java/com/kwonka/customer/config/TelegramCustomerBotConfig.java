@@ -1,12 +1,19 @@
 package com.kwonka.customer.config;
 
 import com.kwonka.common.service.CoffeeShopService;
+import com.kwonka.common.service.ConversationStateStoreFactory;
 import com.kwonka.common.service.CustomerNotificationService;
+import com.kwonka.common.service.MenuCatalogService;
 import com.kwonka.common.service.OrderService;
+import com.kwonka.common.state.ConversationStateStore;
+import com.kwonka.common.telegram.TelegramWebhook;
 import com.kwonka.customer.bot.CustomerBot;
+import com.kwonka.customer.bot.CustomerSession;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -26,23 +33,61 @@ public class TelegramCustomerBotConfig {
     @Value("${telegram.customer.bot.token}")
     private String customerBotToken;
 
+    @Value("${telegram.api-url:https://api.telegram.org/bot}")
+    private String apiUrl;
+
+    @Value("${kwonka.updates.max-in-flight:256}")
+    private int maxUpdatesInFlight;
+
+    @Value("${kwonka.telegram.per-second.customer}")
+    private int perSecond;
+
+    @Value("${telegram.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${telegram.webhook.secret-token:}")
+    private String webhookSecretToken;
+
+    @Value("${telegram.webhook.max-connections:40}")
+    private int webhookMaxConnections;
+
     @Autowired
     private OrderService orderService;
 
     @Autowired
     private CoffeeShopService coffeeShopService;
 
+    @Autowired
+    private MenuCatalogService menuCatalogService;
+
     @Bean(name = "baristaCustomerNotificationService")
-    public CustomerNotificationService customerNotificationService() {
-        return new CustomerNotificationService(customerBotToken);
+    public CustomerNotificationService customerNotificationService(MeterRegistry meterRegistry) {
+        return new CustomerNotificationService(customerBotToken, apiUrl, perSecond, meterRegistry);
+    }
+
+    @Bean
+    public ConversationStateStore<CustomerSession> customerSessions(ConversationStateStoreFactory stateStoreFactory) {
+        return stateStoreFactory.create("customer", CustomerSession.class);
+    }
+
+    @Bean
+    public CustomerBot oneShotCoffeeBot(CustomerNotificationService customerNotificationService,
+                                        ConversationStateStore<CustomerSession> customerSessions,
+                                        MeterRegistry meterRegistry) {
+        return new CustomerBot(botToken, apiUrl, botUsername, orderService, coffeeShopService, customerNotificationService,
+                menuCatalogService, customerSessions, maxUpdatesInFlight, perSecond, meterRegistry);
     }
 
     @Bean
-    public CustomerBot oneShotCoffeeBot(CustomerNotificationService customerNotificationService) {
-        return new CustomerBot(botToken, botUsername, orderService, coffeeShopService, customerNotificationService);
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "webhook")
+    public TelegramWebhook customerBotWebhook(CustomerBot customerBot) throws TelegramApiException {
+        TelegramWebhook webhook = new TelegramWebhook("customer", customerBot, webhookSecretToken, customerBot::offerUpdate);
+        webhook.register(webhookUrl, webhookMaxConnections);
+        return webhook;
     }
 
     @Bean
+    @ConditionalOnProperty(name = "telegram.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsApi telegramBotsApi(CustomerBot customerBot) throws TelegramApiException {
         try {
             TelegramBotsApi api = new TelegramBotsApi(DefaultBotSession.class);
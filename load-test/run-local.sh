@@ -0,0 +1,38 @@
+#!/usr/bin/env bash
+# Runs all three bots against the docker-compose Postgres and the fake Bot API, then a scenario.
+#
+#   load-test/run-local.sh --scenario=events        # check the hops between the bot processes
+#   load-test/run-local.sh --customers=200 --duration=PT5M
+#
+# Arguments are passed to LoadTestApplication, except --port: the bots are pointed at 8090.
+# Bot logs are written to target/local-run/.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+VERSION=1.0.0-SNAPSHOT
+LOGS=target/local-run
+
+docker compose up -d db
+mvn -B -q package -DskipTests
+mkdir -p "$LOGS"
+
+pids=()
+trap 'kill "${pids[@]}" 2>/dev/null || true' EXIT
+
+# The fake Bot API has to be up before the bots register with it
+java -jar "load-test/target/load-test-$VERSION.jar" "$@" &
+driver=$!
+pids+=("$driver")
+until (exec 3<>/dev/tcp/localhost/8090) 2>/dev/null; do
+  kill -0 "$driver" 2>/dev/null || exit 1
+  sleep 0.5
+done
+
+export TELEGRAM_API_URL=http://localhost:8090/bot
+export TELEGRAM_CUSTOMER_TOKEN=customer TELEGRAM_BARISTA_TOKEN=barista TELEGRAM_ADMIN_TOKEN=admin
+for bot in customer-bot barista-bot admin-bot; do
+  java -jar "$bot/target/$bot-$VERSION.jar" >"$LOGS/$bot.log" 2>&1 &
+  pids+=("$!")
+done
+
+wait "$driver"
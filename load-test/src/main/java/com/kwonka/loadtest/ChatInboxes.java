@@ -0,0 +1,58 @@
+package com.kwonka.loadtest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Messages a bot sent, queued per chat in the order the fake received them, for the simulated
+ * users to wait on
+ */
+public class ChatInboxes {
+
+    private final Map<Long, BlockingQueue<SentMessage>> inboxes = new ConcurrentHashMap<>();
+
+    public ChatInboxes(FakeBot bot) {
+        bot.onMessage(message -> inbox(message.chatId()).add(message));
+    }
+
+    /**
+     * Waits for the next message to the chat that matches, skipping the ones before it
+     *
+     * @throws TimeoutException if none arrives in time
+     */
+    public SentMessage expect(long chatId, Predicate<SentMessage> condition, Duration timeout)
+            throws InterruptedException, TimeoutException {
+        BlockingQueue<SentMessage> inbox = inbox(chatId);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            SentMessage message = inbox.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (message == null) {
+                throw new TimeoutException("No expected message in chat " + chatId + " within " + timeout);
+            }
+            if (condition.test(message)) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * @return the next message to the chat, or null if none arrives in time
+     */
+    public SentMessage poll(long chatId, Duration timeout) throws InterruptedException {
+        return inbox(chatId).poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public void clear(long chatId) {
+        inbox(chatId).clear();
+    }
+
+    private BlockingQueue<SentMessage> inbox(long chatId) {
+        return inboxes.computeIfAbsent(chatId, id -> new LinkedBlockingQueue<>());
+    }
+}
@@ -0,0 +1,135 @@
+package com.kwonka.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows single orders across all three bot processes and checks that every hop between them
+ * arrives: the new order placed in the customer bot is pushed to the barista through the order
+ * event journal, and the order marked ready in the barista bot reaches the customer through the
+ * notification outbox.
+ * <p>
+ * One barista opens a shift at the first coffee shop, then one customer orders there the given
+ * number of times, one order after another. Each hop is timed; the check fails on the first hop
+ * that does not arrive within the step timeout.
+ */
+@Slf4j
+public class EventBusCheck {
+
+    private static final long CUSTOMER_CHAT_ID = 4_000_001;
+    private static final long BARISTA_CHAT_ID = 4_000_002;
+
+    // Callback data of the barista bot's buttons, see CallbackAction
+    private static final String TAKE_CALLBACK = "t:";
+    private static final String READY_CALLBACK = "r:";
+
+    private static final Pattern ORDER_NUMBER = Pattern.compile("Номер вашего заказа: (\\S+)");
+
+    private final int orders;
+    private final Duration stepTimeout;
+    private final FakeBot customerBot;
+    private final FakeBot baristaBot;
+    private final ChatInboxes customerInboxes;
+    private final ChatInboxes baristaInboxes;
+
+    private final LatencyRecorder newOrderPush = new LatencyRecorder("paid in customer bot to push in barista bot");
+    private final LatencyRecorder readyNotification = new LatencyRecorder("ready in barista bot to customer notification");
+
+    public EventBusCheck(int orders, Duration stepTimeout, FakeTelegramServer server,
+                         String customerToken, String baristaToken) {
+        this.orders = orders;
+        this.stepTimeout = stepTimeout;
+        this.customerBot = server.bot(customerToken);
+        this.baristaBot = server.bot(baristaToken);
+        this.customerInboxes = new ChatInboxes(customerBot);
+        this.baristaInboxes = new ChatInboxes(baristaBot);
+    }
+
+    /**
+     * @return true if every order made it through every hop
+     */
+    public boolean run() throws InterruptedException {
+        try {
+            baristaStep("/start", message -> message.hasButton("Начать работу"));
+            List<String> shops = baristaStep("Начать работу", message -> !message.getButtons().isEmpty()).getButtons();
+            String shop = shops.get(0);
+            baristaStep(shop, message -> message.text().startsWith("Вы выбрали локацию"));
+
+            for (int i = 0; i < orders; i++) {
+                followOrder(shop);
+            }
+        } catch (TimeoutException e) {
+            log.error("Event bus check failed: {}", e.getMessage());
+            return false;
+        } finally {
+            log.info(newOrderPush.summary());
+            log.info(readyNotification.summary());
+        }
+        log.info("Event bus check passed: {} orders went through both hops", orders);
+        return true;
+    }
+
+    private void followOrder(String shop) throws InterruptedException, TimeoutException {
+        customerStep("/start", message -> message.hasButton("Старт"));
+        customerStep("Старт", message -> message.hasButton("Хочу кофе"));
+        customerStep("Хочу кофе", message -> message.hasButton(shop));
+        String drink = customerStep(shop, message -> !message.getButtons().isEmpty()).getButtons().get(0);
+        String size = customerStep(drink, message -> !message.getButtons().isEmpty()).getButtons().get(0);
+        customerStep(size, message -> message.hasButton("Без добавок"));
+        customerStep("Без добавок", message -> message.hasButton("Да"));
+        customerStep("Да", message -> message.hasButton("Оплатить"));
+        customerStep("Оплатить", message -> message.hasButton("Я оплатил(а)"));
+
+        long paidNanos = System.nanoTime();
+        SentMessage accepted = customerStep("Я оплатил(а)", message -> ORDER_NUMBER.matcher(message.text()).find());
+        Matcher matcher = ORDER_NUMBER.matcher(accepted.text());
+        matcher.find();
+        String orderNumber = matcher.group(1);
+
+        // customer-bot -> barista-bot through the order event journal
+        SentMessage pushed = expect(baristaInboxes, BARISTA_CHAT_ID,
+                message -> message.getCallbackData().contains(TAKE_CALLBACK + orderNumber),
+                "push of order " + orderNumber + " to the barista");
+        newOrderPush.record(pushed.receivedNanos() - paidNanos);
+
+        baristaBot.sendCallback(BARISTA_CHAT_ID, TAKE_CALLBACK + orderNumber);
+        expect(baristaInboxes, BARISTA_CHAT_ID, message -> message.text().startsWith("✅ Вы приняли заказ"),
+                "barista's take of order " + orderNumber);
+
+        // barista-bot -> customer through the notification outbox
+        long readyNanos = System.nanoTime();
+        baristaBot.sendCallback(BARISTA_CHAT_ID, READY_CALLBACK + orderNumber);
+        SentMessage ready = expect(customerInboxes, CUSTOMER_CHAT_ID, message -> message.hasButton("Я забрал(а)"),
+                "ready notification of order " + orderNumber);
+        readyNotification.record(ready.receivedNanos() - readyNanos);
+
+        customerStep("Я забрал(а)", message -> message.hasButton("Сделать новый заказ"));
+    }
+
+    private SentMessage customerStep(String text, Predicate<SentMessage> reply)
+            throws InterruptedException, TimeoutException {
+        customerBot.sendText(CUSTOMER_CHAT_ID, text);
+        return expect(customerInboxes, CUSTOMER_CHAT_ID, reply, "customer bot reply to '" + text + "'");
+    }
+
+    private SentMessage baristaStep(String text, Predicate<SentMessage> reply)
+            throws InterruptedException, TimeoutException {
+        baristaBot.sendText(BARISTA_CHAT_ID, text);
+        return expect(baristaInboxes, BARISTA_CHAT_ID, reply, "barista bot reply to '" + text + "'");
+    }
+
+    private SentMessage expect(ChatInboxes inboxes, long chatId, Predicate<SentMessage> condition, String what)
+            throws InterruptedException, TimeoutException {
+        try {
+            return inboxes.expect(chatId, condition, stepTimeout);
+        } catch (TimeoutException e) {
+            throw new TimeoutException("No " + what + " within " + stepTimeout);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.kwonka.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Telegram's side of one bot token: the updates users send to the bot, waiting to be fetched
+ * with getUpdates, and the messages the bot sends, handed to a listener.
+ */
+public class FakeBot {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String token;
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition updatesAvailable = lock.newCondition();
+    private final Deque<ObjectNode> updates = new ArrayDeque<>();
+    private long nextUpdateId = 1;
+    private volatile boolean polled;
+
+    private volatile Consumer<SentMessage> listener = message -> {
+    };
+
+    public FakeBot(String token) {
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return true once the bot has asked for updates, i.e. it is up and polling
+     */
+    public boolean hasPolled() {
+        return polled;
+    }
+
+    public void onMessage(Consumer<SentMessage> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * A user sends a text message to the bot
+     */
+    public void sendText(long chatId, String text) {
+        ObjectNode message = newMessage(chatId);
+        message.set("from", user(chatId));
+        message.put("text", text);
+        if (text.startsWith("/")) {
+            ArrayNode entities = message.putArray("entities");
+            entities.addObject().put("type", "bot_command").put("offset", 0).put("length", text.length());
+        }
+
+        ObjectNode update = MAPPER.createObjectNode();
+        update.set("message", message);
+        push(update);
+    }
+
+    /**
+     * A user presses an inline button with the given callback data
+     */
+    public void sendCallback(long chatId, String data) {
+        ObjectNode callbackQuery = MAPPER.createObjectNode();
+        callbackQuery.put("id", token + "-" + messageIds.incrementAndGet());
+        callbackQuery.set("from", user(chatId));
+        callbackQuery.set("message", newMessage(chatId));
+        callbackQuery.put("chat_instance", String.valueOf(chatId));
+        callbackQuery.put("data", data);
+
+        ObjectNode update = MAPPER.createObjectNode();
+        update.set("callback_query", callbackQuery);
+        push(update);
+    }
+
+    /**
+     * Serves getUpdates: drops the updates confirmed by the offset and waits up to the timeout for new ones
+     */
+    ArrayNode getUpdates(long offset, int limit, long timeoutSeconds) throws InterruptedException {
+        polled = true;
+        ArrayNode result = MAPPER.createArrayNode();
+        lock.lock();
+        try {
+            while (!updates.isEmpty() && updates.peekFirst().get("update_id").asLong() < offset) {
+                updates.pollFirst();
+            }
+            long remainingNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (updates.isEmpty() && remainingNanos > 0) {
+                remainingNanos = updatesAvailable.awaitNanos(remainingNanos);
+            }
+            for (ObjectNode update : updates) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(update);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Serves sendMessage
+     *
+     * @return The message as Telegram would return it
+     */
+    ObjectNode receiveMessage(JsonNode request) {
+        long chatId = Long.parseLong(request.path("chat_id").asText());
+        ObjectNode message = newMessage(chatId);
+        message.put("text", request.path("text").asText());
+
+        listener.accept(new SentMessage(chatId, request.path("text").asText(), request.path("reply_markup"), System.nanoTime()));
+        return message;
+    }
+
+    private void push(ObjectNode update) {
+        lock.lock();
+        try {
+            update.put("update_id", nextUpdateId++);
+            updates.addLast(update);
+            updatesAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ObjectNode newMessage(long chatId) {
+        ObjectNode message = MAPPER.createObjectNode();
+        message.put("message_id", messageIds.incrementAndGet());
+        message.put("date", Instant.now().getEpochSecond());
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        return message;
+    }
+
+    private static ObjectNode user(long chatId) {
+        ObjectNode user = MAPPER.createObjectNode();
+        user.put("id", chatId);
+        user.put("is_bot", false);
+        user.put("first_name", "User " + chatId);
+        return user;
+    }
+}
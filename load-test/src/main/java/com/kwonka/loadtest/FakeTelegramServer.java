@@ -0,0 +1,177 @@
+package com.kwonka.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Bot API at {@code http://localhost:<port>/bot<token>/<method>}, for
+ * running the bots with TELEGRAM_API_URL pointed at it.
+ * <p>
+ * getUpdates long-polls the updates pushed through {@link FakeBot}, sendMessage hands the message to
+ * the bot's listener, any other method just succeeds. Every call except getUpdates is answered after
+ * the configured latency, and the given share of sendMessage calls gets a 429 with retry_after, like
+ * Telegram's flood control.
+ */
+@Slf4j
+public class FakeTelegramServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_POLL_TIMEOUT_SECONDS = 50;
+
+    private final int port;
+    private final Duration latency;
+    private final double rateLimitedShare;
+    private final int retryAfterSeconds;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, FakeBot> bots = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong rateLimitedCalls = new AtomicLong();
+
+    /**
+     * @param latency          Added to every call but getUpdates
+     * @param rateLimitedShare Share of sendMessage calls answered with 429, 0 to 1
+     */
+    public FakeTelegramServer(int port, Duration latency, double rateLimitedShare, int retryAfterSeconds) throws IOException {
+        this.port = port;
+        this.latency = latency;
+        this.rateLimitedShare = rateLimitedShare;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake Bot API listening at {}", getApiUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return value for TELEGRAM_API_URL
+     */
+    public String getApiUrl() {
+        return "http://localhost:" + port + "/bot";
+    }
+
+    public FakeBot bot(String token) {
+        return bots.computeIfAbsent(token, FakeBot::new);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getRateLimitedCalls() {
+        return rateLimitedCalls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // /bot<token>/<method>
+            String path = exchange.getRequestURI().getPath();
+            int slash = path.indexOf('/', 4);
+            if (!path.startsWith("/bot") || slash < 0) {
+                respond(exchange, 404, error(404, "Not Found"));
+                return;
+            }
+            FakeBot bot = bot(path.substring(4, slash));
+            String method = path.substring(slash + 1);
+            JsonNode request = readBody(exchange);
+            calls.incrementAndGet();
+
+            if (!method.equals("getUpdates")) {
+                Thread.sleep(latency);
+            }
+
+            switch (method) {
+                case "getUpdates" -> respond(exchange, 200, ok(bot.getUpdates(
+                        request.path("offset").asLong(0),
+                        request.path("limit").asInt(100),
+                        Math.min(request.path("timeout").asLong(0), MAX_POLL_TIMEOUT_SECONDS))));
+                case "sendMessage" -> {
+                    if (rateLimitedShare > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitedShare) {
+                        rateLimitedCalls.incrementAndGet();
+                        ObjectNode error = error(429, "Too Many Requests: retry after " + retryAfterSeconds);
+                        error.putObject("parameters").put("retry_after", retryAfterSeconds);
+                        respond(exchange, 429, error);
+                    } else {
+                        respond(exchange, 200, ok(bot.receiveMessage(request)));
+                    }
+                }
+                case "getMe" -> {
+                    ObjectNode me = MAPPER.createObjectNode();
+                    me.put("id", Math.abs((long) bot.getToken().hashCode()));
+                    me.put("is_bot", true);
+                    me.put("first_name", bot.getToken());
+                    me.put("username", bot.getToken() + "_bot");
+                    respond(exchange, 200, ok(me));
+                }
+                default -> respond(exchange, 200, ok(MAPPER.getNodeFactory().booleanNode(true)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Fake Bot API failed to serve {}", exchange.getRequestURI(), e);
+        }
+    }
+
+    private static JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readAllBytes();
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            // Multipart calls such as setWebhook carry nothing the fake needs
+            if (bytes.length == 0 || contentType == null || !contentType.startsWith("application/json")) {
+                return MAPPER.createObjectNode();
+            }
+            return MAPPER.readTree(bytes);
+        }
+    }
+
+    private static ObjectNode ok(JsonNode result) {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("ok", true);
+        response.set("result", result);
+        return response;
+    }
+
+    private static ObjectNode error(int code, String description) {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("ok", false);
+        response.put("error_code", code);
+        response.put("description", description);
+        return response;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
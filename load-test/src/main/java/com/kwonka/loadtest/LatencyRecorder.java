@@ -0,0 +1,59 @@
+package com.kwonka.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collects latencies of one kind and summarizes them as percentiles. Keeps every sample, which is
+ * fine for the size of a load test run.
+ */
+public class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return e.g. "customer step: n=1200 p50=12ms p90=30ms p99=85ms p99.9=140ms max=210ms"
+     */
+    public String summary() {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        if (sorted.length == 0) {
+            return name + ": no samples";
+        }
+        Arrays.sort(sorted);
+        return String.format("%s: n=%d p50=%dms p90=%dms p99=%dms p99.9=%dms max=%dms",
+                name, sorted.length,
+                millis(percentile(sorted, 50)),
+                millis(percentile(sorted, 90)),
+                millis(percentile(sorted, 99)),
+                millis(percentile(sorted, 99.9)),
+                millis(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
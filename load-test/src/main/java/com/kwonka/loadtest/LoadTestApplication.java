@@ -0,0 +1,104 @@
+package com.kwonka.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test of all three bots without Telegram.
+ * <p>
+ * Starts the fake Bot API, waits until the bots poll it and then runs {@link LoadTestScenario}, or
+ * with {@code --scenario=events} the {@link EventBusCheck} of the hops between the bot processes,
+ * which exits with status 1 if one does not arrive. run-local.sh starts everything against the
+ * docker-compose database.
+ * The bots run as usual against a test database, started with
+ * <pre>
+ * TELEGRAM_API_URL=http://localhost:8090/bot
+ * TELEGRAM_CUSTOMER_TOKEN=customer TELEGRAM_BARISTA_TOKEN=barista TELEGRAM_ADMIN_TOKEN=admin
+ * </pre>
+ * Options are given as {@code --name=value}: port, customers, baristas, admins, duration, think-time,
+ * brew-time, step-timeout, ready-timeout (durations in ISO-8601, e.g. PT2M), latency-ms,
+ * rate-limited (share of sendMessage calls answered with 429), retry-after (seconds) and the three
+ * tokens customer-token, barista-token, admin-token. The events scenario takes orders (how many to
+ * follow, default 3) and step-timeout.
+ */
+@Slf4j
+public class LoadTestApplication {
+
+    private static final Duration BOTS_START_TIMEOUT = Duration.ofMinutes(5);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        FakeTelegramServer server = new FakeTelegramServer(
+                Integer.parseInt(options.getOrDefault("port", "8090")),
+                Duration.ofMillis(Long.parseLong(options.getOrDefault("latency-ms", "30"))),
+                Double.parseDouble(options.getOrDefault("rate-limited", "0")),
+                Integer.parseInt(options.getOrDefault("retry-after", "1")));
+
+        String customerToken = options.getOrDefault("customer-token", "customer");
+        String baristaToken = options.getOrDefault("barista-token", "barista");
+        String adminToken = options.getOrDefault("admin-token", "admin");
+
+        String scenarioName = options.getOrDefault("scenario", "load");
+        if (!scenarioName.equals("load") && !scenarioName.equals("events")) {
+            throw new IllegalArgumentException("Unknown scenario " + scenarioName + ", expected load or events");
+        }
+
+        LoadTestScenario.Settings settings = new LoadTestScenario.Settings(
+                Integer.parseInt(options.getOrDefault("customers", "50")),
+                Integer.parseInt(options.getOrDefault("baristas", "4")),
+                Integer.parseInt(options.getOrDefault("admins", "2")),
+                Duration.parse(options.getOrDefault("duration", "PT2M")),
+                Duration.parse(options.getOrDefault("think-time", "PT0.5S")),
+                Duration.parse(options.getOrDefault("brew-time", "PT3S")),
+                Duration.parse(options.getOrDefault("step-timeout", "PT30S")),
+                Duration.parse(options.getOrDefault("ready-timeout", "PT2M")));
+
+        boolean passed = true;
+        server.start();
+        try {
+            log.info("Start the bots with TELEGRAM_API_URL={} TELEGRAM_CUSTOMER_TOKEN={} TELEGRAM_BARISTA_TOKEN={} TELEGRAM_ADMIN_TOKEN={}",
+                    server.getApiUrl(), customerToken, baristaToken, adminToken);
+            awaitBots(server, List.of(customerToken, baristaToken, adminToken));
+            if (scenarioName.equals("events")) {
+                EventBusCheck check = new EventBusCheck(Integer.parseInt(options.getOrDefault("orders", "3")),
+                        settings.stepTimeout(), server, customerToken, baristaToken);
+                passed = check.run();
+            } else {
+                new LoadTestScenario(settings, server, customerToken, baristaToken, adminToken).run();
+            }
+        } finally {
+            server.stop();
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static void awaitBots(FakeTelegramServer server, List<String> tokens) throws InterruptedException {
+        long deadline = System.nanoTime() + BOTS_START_TIMEOUT.toNanos();
+        while (!tokens.stream().allMatch(token -> server.bot(token).hasPolled())) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Bots did not start polling within " + BOTS_START_TIMEOUT);
+            }
+            Thread.sleep(500);
+        }
+        log.info("All bots are polling, starting the scenario");
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,322 @@
+package com.kwonka.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simulated users of all three bots talking to them through the fake Bot API.
+ * <p>
+ * Baristas start their shift first, one per coffee shop in turn, then take every new order pushed
+ * to them and mark it ready after the brew time. Customers walk the full ordering flow in a loop,
+ * only in shops that have a barista, and wait for the ready notification before picking the order
+ * up. Admins turn on monitoring and open the active orders board every few seconds. Every reply is
+ * timed from the update that caused it, and every order from payment to its ready notification.
+ * Baristas of the same shop race to take each order; the report counts orders taken twice, which
+ * must stay zero.
+ */
+@Slf4j
+public class LoadTestScenario {
+
+    private static final long CUSTOMER_CHAT_IDS = 1_000_000;
+    private static final long BARISTA_CHAT_IDS = 2_000_000;
+    private static final long ADMIN_CHAT_IDS = 3_000_000;
+
+    // Callback data of the barista bot's buttons, see CallbackAction
+    private static final String TAKE_CALLBACK = "t:";
+    private static final String READY_CALLBACK = "r:";
+
+    private static final Pattern ORDER_NUMBER = Pattern.compile("#(\\S+)");
+    private static final Duration ADMIN_REFRESH = Duration.ofSeconds(5);
+
+    /**
+     * @param thinkTime    Pause of a customer before each step
+     * @param brewTime     Time from taking an order to marking it ready
+     * @param stepTimeout  How long a user waits for the bot to reply
+     * @param readyTimeout How long a customer waits for the order to be ready
+     */
+    public record Settings(int customers, int baristas, int admins, Duration duration, Duration thinkTime,
+                           Duration brewTime, Duration stepTimeout, Duration readyTimeout) {
+    }
+
+    private final Settings settings;
+    private final FakeTelegramServer server;
+    private final FakeBot customerBot;
+    private final FakeBot baristaBot;
+    private final FakeBot adminBot;
+    private final ChatInboxes customerInboxes;
+    private final ChatInboxes baristaInboxes;
+    private final ChatInboxes adminInboxes;
+
+    private final LatencyRecorder customerReplies = new LatencyRecorder("customer bot reply");
+    private final LatencyRecorder baristaReplies = new LatencyRecorder("barista bot reply");
+    private final LatencyRecorder adminReplies = new LatencyRecorder("admin bot reply");
+    private final LatencyRecorder orderLatency = new LatencyRecorder("order paid to ready notification");
+    private final AtomicInteger placedOrders = new AtomicInteger();
+    private final AtomicInteger completedOrders = new AtomicInteger();
+    private final AtomicInteger failedOrders = new AtomicInteger();
+    private final AtomicInteger adminAlerts = new AtomicInteger();
+    /**
+     * Barista that won each order, every pending order is offered to all baristas of its shop
+     */
+    private final Map<String, Long> takenBy = new ConcurrentHashMap<>();
+    private final AtomicInteger lostTakes = new AtomicInteger();
+    private final AtomicInteger doubleTakes = new AtomicInteger();
+
+    private final ScheduledExecutorService brewTimer = Executors.newScheduledThreadPool(1, Thread.ofVirtual().factory());
+    private volatile boolean running;
+
+    public LoadTestScenario(Settings settings, FakeTelegramServer server,
+                            String customerToken, String baristaToken, String adminToken) {
+        this.settings = settings;
+        this.server = server;
+        this.customerBot = server.bot(customerToken);
+        this.baristaBot = server.bot(baristaToken);
+        this.adminBot = server.bot(adminToken);
+        this.customerInboxes = new ChatInboxes(customerBot);
+        this.baristaInboxes = new ChatInboxes(baristaBot);
+        this.adminInboxes = new ChatInboxes(adminBot);
+    }
+
+    /**
+     * Runs the scenario for the configured duration and logs the report
+     */
+    public void run() throws InterruptedException {
+        running = true;
+        List<Thread> staff = new ArrayList<>();
+        List<Thread> customers = new ArrayList<>();
+
+        // Baristas have to be at their counters before the first order comes in
+        CountDownLatch shiftsStarted = new CountDownLatch(settings.baristas());
+        for (int i = 0; i < settings.baristas(); i++) {
+            int index = i;
+            staff.add(Thread.ofVirtual().name("barista-" + i).start(() -> runBarista(index, shiftsStarted)));
+        }
+        for (int i = 0; i < settings.admins(); i++) {
+            int index = i;
+            staff.add(Thread.ofVirtual().name("admin-" + i).start(() -> runAdmin(index)));
+        }
+        shiftsStarted.await(settings.stepTimeout().toMillis() * 3, TimeUnit.MILLISECONDS);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < settings.customers(); i++) {
+            int index = i;
+            customers.add(Thread.ofVirtual().name("customer-" + i).start(() -> runCustomer(index)));
+        }
+
+        Thread.sleep(settings.duration());
+        running = false;
+        // Orders in progress may finish, nothing new is started
+        long graceDeadline = System.nanoTime() + settings.readyTimeout().toNanos();
+        for (Thread customer : customers) {
+            customer.join(Duration.ofNanos(Math.max(0, graceDeadline - System.nanoTime())));
+            customer.interrupt();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        staff.forEach(Thread::interrupt);
+        brewTimer.shutdownNow();
+
+        report(elapsed);
+    }
+
+    private void runCustomer(int index) {
+        long chatId = CUSTOMER_CHAT_IDS + index;
+        while (running) {
+            try {
+                placeOrder(chatId);
+            } catch (TimeoutException e) {
+                failedOrders.incrementAndGet();
+                log.warn("Customer {} gave up: {}", chatId, e.getMessage());
+                customerInboxes.clear(chatId);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void placeOrder(long chatId) throws InterruptedException, TimeoutException {
+        customerStep(chatId, "/start", message -> message.hasButton("Старт"));
+        customerStep(chatId, "Старт", message -> message.hasButton("Хочу кофе"));
+
+        List<String> shops = customerStep(chatId, "Хочу кофе", message -> !message.getButtons().isEmpty()).getButtons();
+        String shop = pick(shops.subList(0, Math.min(shops.size(), settings.baristas())));
+        String drink = pick(customerStep(chatId, shop, message -> !message.getButtons().isEmpty()).getButtons());
+        String size = pick(customerStep(chatId, drink, message -> !message.getButtons().isEmpty()).getButtons());
+
+        customerStep(chatId, size, message -> message.hasButton("Без добавок"));
+        customerStep(chatId, "Без добавок", message -> message.hasButton("Да"));
+        customerStep(chatId, "Да", message -> message.hasButton("Оплатить"));
+        customerStep(chatId, "Оплатить", message -> message.hasButton("Я оплатил(а)"));
+
+        long paidNanos = System.nanoTime();
+        customerStep(chatId, "Я оплатил(а)", message -> message.hasButton("Новый заказ"));
+        placedOrders.incrementAndGet();
+
+        SentMessage ready = customerInboxes.expect(chatId, message -> message.hasButton("Я забрал(а)"), settings.readyTimeout());
+        orderLatency.record(ready.receivedNanos() - paidNanos);
+
+        customerStep(chatId, "Я забрал(а)", message -> true);
+        completedOrders.incrementAndGet();
+    }
+
+    private SentMessage customerStep(long chatId, String text, Predicate<SentMessage> reply)
+            throws InterruptedException, TimeoutException {
+        Thread.sleep(settings.thinkTime());
+        long sentNanos = System.nanoTime();
+        customerBot.sendText(chatId, text);
+        SentMessage message = customerInboxes.expect(chatId, reply, settings.stepTimeout());
+        customerReplies.record(message.receivedNanos() - sentNanos);
+        return message;
+    }
+
+    private void runBarista(int index, CountDownLatch shiftsStarted) {
+        long chatId = BARISTA_CHAT_IDS + index;
+        try {
+            try {
+                baristaStep(chatId, "/start", message -> message.hasButton("Начать работу"));
+                List<String> shops = baristaStep(chatId, "Начать работу", message -> !message.getButtons().isEmpty()).getButtons();
+                baristaStep(chatId, shops.get(index % shops.size()), message -> message.text().startsWith("Вы выбрали локацию"));
+            } catch (TimeoutException e) {
+                log.error("Barista {} could not start the shift: {}", chatId, e.getMessage());
+                return;
+            } finally {
+                shiftsStarted.countDown();
+            }
+
+            Set<String> attempted = new HashSet<>();
+            Map<String, Long> sentAt = new ConcurrentHashMap<>();
+            // Serves until the last customer is done and the scenario interrupts it
+            while (true) {
+                SentMessage message = baristaInboxes.poll(chatId, Duration.ofMillis(200));
+                if (message == null) {
+                    continue;
+                }
+
+                for (String callbackData : message.getCallbackData()) {
+                    if (callbackData.startsWith(TAKE_CALLBACK) && attempted.add(callbackData)) {
+                        sentAt.put("take:" + callbackData.substring(TAKE_CALLBACK.length()), System.nanoTime());
+                        baristaBot.sendCallback(chatId, callbackData);
+                    }
+                }
+
+                Matcher orderNumber = ORDER_NUMBER.matcher(message.text());
+                if (message.text().startsWith("✅ Вы приняли заказ") && orderNumber.find()) {
+                    String number = orderNumber.group(1);
+                    recordBaristaReply(sentAt.remove("take:" + number), message);
+                    Long winner = takenBy.putIfAbsent(number, chatId);
+                    if (winner != null) {
+                        log.error("Order {} was taken by both barista {} and {}", number, winner, chatId);
+                        doubleTakes.incrementAndGet();
+                    }
+                    brewTimer.schedule(() -> {
+                        sentAt.put("ready:" + number, System.nanoTime());
+                        baristaBot.sendCallback(chatId, READY_CALLBACK + number);
+                    }, settings.brewTime().toMillis(), TimeUnit.MILLISECONDS);
+                } else if (message.text().startsWith("✨ Заказ") && orderNumber.find()) {
+                    recordBaristaReply(sentAt.remove("ready:" + orderNumber.group(1)), message);
+                } else if (message.text().contains("уже принят другим") && orderNumber.find()) {
+                    recordBaristaReply(sentAt.remove("take:" + orderNumber.group(1)), message);
+                    lostTakes.incrementAndGet();
+                } else if (message.text().startsWith("❌") && orderNumber.find()) {
+                    sentAt.remove("take:" + orderNumber.group(1));
+                    sentAt.remove("ready:" + orderNumber.group(1));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private SentMessage baristaStep(long chatId, String text, Predicate<SentMessage> reply)
+            throws InterruptedException, TimeoutException {
+        long sentNanos = System.nanoTime();
+        baristaBot.sendText(chatId, text);
+        SentMessage message = baristaInboxes.expect(chatId, reply, settings.stepTimeout());
+        baristaReplies.record(message.receivedNanos() - sentNanos);
+        return message;
+    }
+
+    private void recordBaristaReply(Long sentNanos, SentMessage reply) {
+        if (sentNanos != null) {
+            baristaReplies.record(reply.receivedNanos() - sentNanos);
+        }
+    }
+
+    private void runAdmin(int index) {
+        long chatId = ADMIN_CHAT_IDS + index;
+        try {
+            adminStep(chatId, "/start", message -> message.hasButton("Мониторинг заказов"));
+            adminStep(chatId, "Мониторинг заказов", message -> message.hasButton("Все заказы"));
+            while (running) {
+                long refreshAt = System.nanoTime() + ADMIN_REFRESH.toNanos();
+                long remaining;
+                while ((remaining = refreshAt - System.nanoTime()) > 0) {
+                    SentMessage message = adminInboxes.poll(chatId, Duration.ofNanos(remaining));
+                    if (message != null) {
+                        countAlert(message);
+                    }
+                }
+                adminStep(chatId, "Все заказы", message -> message.hasButton("Назад"));
+                adminStep(chatId, "Назад", message -> message.hasButton("Все заказы"));
+            }
+        } catch (TimeoutException e) {
+            log.error("Admin {} stopped: {}", chatId, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void adminStep(long chatId, String text, Predicate<SentMessage> reply)
+            throws InterruptedException, TimeoutException {
+        long sentNanos = System.nanoTime();
+        adminBot.sendText(chatId, text);
+        SentMessage message = adminInboxes.expect(chatId, candidate -> !countAlert(candidate) && reply.test(candidate),
+                settings.stepTimeout());
+        adminReplies.record(message.receivedNanos() - sentNanos);
+    }
+
+    private boolean countAlert(SentMessage message) {
+        if (message.text().startsWith("⏱")) {
+            adminAlerts.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void report(Duration elapsed) {
+        double seconds = elapsed.toMillis() / 1000.0;
+        log.info("{} customers, {} baristas and {} admins for {} s",
+                settings.customers(), settings.baristas(), settings.admins(), Math.round(seconds));
+        log.info("Orders: {} placed, {} completed ({} orders/s), {} failed",
+                placedOrders.get(), completedOrders.get(),
+                String.format("%.2f", completedOrders.get() / seconds), failedOrders.get());
+        log.info(orderLatency.summary());
+        log.info(customerReplies.summary());
+        log.info(baristaReplies.summary());
+        log.info(adminReplies.summary());
+        log.info("Takes: {} orders taken, {} takes lost to another barista, {} orders taken twice",
+                takenBy.size(), lostTakes.get(), doubleTakes.get());
+        log.info("Delayed order alerts received by admins: {}", adminAlerts.get());
+        log.info("Bot API calls: {}, answered with 429: {}", server.getCalls(), server.getRateLimitedCalls());
+    }
+
+    private static String pick(List<String> options) {
+        return options.get(ThreadLocalRandom.current().nextInt(options.size()));
+    }
+}
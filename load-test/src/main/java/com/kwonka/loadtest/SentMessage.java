@@ -0,0 +1,47 @@
+package com.kwonka.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message a bot sent to a chat
+ *
+ * @param replyMarkup   Keyboard as sent, a missing node if there was none
+ * @param receivedNanos When the fake received it, System.nanoTime()
+ */
+public record SentMessage(long chatId, String text, JsonNode replyMarkup, long receivedNanos) {
+
+    /**
+     * @return texts of the reply keyboard buttons, row by row
+     */
+    public List<String> getButtons() {
+        List<String> buttons = new ArrayList<>();
+        for (JsonNode row : replyMarkup.path("keyboard")) {
+            for (JsonNode button : row) {
+                buttons.add(button.isTextual() ? button.asText() : button.path("text").asText());
+            }
+        }
+        return buttons;
+    }
+
+    public boolean hasButton(String text) {
+        return getButtons().contains(text);
+    }
+
+    /**
+     * @return callback data of the inline keyboard buttons, row by row
+     */
+    public List<String> getCallbackData() {
+        List<String> callbackData = new ArrayList<>();
+        for (JsonNode row : replyMarkup.path("inline_keyboard")) {
+            for (JsonNode button : row) {
+                if (button.hasNonNull("callback_data")) {
+                    callbackData.add(button.get("callback_data").asText());
+                }
+            }
+        }
+        return callbackData;
+    }
+}